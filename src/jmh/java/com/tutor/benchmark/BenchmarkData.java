@@ -0,0 +1,40 @@
+package com.tutor.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Dados compartilhados pelos benchmarks. Os caminhos são relativos à raiz do projeto,
+ * de onde o benchmarks.jar deve ser executado.
+ */
+final class BenchmarkData {
+
+    // A apostila distribuída com o projeto; outro PDF pode ser usado com -Dtutor.benchmark.pdf=...
+    static final Path PDF = Paths.get(System.getProperty("tutor.benchmark.pdf", "data/apostila_ingles_basico.pdf"));
+
+    // Perguntas típicas de aluno, usadas como entrada dos embeddings e dos prompts.
+    static final String[] QUESTIONS = {
+            "Qual a diferença entre present perfect e simple past?",
+            "Como uso o verbo to be em frases negativas?",
+            "Quando devo usar 'much' e quando 'many'?",
+            "Me explica os pronomes possessivos em inglês",
+            "What is the difference between 'make' and 'do'?",
+            "Como formar perguntas com 'do' e 'does'?",
+            "Quais são os phrasal verbs mais comuns?",
+            "Como se diz 'eu tenho 20 anos' em inglês?"
+    };
+
+    private BenchmarkData() {
+    }
+
+    static byte[] readPdf() {
+        try {
+            return Files.readAllBytes(PDF);
+        } catch (IOException e) {
+            throw new RuntimeException("PDF do benchmark não encontrado: " + PDF.toAbsolutePath()
+                    + " (execute a partir da raiz do projeto ou use -Dtutor.benchmark.pdf)", e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.tutor.benchmark;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.AllMiniLmL6V2QuantizedEmbeddingModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embeddings do AllMiniLmL6V2Quantized: um texto por chamada contra o lote inteiro em uma chamada.
+ * Os dois benchmarks vetorizam os mesmos 'batchSize' textos, então o tempo por operação é comparável.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddingBenchmark {
+
+    @Param({"1", "8", "32"})
+    public int batchSize;
+
+    private EmbeddingModel embeddingModel;
+    private List<TextSegment> segments;
+
+    @Setup
+    public void setUp() {
+        embeddingModel = new AllMiniLmL6V2QuantizedEmbeddingModel();
+        segments = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            segments.add(TextSegment.from(BenchmarkData.QUESTIONS[i % BenchmarkData.QUESTIONS.length] + " " + i));
+        }
+    }
+
+    @Benchmark
+    public void embedOneByOne(Blackhole blackhole) {
+        for (TextSegment segment : segments) {
+            blackhole.consume(embeddingModel.embed(segment).content());
+        }
+    }
+
+    @Benchmark
+    public List<Embedding> embedBatch() {
+        return embeddingModel.embedAll(segments).content();
+    }
+}
@@ -0,0 +1,56 @@
+package com.tutor.benchmark;
+
+import com.tutor.rag.DocumentLoader;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * As etapas locais da ingestão da apostila: leitura do PDF pelo ApachePdfBoxDocumentParser
+ * e divisão pelo splitter recursivo do DocumentLoader. O PDF é lido do disco uma única vez,
+ * para medir o parser e não o sistema de arquivos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private byte[] pdf;
+    private Document document;
+    private DocumentSplitter splitter;
+
+    @Setup
+    public void setUp() {
+        pdf = BenchmarkData.readPdf();
+        document = new ApachePdfBoxDocumentParser().parse(new ByteArrayInputStream(pdf));
+        splitter = DocumentLoader.createRecursiveSplitter();
+    }
+
+    @Benchmark
+    public Document parsePdf() {
+        return new ApachePdfBoxDocumentParser().parse(new ByteArrayInputStream(pdf));
+    }
+
+    @Benchmark
+    public List<TextSegment> splitRecursive() {
+        return splitter.split(document);
+    }
+}
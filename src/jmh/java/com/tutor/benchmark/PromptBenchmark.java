@@ -0,0 +1,64 @@
+package com.tutor.benchmark;
+
+import com.tutor.prompt.PromptTemplates;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.input.Prompt;
+import dev.langchain4j.model.input.PromptTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Montagem dos prompts do PromptTemplates: o template de síntese do RAG com fontes de tamanho
+ * realista (o orçamento padrão de 'tutor.context.information-tokens') e o MCP de cada sessão nova.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBenchmark {
+
+    private PromptTemplate ragTemplate;
+    private Map<String, Object> variables;
+
+    @Setup
+    public void setUp() {
+        ragTemplate = PromptTemplates.getCompatibleRagSynthesisProtocolOptimized();
+        StringBuilder information = new StringBuilder();
+        while (information.length() < 2700) {
+            information.append("The present perfect is formed with have/has and the past participle. ");
+        }
+        variables = new HashMap<>();
+        variables.put("information", information.toString());
+        variables.put("question", BenchmarkData.QUESTIONS[0]);
+    }
+
+    @Benchmark
+    public Prompt renderRagPrompt() {
+        return ragTemplate.apply(variables);
+    }
+
+    @Benchmark
+    public Prompt createAndRenderRagPrompt() {
+        return PromptTemplates.getCompatibleRagSynthesisProtocolOptimized().apply(variables);
+    }
+
+    @Benchmark
+    public List<ChatMessage> beginnerMcp() {
+        return PromptTemplates.getBeginnerMcp();
+    }
+}
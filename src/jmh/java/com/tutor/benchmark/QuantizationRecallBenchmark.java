@@ -0,0 +1,273 @@
+package com.tutor.benchmark;
+
+import com.tutor.config.AppConfig;
+import com.tutor.config.EmbeddingConfig;
+import com.tutor.rag.DocumentLoader;
+import com.tutor.rag.QdrantVectorStoreManager;
+import com.tutor.rag.QdrantVectorStoreManager.Quantization;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QdrantGrpcClient;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Collections.CollectionInfo;
+import io.qdrant.client.grpc.Collections.CollectionStatus;
+import io.qdrant.client.grpc.Collections.CreateCollection;
+import io.qdrant.client.grpc.Collections.OptimizersConfigDiff;
+import io.qdrant.client.grpc.Points.PointStruct;
+import io.qdrant.client.grpc.Points.QuantizationSearchParams;
+import io.qdrant.client.grpc.Points.ScoredPoint;
+import io.qdrant.client.grpc.Points.SearchParams;
+import io.qdrant.client.grpc.Points.SearchPoints;
+
+import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Perda de recall da quantização do Qdrant em relação à busca exata em float32.
+ *
+ * Não é um benchmark JMH (o que interessa é a qualidade, não o tempo): a apostila é dividida e
+ * vetorizada como na ingestão, gravada em uma coleção temporária por modo de quantização, com a mesma
+ * configuração criada pelo QdrantVectorStoreManager, e as perguntas de BenchmarkData e do corpus do
+ * teste de carga são buscadas com várias sobreamostragens. O gabarito é o top-k exato calculado aqui,
+ * em float32. Precisa de um Qdrant em execução (qdrant.host / qdrant.port).
+ *
+ *   java -cp target/benchmarks.jar com.tutor.benchmark.QuantizationRecallBenchmark
+ *   (opções: -Dtutor.benchmark.recall.k=3,10 -Dtutor.benchmark.recall.oversampling=1,2,4)
+ */
+public final class QuantizationRecallBenchmark {
+
+    private static final String COLLECTION_PREFIX = "recall_benchmark_";
+    private static final int EMBED_BATCH = 32;
+
+    private QuantizationRecallBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] ks = parseInts(System.getProperty("tutor.benchmark.recall.k", "3,10"));
+        double[] oversamplings = Arrays.stream(System.getProperty("tutor.benchmark.recall.oversampling", "1,2,4").split(","))
+                .mapToDouble(value -> Double.parseDouble(value.trim())).toArray();
+        int maxK = Arrays.stream(ks).max().orElse(10);
+
+        // 1. Corpus e consultas, vetorizados como na aplicação.
+        EmbeddingModel embeddingModel = EmbeddingConfig.createEmbeddingModel();
+        Document document = new ApachePdfBoxDocumentParser().parse(new ByteArrayInputStream(BenchmarkData.readPdf()));
+        List<TextSegment> segments = DocumentLoader.createRecursiveSplitter().split(document);
+        List<Embedding> vectors = embed(embeddingModel, segments);
+        List<TextSegment> querySegments = new ArrayList<>();
+        for (String question : questions()) {
+            querySegments.add(TextSegment.from(question));
+        }
+        List<Embedding> queries = embed(embeddingModel, querySegments);
+        System.out.printf(Locale.ROOT, "[RECALL] %d segmentos, %d consultas.%n", vectors.size(), queries.size());
+
+        // 2. Gabarito: top-k exato em float32.
+        List<int[]> exact = new ArrayList<>(queries.size());
+        for (Embedding query : queries) {
+            exact.add(exactTopK(query, vectors, maxK));
+        }
+
+        QdrantClient client = new QdrantClient(
+                QdrantGrpcClient.newBuilder(AppConfig.get("qdrant.host"), AppConfig.getInt("qdrant.port"), false).build());
+        try {
+            System.out.printf(Locale.ROOT, "%n%-7s %-12s %-7s %-12s", "modo", "oversampling", "rescore", "vetores (KB)");
+            for (int k : ks) {
+                System.out.printf(Locale.ROOT, " recall@%-3d", k);
+            }
+            System.out.printf(Locale.ROOT, " latência (ms)%n");
+
+            for (Quantization quantization : Quantization.values()) {
+                String collection = COLLECTION_PREFIX + quantization.name().toLowerCase(Locale.ROOT);
+                load(client, collection, quantization, vectors);
+                long footprint = footprintBytes(quantization, vectors.size());
+                if (quantization == Quantization.NONE) {
+                    report(client, collection, queries, exact, ks, maxK, null, "-", "-", footprint);
+                } else {
+                    // Sem rescore: só os vetores quantizados decidem a ordem.
+                    report(client, collection, queries, exact, ks, maxK,
+                            QuantizationSearchParams.newBuilder().setRescore(false).build(), "1", "não", footprint);
+                    for (double oversampling : oversamplings) {
+                        report(client, collection, queries, exact, ks, maxK,
+                                QuantizationSearchParams.newBuilder().setRescore(true).setOversampling(oversampling).build(),
+                                String.valueOf(oversampling), "sim", footprint);
+                    }
+                }
+                client.deleteCollectionAsync(collection).get();
+            }
+        } finally {
+            client.close();
+        }
+        // O modelo de embedding (ONNX) mantém threads que impediriam a JVM de terminar.
+        System.exit(0);
+    }
+
+    /**
+     * Cria a coleção com a configuração da aplicação, grava os vetores e espera o Qdrant construir
+     * o índice (é na otimização dos segmentos que os vetores quantizados são gerados).
+     */
+    private static void load(QdrantClient client, String collection, Quantization quantization, List<Embedding> vectors)
+            throws ExecutionException, InterruptedException {
+        if (client.listCollectionsAsync().get().contains(collection)) {
+            client.deleteCollectionAsync(collection).get();
+        }
+        CreateCollection request = QdrantVectorStoreManager.createCollectionRequest(collection, quantization).toBuilder()
+                .setOptimizersConfig(OptimizersConfigDiff.newBuilder().setIndexingThreshold(1))
+                .build();
+        client.createCollectionAsync(request).get();
+
+        List<PointStruct> points = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            points.add(PointStruct.newBuilder()
+                    .setId(PointIdFactory.id(i))
+                    .setVectors(VectorsFactory.vectors(vectors.get(i).vector()))
+                    .build());
+        }
+        client.upsertAsync(collection, points).get();
+
+        long deadline = System.currentTimeMillis() + 120_000;
+        while (true) {
+            CollectionInfo info = client.getCollectionInfoAsync(collection).get();
+            if (info.getStatus() == CollectionStatus.Green && info.getIndexedVectorsCount() >= vectors.size()) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                System.out.println("[RECALL] Aviso: índice de '" + collection + "' não ficou pronto em 2 minutos; medindo assim mesmo.");
+                return;
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private static void report(QdrantClient client, String collection, List<Embedding> queries, List<int[]> exact,
+                               int[] ks, int maxK, QuantizationSearchParams quantization,
+                               String oversampling, String rescore, long footprintBytes)
+            throws ExecutionException, InterruptedException {
+        double[] recallSums = new double[ks.length];
+        long totalNanos = 0;
+        for (int q = 0; q < queries.size(); q++) {
+            SearchParams.Builder params = SearchParams.newBuilder();
+            if (quantization != null) {
+                params.setQuantization(quantization);
+            }
+            SearchPoints.Builder search = SearchPoints.newBuilder()
+                    .setCollectionName(collection)
+                    .setLimit(maxK)
+                    .setParams(params);
+            for (float value : queries.get(q).vector()) {
+                search.addVector(value);
+            }
+            long start = System.nanoTime();
+            List<ScoredPoint> points = client.searchAsync(search.build()).get();
+            totalNanos += System.nanoTime() - start;
+
+            for (int i = 0; i < ks.length; i++) {
+                recallSums[i] += recall(exact.get(q), points, ks[i]);
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-7s %-12s %-7s %-12d", collection.substring(COLLECTION_PREFIX.length()),
+                oversampling, rescore, footprintBytes / 1024);
+        for (double recallSum : recallSums) {
+            System.out.printf(Locale.ROOT, " %-10.4f", recallSum / queries.size());
+        }
+        System.out.printf(Locale.ROOT, " %.2f%n", totalNanos / 1e6 / queries.size());
+    }
+
+    /**
+     * Fração do top-k exato que aparece no top-k devolvido pelo Qdrant.
+     */
+    private static double recall(int[] exact, List<ScoredPoint> points, int k) {
+        int expected = Math.min(k, exact.length);
+        if (expected == 0) {
+            return 1.0;
+        }
+        Set<Long> found = new HashSet<>();
+        for (int i = 0; i < Math.min(k, points.size()); i++) {
+            found.add(points.get(i).getId().getNum());
+        }
+        int hits = 0;
+        for (int i = 0; i < expected; i++) {
+            if (found.contains((long) exact[i])) {
+                hits++;
+            }
+        }
+        return (double) hits / expected;
+    }
+
+    /**
+     * Memória ocupada na RAM pelos vetores usados na busca: float32 sem quantização,
+     * 1 byte por dimensão no int8 e 1 bit por dimensão no binário (sem contar o grafo HNSW).
+     */
+    private static long footprintBytes(Quantization quantization, int count) {
+        int dimension = 384;
+        return switch (quantization) {
+            case NONE -> (long) count * dimension * Float.BYTES;
+            case SCALAR -> (long) count * dimension;
+            case BINARY -> (long) count * dimension / 8;
+        };
+    }
+
+    private static int[] exactTopK(Embedding query, List<Embedding> vectors, int k) {
+        Integer[] order = new Integer[vectors.size()];
+        double[] scores = new double[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            order[i] = i;
+            scores[i] = CosineSimilarity.between(query, vectors.get(i));
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        int[] top = new int[Math.min(k, order.length)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = order[i];
+        }
+        return top;
+    }
+
+    private static List<Embedding> embed(EmbeddingModel model, List<TextSegment> segments) {
+        List<Embedding> vectors = new ArrayList<>(segments.size());
+        for (int start = 0; start < segments.size(); start += EMBED_BATCH) {
+            List<TextSegment> batch = segments.subList(start, Math.min(segments.size(), start + EMBED_BATCH));
+            for (Embedding embedding : model.embedAll(batch).content()) {
+                vectors.add(embedding);
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * As perguntas de BenchmarkData mais o corpus do teste de carga (linhas com # são ignoradas).
+     */
+    private static List<String> questions() throws Exception {
+        List<String> questions = new ArrayList<>(Arrays.asList(BenchmarkData.QUESTIONS));
+        InputStream input = QuantizationRecallBenchmark.class.getClassLoader().getResourceAsStream("loadtest/questions.txt");
+        if (input != null) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        questions.add(line);
+                    }
+                }
+            }
+        }
+        return questions;
+    }
+
+    private static int[] parseInts(String values) {
+        return Arrays.stream(values.split(",")).mapToInt(value -> Integer.parseInt(value.trim())).toArray();
+    }
+}
@@ -0,0 +1,100 @@
+package com.tutor.benchmark;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Busca por similaridade em um InMemoryEmbeddingStore com 10 mil, 100 mil e 1 milhão de segmentos.
+ *
+ * Os vetores são aleatórios e normalizados (dimensão 384, a do AllMiniLmL6V2): vetorizar um milhão
+ * de textos levaria horas, e o custo da busca exata não depende do conteúdo. Com 1 milhão de
+ * segmentos os vetores ocupam cerca de 1,5 GB, daí o heap maior no fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class RetrievalBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int QUERIES = 64;
+
+    @Param({"10000", "100000", "1000000"})
+    public int segments;
+
+    @Param({"5"})
+    public int maxResults;
+
+    private InMemoryEmbeddingStore<TextSegment> store;
+    private EmbeddingSearchRequest[] requests;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        store = new InMemoryEmbeddingStore<>();
+        int batch = 10_000;
+        for (int start = 0; start < segments; start += batch) {
+            int size = Math.min(batch, segments - start);
+            List<Embedding> embeddings = new ArrayList<>(size);
+            List<TextSegment> texts = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                embeddings.add(randomEmbedding(random));
+                texts.add(TextSegment.from("segmento " + (start + i)));
+            }
+            store.addAll(embeddings, texts);
+        }
+
+        requests = new EmbeddingSearchRequest[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            requests[i] = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(randomEmbedding(random))
+                    .maxResults(maxResults)
+                    .minScore(0.0)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public List<EmbeddingMatch<TextSegment>> search() {
+        // Consultas diferentes a cada chamada, para o JIT não especializar em um único vetor.
+        EmbeddingSearchRequest request = requests[next++ & (QUERIES - 1)];
+        return store.search(request).matches();
+    }
+
+    private static Embedding randomEmbedding(Random random) {
+        float[] vector = new float[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] *= scale;
+        }
+        return Embedding.from(vector);
+    }
+}
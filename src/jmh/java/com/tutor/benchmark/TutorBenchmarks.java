@@ -0,0 +1,51 @@
+package com.tutor.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Ponto de entrada do benchmarks.jar. Aceita as mesmas opções do org.openjdk.jmh.Main, mas, sem
+ * '-rf', grava o resultado em JSON em target/jmh/jmh-result-VERSÃO-DATA.json, para comparar versões
+ * (ex: com o jmh.morethan.io ou um diff dos "primaryMetric").
+ */
+public final class TutorBenchmarks {
+
+    private TutorBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        if (options.shouldList() || options.shouldListWithParams()) {
+            new Runner(options).list();
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if (!options.getResultFormat().hasValue()) {
+            Path result = defaultResultFile();
+            Files.createDirectories(result.getParent());
+            builder.resultFormat(ResultFormatType.JSON).result(result.toString());
+            System.out.println("[BENCHMARK] Resultado será gravado em " + result);
+        }
+        new Runner(builder.build()).run();
+    }
+
+    private static Path defaultResultFile() {
+        String version = TutorBenchmarks.class.getPackage().getImplementationVersion();
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        return Paths.get("target", "jmh", "jmh-result-" + (version != null ? version : "dev") + "-" + timestamp + ".json");
+    }
+}
@@ -0,0 +1,295 @@
+package com.tutor.loadtest;
+
+import com.tutor.config.AppConfig;
+import com.tutor.config.EmbeddingConfig;
+import com.tutor.config.ModelConfig;
+import com.tutor.llm.OllamaScheduler;
+import com.tutor.memory.ChatMemoryManager;
+import com.tutor.prompt.ContextPacker;
+import com.tutor.prompt.PromptTemplates;
+import com.tutor.rag.Bm25Index;
+import com.tutor.rag.DocumentLoader;
+import com.tutor.rag.IngestionManifest;
+import com.tutor.rag.IngestionPipeline;
+import com.tutor.rag.QueryTransformer;
+import com.tutor.rag.RetrieverService;
+import com.tutor.service.EmbeddingRouter;
+import com.tutor.service.RouterAgent;
+import com.tutor.service.StreamingTutorChain;
+import com.tutor.service.TutorService;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.retriever.Retriever;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Teste de carga de ponta a ponta: roteador, transformação da consulta, busca e síntese, com as
+ * perguntas de um corpus de alunos, contra o OllamaStub e um InMemoryEmbeddingStore (sem Ollama e
+ * sem Qdrant). Serve para dimensionar o hardware e ver onde a fila começa antes dos alunos.
+ *
+ * Dois modos, pelas propriedades 'tutor.loadtest.*' de loadtest/loadtest.properties (ou -D na linha de comando):
+ * - arrival-rate = 0: carga fechada, 'concurrency' alunos perguntando sem pausa;
+ * - arrival-rate > 0: carga aberta, chegadas de Poisson na taxa informada (turnos/s), com até
+ *   'concurrency' turnos simultâneos. A latência conta desde a chegada, então a espera por uma
+ *   vaga aparece no resultado (sem "coordinated omission").
+ *
+ * Uso: mvn -q -P loadtest compile exec:java -Dexec.mainClass=com.tutor.loadtest.LoadTest -Dtutor.loadtest.concurrency=16
+ */
+public class LoadTest {
+
+    private record TurnResult(long latencyNanos, long firstTokenNanos, int chunks, boolean failed) {}
+
+    public static void main(String[] args) throws Exception {
+        AppConfig.loadDefaults("loadtest/loadtest.properties");
+        int concurrency = AppConfig.getInt("tutor.loadtest.concurrency", 8);
+        double arrivalRate = AppConfig.getDouble("tutor.loadtest.arrival-rate", 0);
+        int requests = AppConfig.getInt("tutor.loadtest.requests", 200);
+        int warmup = AppConfig.getInt("tutor.loadtest.warmup", 10);
+        List<String> questions = loadCorpus(AppConfig.get("tutor.loadtest.corpus", "loadtest/questions.txt"));
+
+        // O stub sobe antes de qualquer cliente do Ollama ser criado, e todos passam a apontar para ele.
+        OllamaStub stub = OllamaStub.create();
+        stub.start();
+        System.setProperty("tutor.llm.ollama.base-url", stub.baseUrl());
+
+        TutorService tutorService = buildPipeline();
+        ChatMemoryManager memoryManager = new ChatMemoryManager(new InMemoryChatMemoryStore(),
+                AppConfig.getInt("tutor.memory.max-messages", 20), Duration.ofHours(1));
+
+        try {
+            System.out.println("[LOADTEST] Aquecimento: " + warmup + " turnos.");
+            for (int i = 0; i < warmup; i++) {
+                runTurn(tutorService, memoryManager, "aquecimento", questions.get(i % questions.size()), System.nanoTime());
+            }
+
+            System.out.println("[LOADTEST] " + requests + " turnos, concorrência " + concurrency + ", "
+                    + (arrivalRate > 0 ? "chegadas de Poisson a " + arrivalRate + " turnos/s" : "carga fechada") + ".");
+            long start = System.nanoTime();
+            List<TurnResult> results = arrivalRate > 0
+                    ? runOpenLoop(tutorService, memoryManager, questions, requests, concurrency, arrivalRate)
+                    : runClosedLoop(tutorService, memoryManager, questions, requests, concurrency);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(report(results, elapsed));
+            System.out.println(tutorService.stats());
+            System.out.println(stub.stats());
+        } finally {
+            tutorService.shutdown();
+            stub.stop();
+        }
+        // O modelo de embedding usa um pool fixo de threads não-daemon, que manteria a JVM viva.
+        System.exit(0);
+    }
+
+    /**
+     * Monta o mesmo pipeline do TutorApp, mas com a base de conhecimento em memória e sem cache
+     * semântico (o corpus se repete, e o cache esconderia o custo real de cada turno).
+     */
+    private static TutorService buildPipeline() {
+        StreamingChatLanguageModel model = ModelConfig.getStreamingChatLanguageModel(OllamaScheduler.Priority.INTERACTIVE);
+        EmbeddingModel embeddingModel = EmbeddingConfig.createEmbeddingModel();
+
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        // Índice lexical só em memória: o caminho não existe e o índice nunca é salvo.
+        Bm25Index lexicalIndex = AppConfig.getBoolean("tutor.retrieval.hybrid.enabled", true)
+                ? Bm25Index.load(Paths.get("target", "loadtest", "lexical.bm25"))
+                : null;
+        ingest(embeddingModel, embeddingStore, lexicalIndex);
+
+        ContextPacker contextPacker = ContextPacker.create();
+        List<ChatMessage> promptPrefix = PromptTemplates.getMcp(AppConfig.get("tutor.persona.level", "beginner"));
+        StreamingTutorChain conversationalChain = StreamingTutorChain.conversational(model, promptPrefix, contextPacker);
+        Retriever<TextSegment> retriever = RetrieverService.createTransformingRetriever(
+                embeddingStore, embeddingModel, new QueryTransformer(), lexicalIndex);
+        StreamingTutorChain ragChain = StreamingTutorChain.rag(model, promptPrefix, retriever,
+                PromptTemplates.getCompatibleRagSynthesisProtocolOptimized(), contextPacker);
+        EmbeddingRouter router = EmbeddingRouter.create(embeddingModel, RouterAgent.create());
+
+        return new TutorService(embeddingModel, router, conversationalChain, ragChain, null, null, null,
+                AppConfig.getBoolean("tutor.speculation.enabled", true));
+    }
+
+    private static void ingest(EmbeddingModel embeddingModel, InMemoryEmbeddingStore<TextSegment> embeddingStore,
+                               Bm25Index lexicalIndex) {
+        String dataDirectory = AppConfig.get("tutor.loadtest.data-directory", "data");
+        List<IngestionPipeline.FileJob> jobs = new ArrayList<>();
+        for (Path file : DocumentLoader.listSupportedFiles(dataDirectory)) {
+            jobs.add(new IngestionPipeline.FileJob(file, IngestionManifest.contentHash(file)));
+        }
+        IngestionPipeline.create(embeddingModel, DocumentLoader.createRecursiveSplitter(), (ids, embeddings, segments) -> {
+            for (int i = 0; i < ids.size(); i++) {
+                embeddingStore.add(ids.get(i), embeddings.get(i), segments.get(i));
+            }
+            if (lexicalIndex != null) {
+                lexicalIndex.addAll(ids, segments);
+            }
+            return CompletableFuture.completedFuture(null);
+        }).run(jobs);
+    }
+
+    /**
+     * Carga fechada: cada aluno virtual tem a sua sessão e faz a próxima pergunta assim que recebe a resposta.
+     */
+    private static List<TurnResult> runClosedLoop(TutorService tutorService, ChatMemoryManager memoryManager,
+                                                  List<String> questions, int requests, int concurrency) {
+        List<TurnResult> results = new ArrayList<>(requests);
+        AtomicInteger nextRequest = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<List<TurnResult>>> users = new ArrayList<>();
+            for (int user = 0; user < concurrency; user++) {
+                String sessionId = "aluno-" + user;
+                users.add(CompletableFuture.supplyAsync(() -> {
+                    List<TurnResult> mine = new ArrayList<>();
+                    int request;
+                    while ((request = nextRequest.getAndIncrement()) < requests) {
+                        mine.add(runTurn(tutorService, memoryManager, sessionId,
+                                questions.get(request % questions.size()), System.nanoTime()));
+                    }
+                    return mine;
+                }, executor));
+            }
+            for (CompletableFuture<List<TurnResult>> user : users) {
+                results.addAll(user.join());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Carga aberta: os turnos chegam em intervalos exponenciais, independentemente das respostas.
+     */
+    private static List<TurnResult> runOpenLoop(TutorService tutorService, ChatMemoryManager memoryManager,
+                                                List<String> questions, int requests, int concurrency,
+                                                double arrivalRate) throws InterruptedException {
+        int sessions = AppConfig.getInt("tutor.loadtest.sessions", 32);
+        Semaphore slots = new Semaphore(concurrency);
+        Random random = new Random(42);
+        List<CompletableFuture<TurnResult>> turns = new ArrayList<>(requests);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long arrival = System.nanoTime();
+            for (int request = 0; request < requests; request++) {
+                arrival += (long) (-Math.log(1 - random.nextDouble()) / arrivalRate * 1e9);
+                long wait = arrival - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+                long arrivedAt = arrival;
+                String sessionId = "aluno-" + (request % sessions);
+                String question = questions.get(request % questions.size());
+                turns.add(CompletableFuture.supplyAsync(() -> {
+                    slots.acquireUninterruptibly();
+                    try {
+                        return runTurn(tutorService, memoryManager, sessionId, question, arrivedAt);
+                    } finally {
+                        slots.release();
+                    }
+                }, executor));
+            }
+        }
+        return turns.stream().map(CompletableFuture::join).toList();
+    }
+
+    private static TurnResult runTurn(TutorService tutorService, ChatMemoryManager memoryManager,
+                                      String sessionId, String question, long arrivedAtNanos) {
+        AtomicLong firstToken = new AtomicLong();
+        AtomicInteger chunks = new AtomicInteger();
+        boolean failed = false;
+        ChatMemoryManager.Session session = memoryManager.acquire(sessionId);
+        try {
+            tutorService.answer(session.memory(), question, token -> {
+                firstToken.compareAndSet(0, System.nanoTime());
+                chunks.incrementAndGet();
+            });
+        } catch (RuntimeException e) {
+            failed = true;
+            System.err.println("[LOADTEST] ERRO no turno da sessão " + sessionId + ": " + e.getMessage());
+        } finally {
+            session.lock().unlock();
+        }
+        long end = System.nanoTime();
+        long ttft = firstToken.get() != 0 ? firstToken.get() - arrivedAtNanos : end - arrivedAtNanos;
+        return new TurnResult(end - arrivedAtNanos, ttft, chunks.get(), failed);
+    }
+
+    private static String report(List<TurnResult> results, long elapsedNanos) {
+        long[] latencies = results.stream().filter(r -> !r.failed()).mapToLong(TurnResult::latencyNanos).toArray();
+        long[] firstTokens = results.stream().filter(r -> !r.failed()).mapToLong(TurnResult::firstTokenNanos).toArray();
+        Arrays.sort(latencies);
+        Arrays.sort(firstTokens);
+        long failures = results.stream().filter(TurnResult::failed).count();
+        long chunks = results.stream().mapToLong(TurnResult::chunks).sum();
+        double seconds = elapsedNanos / 1e9;
+
+        return String.format("""
+                [LOADTEST] %d turnos em %.1f s (%d falhas)
+                  vazão:            %.2f turnos/s, %.1f tokens/s
+                  latência (turno): p50 %.0f ms, p95 %.0f ms, p99 %.0f ms, máx %.0f ms
+                  primeiro token:   p50 %.0f ms, p95 %.0f ms, p99 %.0f ms""",
+                results.size(), seconds, failures,
+                latencies.length / seconds, chunks / seconds,
+                percentileMillis(latencies, 50), percentileMillis(latencies, 95), percentileMillis(latencies, 99),
+                percentileMillis(latencies, 100),
+                percentileMillis(firstTokens, 50), percentileMillis(firstTokens, 95), percentileMillis(firstTokens, 99));
+    }
+
+    /**
+     * Percentil pelo método do posto mais próximo, em milissegundos.
+     */
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedNanos.length);
+        return sortedNanos[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    /**
+     * Lê o corpus de perguntas de um arquivo ou, se não existir, do classpath.
+     */
+    private static List<String> loadCorpus(String location) throws IOException {
+        Path file = Paths.get(location);
+        InputStream input = Files.exists(file)
+                ? Files.newInputStream(file)
+                : LoadTest.class.getClassLoader().getResourceAsStream(location);
+        if (input == null) {
+            throw new IllegalArgumentException("Corpus de perguntas não encontrado: " + location);
+        }
+        List<String> questions = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    questions.add(line);
+                }
+            }
+        }
+        if (questions.isEmpty()) {
+            throw new IllegalArgumentException("Corpus de perguntas vazio: " + location);
+        }
+        return questions;
+    }
+}
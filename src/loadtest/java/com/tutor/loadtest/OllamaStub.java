@@ -0,0 +1,242 @@
+package com.tutor.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tutor.config.AppConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Substituto local do Ollama para o teste de carga. Implementa o POST /api/chat (com e sem streaming)
+ * no mesmo formato do Ollama, com um custo de geração configurável:
+ *
+ * - prefill: 'first-token-ms' fixos mais o tamanho do prompt dividido por 'prefill-tokens-per-second';
+ * - decode:  'response-tokens' tokens a 'tokens-per-second' (na resposta com streaming);
+ * - chamadas auxiliares (sem streaming: roteador e QueryTransformer) custam 'auxiliary-latency-ms';
+ * - no máximo 'parallel' gerações ao mesmo tempo, como o OLLAMA_NUM_PARALLEL; as demais esperam.
+ *
+ * Assim o teste de carga exercita o agendador, o empacotamento do contexto e o streaming sem
+ * precisar de um Ollama (nem de GPU) na máquina.
+ */
+public class OllamaStub {
+
+    // Texto de onde saem os tokens da resposta simulada.
+    private static final String[] WORDS = ("The present perfect connects the past with the present. We use it for "
+            + "experiences, for changes over time and for actions that started in the past and continue now. "
+            + "For example: I have lived in Brazil for ten years. She has never eaten sushi. ").split(" ");
+
+    // Média de caracteres por token, a mesma estimativa do ContextPacker.
+    private static final double CHARS_PER_TOKEN = 3.5;
+
+    private final int port;
+    private final long firstTokenMillis;
+    private final double prefillTokensPerSecond;
+    private final double tokensPerSecond;
+    private final int responseTokens;
+    private final long auxiliaryLatencyMillis;
+    private final Semaphore slots;
+
+    private final AtomicLong chatRequests = new AtomicLong();
+    private final AtomicLong streamedTokens = new AtomicLong();
+    private final AtomicLong waitingRequests = new AtomicLong();
+    private final AtomicLong maxWaitingRequests = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public OllamaStub(int port, long firstTokenMillis, double prefillTokensPerSecond, double tokensPerSecond,
+                      int responseTokens, long auxiliaryLatencyMillis, int parallel) {
+        this.port = port;
+        this.firstTokenMillis = firstTokenMillis;
+        this.prefillTokensPerSecond = prefillTokensPerSecond;
+        this.tokensPerSecond = tokensPerSecond;
+        this.responseTokens = responseTokens;
+        this.auxiliaryLatencyMillis = auxiliaryLatencyMillis;
+        this.slots = new Semaphore(parallel, true);
+    }
+
+    /**
+     * Cria o stub a partir das propriedades 'tutor.loadtest.stub.*'.
+     */
+    public static OllamaStub create() {
+        return new OllamaStub(
+                AppConfig.getInt("tutor.loadtest.stub.port", 11435),
+                AppConfig.getInt("tutor.loadtest.stub.first-token-ms", 250),
+                AppConfig.getDouble("tutor.loadtest.stub.prefill-tokens-per-second", 300),
+                AppConfig.getDouble("tutor.loadtest.stub.tokens-per-second", 20),
+                AppConfig.getInt("tutor.loadtest.stub.response-tokens", 150),
+                AppConfig.getInt("tutor.loadtest.stub.auxiliary-latency-ms", 400),
+                AppConfig.getInt("tutor.loadtest.stub.parallel", 1));
+    }
+
+    public void start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao abrir o stub do Ollama na porta " + port, e);
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/chat", this::handleChat);
+        server.start();
+        System.out.println("[STUB] Ollama simulado em " + baseUrl());
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.close();
+        }
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + port;
+    }
+
+    /**
+     * @return Resumo das requisições atendidas.
+     */
+    public String stats() {
+        return String.format("[STUB] %d chamadas ao /api/chat, %d tokens transmitidos, fila máxima %d",
+                chatRequests.get(), streamedTokens.get(), maxWaitingRequests.get());
+    }
+
+    private void handleChat(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            JsonObject request = JsonParser.parseString(
+                    new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+            // Como no Ollama, a ausência de "stream" significa streaming.
+            boolean stream = !request.has("stream") || request.get("stream").getAsBoolean();
+            String model = request.has("model") ? request.get("model").getAsString() : "stub";
+            JsonArray messages = request.getAsJsonArray("messages");
+            chatRequests.incrementAndGet();
+
+            acquireSlot();
+            try {
+                if (stream) {
+                    streamAnswer(exchange, model, promptTokens(messages));
+                } else {
+                    sendAuxiliaryAnswer(exchange, model, messages);
+                }
+            } finally {
+                slots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acquireSlot() throws InterruptedException {
+        maxWaitingRequests.accumulateAndGet(waitingRequests.incrementAndGet(), Math::max);
+        try {
+            slots.acquire();
+        } finally {
+            waitingRequests.decrementAndGet();
+        }
+    }
+
+    /**
+     * Resposta com streaming: uma linha JSON por token e a linha final com "done": true e as contagens.
+     */
+    private void streamAnswer(HttpExchange exchange, String model, int promptTokens) throws IOException, InterruptedException {
+        Thread.sleep(firstTokenMillis + (long) (promptTokens * 1000 / prefillTokensPerSecond));
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        long tokenIntervalNanos = (long) (1e9 / tokensPerSecond);
+        long next = System.nanoTime();
+        for (int i = 0; i < responseTokens; i++) {
+            String token = (i == 0 ? "" : " ") + WORDS[i % WORDS.length];
+            writeLine(out, chunk(model, token, false));
+            streamedTokens.incrementAndGet();
+            next += tokenIntervalNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+            }
+        }
+        JsonObject done = chunk(model, "", true);
+        done.addProperty("prompt_eval_count", promptTokens);
+        done.addProperty("eval_count", responseTokens);
+        writeLine(out, done);
+    }
+
+    /**
+     * Resposta bloqueante das etapas auxiliares: "rag" para o roteador e consultas para o QueryTransformer.
+     */
+    private void sendAuxiliaryAnswer(HttpExchange exchange, String model, JsonArray messages) throws IOException, InterruptedException {
+        Thread.sleep(auxiliaryLatencyMillis);
+        String lastMessage = messages.isEmpty() ? "" : content(messages.get(messages.size() - 1));
+        String answer;
+        if (mentions(messages, "\"rag\"")) {
+            answer = "rag";
+        } else {
+            int user = lastMessage.lastIndexOf("Usuário:");
+            String question = user >= 0 ? lastMessage.substring(user + 8).split("\n")[0].trim() : lastMessage;
+            answer = question + ", gramática inglesa, exemplos de uso";
+        }
+        JsonObject response = chunk(model, answer, true);
+        response.addProperty("eval_count", answer.split(" ").length);
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static JsonObject chunk(String model, String content, boolean done) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject chunk = new JsonObject();
+        chunk.addProperty("model", model);
+        chunk.addProperty("created_at", Instant.now().toString());
+        chunk.add("message", message);
+        chunk.addProperty("done", done);
+        return chunk;
+    }
+
+    private static void writeLine(OutputStream out, JsonObject line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static int promptTokens(JsonArray messages) {
+        long chars = 0;
+        for (JsonElement message : messages) {
+            chars += content(message).length();
+        }
+        return (int) Math.ceil(chars / CHARS_PER_TOKEN);
+    }
+
+    private static boolean mentions(JsonArray messages, String text) {
+        for (JsonElement message : messages) {
+            if (content(message).contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String content(JsonElement message) {
+        JsonElement content = message.getAsJsonObject().get("content");
+        return content == null || content.isJsonNull() ? "" : content.getAsString();
+    }
+}
@@ -1,27 +1,46 @@
 package com.tutor;
 
+import com.tutor.config.AppConfig;
 import com.tutor.config.ModelConfig;
+import com.tutor.llm.OllamaScheduler;
+import com.tutor.llm.OllamaWarmup;
 import com.tutor.service.TutorAgent;
 import com.tutor.service.TutorTools;
 import com.tutor.service.RouterAgent;
+import com.tutor.service.EmbeddingRouter;
+import com.tutor.service.CorrectionService;
+import com.tutor.service.ExerciseService;
+import com.tutor.prompt.ContextPacker;
 import com.tutor.prompt.PromptTemplates;
 import com.tutor.config.EmbeddingConfig;
+import com.tutor.rag.Bm25Index;
+import com.tutor.rag.OnnxCrossEncoder;
 import com.tutor.rag.QueryTransformer;
-import com.tutor.rag.QdrantVectorStoreManager;
+import com.tutor.rag.VectorStoreFactory;
 import com.tutor.rag.RetrieverService;
-import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.chain.ConversationalRetrievalChain;
+import com.tutor.service.StreamingTutorChain;
+import com.tutor.service.TutorService;
+import com.tutor.memory.ChatMemoryManager;
+import com.tutor.metrics.MetricsEndpoint;
+import com.tutor.metrics.TutorMetrics;
+import com.tutor.server.TutorServer;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.ChatMemory;
+import com.tutor.cache.SemanticResponseCache;
 import dev.langchain4j.retriever.Retriever;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.input.PromptTemplate; // Import necessário
-import com.tutor.rag.TransformingRetriever;
-import dev.langchain4j.chain.ConversationalChain;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Classe principal que inicializa e executa o Tutor de Inglês com RAG.
@@ -31,60 +50,160 @@ import java.util.Scanner;
 public class TutorApp {
 
     public static void main(String[] args) {
-        // Carrega componentes Fundamentais (Modelo de LLM e modelo de Embedding).
-        System.out.println("[1/4] Carregando modelos de IA...");
-        ChatLanguageModel model = ModelConfig.createChatLanguageModel();
-        EmbeddingModel embeddingModel = EmbeddingConfig.createEmbeddingModel();
-        System.out.println("      ... Modelos carregados com sucesso.");
+        long mainStart = System.nanoTime();
+
+        // ====================================================================================
+        // ETAPA 1: COMPONENTES INDEPENDENTES, EM PARALELO
+        // ====================================================================================
+        // Modelo de embedding (ONNX), índice BM25, banco vetorial (conexão e sincronização com 'data/'),
+        // memória das sessões e cache semântico não dependem uns dos outros: cada um carrega na sua
+        // virtual thread, e o tempo de inicialização passa a ser o do mais lento, e não a soma.
+        System.out.println("[1/4] Carregando modelos e a base de conhecimento em paralelo...");
+        boolean hybridEnabled = AppConfig.getBoolean("tutor.retrieval.hybrid.enabled", true);
+        boolean cacheEnabled = AppConfig.getBoolean("tutor.cache.enabled", true);
+
+        EmbeddingModel embeddingModel;
+        Bm25Index lexicalIndex;
+        EmbeddingStore<TextSegment> embeddingStore;
+        ChatMemoryManager memoryManager;
+        SemanticResponseCache responseCache;
+        EmbeddingRouter router;
+        try (ExecutorService bootstrap = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<EmbeddingModel> embeddingModelTask =
+                    CompletableFuture.supplyAsync(EmbeddingConfig::createEmbeddingModel, bootstrap);
+            // Índice lexical (BM25) para a busca híbrida, mantido junto com o banco vetorial.
+            CompletableFuture<Bm25Index> lexicalIndexTask =
+                    CompletableFuture.supplyAsync(() -> hybridEnabled ? Bm25Index.create() : null, bootstrap);
+            CompletableFuture<EmbeddingStore<TextSegment>> embeddingStoreTask =
+                    lexicalIndexTask.thenApplyAsync(VectorStoreFactory::getEmbeddingStore, bootstrap);
+            // As cadeias não guardam a conversa: cada sessão tem a sua memória no ChatMemoryManager.
+            CompletableFuture<ChatMemoryManager> memoryManagerTask =
+                    CompletableFuture.supplyAsync(ChatMemoryManager::create, bootstrap);
+            // Cache semântico: perguntas equivalentes já respondidas não passam pelo pipeline.
+            CompletableFuture<SemanticResponseCache> responseCacheTask =
+                    CompletableFuture.supplyAsync(() -> cacheEnabled ? SemanticResponseCache.create() : null, bootstrap);
+            // O roteador local usa o modelo de embedding e só chama o LLM quando está em dúvida.
+            CompletableFuture<EmbeddingRouter> routerTask = embeddingModelTask.thenApplyAsync(
+                    model -> EmbeddingRouter.create(model, RouterAgent.create()), bootstrap);
+            // Cross-encoder do reranking (se ativado): as sessões ONNX ficam prontas antes de montar o retriever.
+            CompletableFuture<OnnxCrossEncoder> rerankerTask =
+                    CompletableFuture.supplyAsync(OnnxCrossEncoder::shared, bootstrap);
 
-        System.out.println("[2/4] Conectando e preparando a base de conhecimento (Qdrant)...");
-        EmbeddingStore<TextSegment> embeddingStore = QdrantVectorStoreManager.getEmbeddingStore();
-        System.out.println("      ... Base de conhecimento pronta para uso.");
+            embeddingModel = await(embeddingModelTask);
+            lexicalIndex = await(lexicalIndexTask);
+            embeddingStore = await(embeddingStoreTask);
+            memoryManager = await(memoryManagerTask);
+            responseCache = await(responseCacheTask);
+            router = await(routerTask);
+            await(rerankerTask);
+        }
+        System.out.println("      ... Modelos, base de conhecimento e roteador prontos.");
 
         // ====================================================================================
         // ETAPA 2: CONSTRUIR OS PIPELINES ESPECIALIZADOS
         // ====================================================================================
         System.out.println("[2/4] Construindo pipelines especializados...");
+        // O modelo com streaming permite exibir a resposta enquanto ela é gerada.
+        // As respostas ao aluno têm a maior prioridade no agendador do Ollama.
+        StreamingChatLanguageModel model = ModelConfig.getStreamingChatLanguageModel(OllamaScheduler.Priority.INTERACTIVE);
+
+        // Limita o prompt (fontes + histórico) a um orçamento de tokens previsível.
+        ContextPacker contextPacker = ContextPacker.create();
 
-        // Usaremos uma única memória compartilhada para manter o contexto entre os pipelines.
-        MessageWindowChatMemory sharedMemory = MessageWindowChatMemory.withMaxMessages(20);
-        List<ChatMessage> mcp = PromptTemplates.getBeginnerMcp();
-        mcp.forEach(sharedMemory::add);
+        // O MCP da persona é o prefixo fixo de todos os prompts, igual nas duas cadeias.
+        List<ChatMessage> promptPrefix = PromptTemplates.getMcp(AppConfig.get("tutor.persona.level", "beginner"));
 
         // 2.1. Pipeline de Conversa Simples (para saudações e bate-papo)
-        ConversationalChain conversationalChain = ConversationalChain.builder()
-                .chatLanguageModel(model)
-                .chatMemory(sharedMemory)
-                .build();
+        StreamingTutorChain conversationalChain = StreamingTutorChain.conversational(model, promptPrefix, contextPacker);
         System.out.println("      ... Pipeline de Conversa Simples pronto.");
 
         // 2.2. Pipeline de RAG (para perguntas que exigem conhecimento)
-        Retriever<TextSegment> baseRetriever = RetrieverService.createRetriever(embeddingStore, embeddingModel);
         QueryTransformer queryTransformer = new QueryTransformer();
-        Retriever<TextSegment> transformingRetriever = new TransformingRetriever(baseRetriever, queryTransformer);
+        Retriever<TextSegment> transformingRetriever =
+                RetrieverService.createTransformingRetriever(embeddingStore, embeddingModel, queryTransformer, lexicalIndex);
         PromptTemplate ragPromptTemplate = PromptTemplates.getCompatibleRagSynthesisProtocolOptimized();
 
-        ConversationalRetrievalChain ragChain = ConversationalRetrievalChain.builder()
-                .chatLanguageModel(model)
-                .chatMemory(sharedMemory)
-                .retriever(transformingRetriever)
-                .promptTemplate(ragPromptTemplate)
-                .build();
+        StreamingTutorChain ragChain = StreamingTutorChain.rag(model, promptPrefix, transformingRetriever, ragPromptTemplate, contextPacker);
         System.out.println("      ... Pipeline de RAG pronto.");
 
+        // 2.3. Pool de exercícios, gerados em segundo plano a partir da base de conhecimento.
+        // Usa o retriever simples: o tópico já é a consulta, sem passar pelo QueryTransformer (LLM).
+        ExerciseService exerciseService = AppConfig.getBoolean("tutor.exercises.enabled", true)
+                ? ExerciseService.create(embeddingModel, RetrieverService.createRetriever(embeddingStore, embeddingModel))
+                : null;
+
+        // 2.4. Pré-corretor: os erros mais comuns são corrigidos por regras locais, sem o LLM.
+        CorrectionService correctionService = AppConfig.getBoolean("tutor.correction.enabled", true)
+                ? CorrectionService.create()
+                : null;
+
         // ====================================================================================
-        // ETAPA 3: CONSTRUIR O ROTEADOR
+        // ETAPA 3: MONTAR O SERVIÇO
         // ====================================================================================
-        System.out.println("[3/4] Construindo o roteador de intenção...");
-        RouterAgent router = RouterAgent.create();
-        System.out.println("      ... Roteador pronto.");
-
+        System.out.println("[3/4] Montando o serviço do tutor...");
+        // Busca especulativa: o RAG começa a buscar enquanto o roteador decide.
+        boolean speculativeRetrieval = AppConfig.getBoolean("tutor.speculation.enabled", true);
+        TutorService tutorService = new TutorService(embeddingModel, router, conversationalChain, ragChain,
+                responseCache, exerciseService, correctionService, speculativeRetrieval);
         System.out.println("[4/4] Inicialização concluída.");
 
+        // Carrega o modelo e o prefixo no Ollama em segundo plano, e mantém o modelo carregado.
+        OllamaWarmup warmup = OllamaWarmup.create();
+        warmup.start();
+
+        // Completa o pool de exercícios só quando o Ollama está ocioso.
+        if (exerciseService != null) {
+            exerciseService.start();
+        }
+
+        // Métricas por etapa no JMX e em um endpoint local no formato do Prometheus.
+        MetricsEndpoint metricsEndpoint = TutorMetrics.ENABLED ? MetricsEndpoint.create() : null;
+        if (metricsEndpoint != null) {
+            metricsEndpoint.start();
+        }
+
+        // Modo servidor: várias sessões via HTTP, com os mesmos componentes.
+        boolean serverMode = (args.length > 0 && args[0].equals("--server")) || AppConfig.getBoolean("tutor.server.enabled", false);
+        if (serverMode) {
+            TutorServer server = TutorServer.create(tutorService, memoryManager);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                warmup.stop();
+                if (metricsEndpoint != null) {
+                    metricsEndpoint.stop();
+                }
+                System.out.println(tutorService.stats());
+                tutorService.shutdown();
+                memoryManager.close();
+                VectorStoreFactory.shutdown();
+                OnnxCrossEncoder.shutdown();
+            }, "tutor-shutdown"));
+            server.start();
+            reportStartup(mainStart);
+            return;
+        }
+
         // --- INÍCIO DA INTERAÇÃO ---
         System.out.println("\n==================================================");
         System.out.println("  Tutor de Inglês inicializado. Estou pronto!");
         System.out.println("==================================================\n");
+        reportStartup(mainStart);
+
+        // Execução de treino do AppCDS (perfil 'appcds' do pom.xml): sai assim que a aplicação fica pronta.
+        if (AppConfig.getBoolean("tutor.startup.exit-when-ready", false)) {
+            warmup.stop();
+            if (metricsEndpoint != null) {
+                metricsEndpoint.stop();
+            }
+            tutorService.shutdown();
+            memoryManager.close();
+            VectorStoreFactory.shutdown();
+            OnnxCrossEncoder.shutdown();
+            System.exit(0);
+        }
+
+        // O modo console é uma única sessão.
+        ChatMemory chatMemory = memoryManager.getOrCreate("console").memory();
 
         try (Scanner scanner = new Scanner(System.in)) {
             while (true) {
@@ -92,26 +211,65 @@ public class TutorApp {
                 String pergunta = scanner.nextLine();
 
                 if (pergunta.equalsIgnoreCase("sair")) {
+                    System.out.println(tutorService.stats());
+                    tutorService.shutdown();
+                    memoryManager.close();
+                    VectorStoreFactory.shutdown();
+                    OnnxCrossEncoder.shutdown();
+                    warmup.stop();
+                    if (metricsEndpoint != null) {
+                        metricsEndpoint.stop();
+                    }
                     System.out.println("Até logo!");
                     break;
                 }
 
-                // ETAPA DE ROTEAMENTO: O cérebro da decisão
-                String route = router.route(pergunta);
-                System.out.println("[ROUTER] Decisão: " + route);
-
-                System.out.print("Tutor: ");
-                String resposta;
-                if ("rag".equalsIgnoreCase(route.trim())) {
-                    // Usa o pipeline de RAG para perguntas complexas
-                    resposta = ragChain.execute(pergunta);
-                } else {
-                    // Usa o pipeline de conversa simples para todo o resto
-                    resposta = conversationalChain.execute(pergunta);
-                }
+                // "Tutor: " só é impresso no primeiro token, depois dos logs de cache, roteamento e busca.
+                boolean[] started = {false};
+                tutorService.answer(chatMemory, pergunta, token -> {
+                    if (!started[0]) {
+                        System.out.print("Tutor: ");
+                        started[0] = true;
+                    }
+                    printToken(token);
+                });
 
-                System.out.println(resposta + "\n");
+                System.out.println("\n");
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Imprime cada token assim que ele chega do modelo, sem esperar a resposta completa.
+     */
+    private static void printToken(String token) {
+        System.out.print(token);
+        System.out.flush();
+    }
+
+    /**
+     * Espera uma etapa da inicialização, repassando a falha original (e não a CompletionException).
+     */
+    private static <T> T await(CompletableFuture<T> task) {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("Falha na inicialização", e.getCause());
+        }
+    }
+
+    /**
+     * Mostra o tempo até a aplicação ficar pronta, contando desde o início do processo
+     * (o que inclui a subida da JVM e o carregamento de classes, que o AppCDS reduz).
+     */
+    private static void reportStartup(long mainStartNanos) {
+        long mainMillis = (System.nanoTime() - mainStartNanos) / 1_000_000;
+        String processMillis = ProcessHandle.current().info().startInstant()
+                .map(start -> String.valueOf(Duration.between(start, Instant.now()).toMillis()))
+                .orElse("?");
+        System.out.println("[STARTUP] Pronto em " + processMillis + " ms desde o início do processo (main: " + mainMillis + " ms).");
+    }
+}
@@ -0,0 +1,251 @@
+package com.tutor.cache;
+
+import com.tutor.config.AppConfig;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache semântico de respostas do tutor.
+ * A chave é o embedding da pergunta: uma resposta guardada é reutilizada quando a
+ * similaridade de cosseno entre a nova pergunta e a pergunta original passa do limiar
+ * configurado. Assim, "o que é present perfect?" e "o que é o present perfect" caem
+ * na mesma entrada e a resposta sai em milissegundos, sem passar pelo Ollama.
+ *
+ * O tamanho é limitado (LRU) e cada entrada expira após um TTL. Opcionalmente, o
+ * conteúdo é salvo em disco para sobreviver a reinícios.
+ *
+ * Cada entrada leva o nível da persona que a gerou ('tutor.persona.level'), que faz parte da chave:
+ * uma resposta escrita para um aluno iniciante nunca é servida com a persona avançada, mesmo que o
+ * arquivo do cache seja reaproveitado depois de trocar o nível. O histórico da sessão que fez a
+ * pergunta primeiro não faz parte da chave (ver TutorService).
+ */
+public final class SemanticResponseCache {
+
+    private static final int FILE_FORMAT_VERSION = 2;
+
+    private record Entry(String level, String question, Embedding embedding, String answer, long createdAtMillis) {}
+
+    private final double similarityThreshold;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Path persistenceFile;
+    private final String level;
+
+    // LinkedHashMap em ordem de acesso: a entrada mais antiga é a menos usada recentemente.
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param similarityThreshold Similaridade mínima de cosseno para considerar um acerto.
+     * @param maxEntries          Número máximo de respostas guardadas.
+     * @param ttl                 Tempo de vida de cada resposta.
+     * @param persistenceFile     Arquivo para salvar o cache entre execuções (ou null para desativar).
+     * @param level               O nível da persona das respostas guardadas e servidas por esta instância.
+     */
+    public SemanticResponseCache(double similarityThreshold, int maxEntries, Duration ttl, Path persistenceFile, String level) {
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.persistenceFile = persistenceFile;
+        this.level = level.trim().toLowerCase(Locale.ROOT);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > SemanticResponseCache.this.maxEntries;
+            }
+        };
+        load();
+    }
+
+    /**
+     * Método fábrica que lê os parâmetros do cache da configuração ('tutor.cache.*' e 'tutor.persona.level').
+     */
+    public static SemanticResponseCache create() {
+        double threshold = AppConfig.getDouble("tutor.cache.similarity-threshold", 0.92);
+        int maxEntries = AppConfig.getInt("tutor.cache.max-entries", 500);
+        int ttlMinutes = AppConfig.getInt("tutor.cache.ttl-minutes", 1440);
+        String file = AppConfig.get("tutor.cache.file", "");
+        Path persistenceFile = file.isBlank() ? null : Paths.get(file);
+        String level = AppConfig.get("tutor.persona.level", "beginner");
+
+        System.out.println("[CONFIG] Criando cache semântico com limiar=" + threshold
+                + ", maxEntries=" + maxEntries + ", ttl=" + ttlMinutes + "min, persona=" + level
+                + (persistenceFile != null ? ", arquivo=" + persistenceFile : ""));
+        return new SemanticResponseCache(threshold, maxEntries, Duration.ofMinutes(ttlMinutes), persistenceFile, level);
+    }
+
+    /**
+     * Procura uma resposta guardada para uma pergunta semanticamente equivalente.
+     *
+     * @param questionEmbedding O embedding da pergunta atual.
+     * @return A resposta guardada, se houver uma entrada do mesmo nível de persona acima do limiar.
+     */
+    public synchronized Optional<String> get(Embedding questionEmbedding) {
+        long now = System.currentTimeMillis();
+
+        String bestKey = null;
+        double bestScore = similarityThreshold;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> candidate = iterator.next();
+            if (now - candidate.getValue().createdAtMillis() > ttlMillis) {
+                iterator.remove();
+                continue;
+            }
+            Embedding stored = candidate.getValue().embedding();
+            if (!candidate.getValue().level().equals(level) || stored.dimension() != questionEmbedding.dimension()) {
+                continue;
+            }
+            double score = CosineSimilarity.between(questionEmbedding, stored);
+            if (score >= bestScore) {
+                bestScore = score;
+                bestKey = candidate.getKey();
+            }
+        }
+
+        if (bestKey == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        // O get() atualiza a ordem de acesso do LRU.
+        return Optional.of(entries.get(bestKey).answer());
+    }
+
+    /**
+     * Guarda a resposta de uma pergunta, no nível de persona desta instância.
+     */
+    public synchronized void put(String question, Embedding questionEmbedding, String answer) {
+        entries.put(key(level, question), new Entry(level, question, questionEmbedding, answer, System.currentTimeMillis()));
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Um resumo legível de acertos e falhas, para logs.
+     */
+    public String stats() {
+        long h = hits();
+        long m = misses();
+        double rate = h + m == 0 ? 0.0 : 100.0 * h / (h + m);
+        return String.format("[CACHE] Acertos: %d | Falhas: %d (taxa de acerto %.1f%%) | Entradas: %d", h, m, rate, size());
+    }
+
+    /**
+     * Salva o cache no arquivo configurado. Não faz nada se a persistência estiver desativada.
+     * A escrita é feita em um arquivo temporário e depois movida, para nunca deixar um arquivo pela metade.
+     */
+    public synchronized void save() {
+        if (persistenceFile == null) {
+            return;
+        }
+        try {
+            Path parent = persistenceFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = persistenceFile.resolveSibling(persistenceFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    writeString(out, entry.level());
+                    writeString(out, entry.question());
+                    writeString(out, entry.answer());
+                    out.writeLong(entry.createdAtMillis());
+                    float[] vector = entry.embedding().vector();
+                    out.writeInt(vector.length);
+                    for (float v : vector) {
+                        out.writeFloat(v);
+                    }
+                }
+            }
+            Files.move(tmp, persistenceFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("[CACHE] " + entries.size() + " respostas salvas em " + persistenceFile);
+        } catch (IOException e) {
+            System.err.println("[CACHE] WARN: Falha ao salvar o cache: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (persistenceFile == null || !Files.exists(persistenceFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(persistenceFile)))) {
+            if (in.readInt() != FILE_FORMAT_VERSION) {
+                System.err.println("[CACHE] WARN: Versão de arquivo de cache desconhecida. Ignorando.");
+                return;
+            }
+            int count = in.readInt();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                // As entradas de outros níveis são mantidas (e salvas de novo), mas nunca servidas.
+                String entryLevel = readString(in);
+                String question = readString(in);
+                String answer = readString(in);
+                long createdAt = in.readLong();
+                float[] vector = new float[in.readInt()];
+                for (int j = 0; j < vector.length; j++) {
+                    vector[j] = in.readFloat();
+                }
+                if (now - createdAt <= ttlMillis) {
+                    entries.put(key(entryLevel, question), new Entry(entryLevel, question, Embedding.from(vector), answer, createdAt));
+                }
+            }
+            System.out.println("[CACHE] " + entries.size() + " respostas carregadas de " + persistenceFile);
+        } catch (IOException e) {
+            System.err.println("[CACHE] WARN: Falha ao ler o cache salvo: " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    private static String key(String level, String question) {
+        return level + "\n" + normalize(question);
+    }
+
+    private static String normalize(String question) {
+        return question.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -13,6 +13,12 @@ import java.util.Properties;
  * Carrega as propriedades de um arquivo .env (se existir) ou de um
  * application.properties no classpath, e as disponibiliza de forma estática.
  * Esta classe é o único lugar que deve saber como os arquivos de configuração são lidos.
+ *
+ * Uma propriedade de sistema com a mesma chave (-Dtutor.server.port=9090) tem precedência
+ * sobre o arquivo, o que permite ajustar uma execução (ex: o teste de carga) sem editá-lo.
+ *
+ * Ferramentas fora da aplicação (ex: o teste de carga) trazem suas propriedades em um recurso próprio,
+ * carregado com {@link #loadDefaults(String)}, em vez de misturá-las ao application.properties.
  */
 public final class AppConfig {
     private static final String EXTERNAL_CONFIG_FILE = ".env";
@@ -50,6 +56,28 @@ public final class AppConfig {
             }
         }
     }
+
+    /**
+     * Acrescenta as propriedades de um recurso do classpath como valores padrão: as chaves que já vieram
+     * do .env ou do application.properties (e as propriedades de sistema) continuam valendo.
+     *
+     * @param resource O caminho do recurso no classpath (ex: "loadtest/loadtest.properties").
+     * @throws RuntimeException se o recurso não existir ou não puder ser lido.
+     */
+    public static void loadDefaults(String resource) {
+        Properties defaults = new Properties();
+        try (InputStream input = AppConfig.class.getClassLoader().getResourceAsStream(resource)) {
+            if (input == null) {
+                throw new RuntimeException("Arquivo de configuração não encontrado no classpath: " + resource);
+            }
+            defaults.load(input);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao carregar " + resource, e);
+        }
+        defaults.forEach(properties::putIfAbsent);
+        System.out.println("[CONFIG] Carregado arquivo de configuração do classpath: " + resource);
+    }
+
     /**
      * Obtém uma propriedade de configuração como String.
      *
@@ -58,7 +86,7 @@ public final class AppConfig {
      * @throws IllegalArgumentException se a chave não for encontrada.
      */
     public static String get(String key) {
-        String value = properties.getProperty(key);
+        String value = lookup(key);
         if (value == null) {
             throw new IllegalArgumentException("Propriedade de configuração obrigatória não encontrada: '" + key + "'");
         }
@@ -73,7 +101,7 @@ public final class AppConfig {
      * @return O valor da propriedade ou o valor padrão.
      */
     public static String get(String key, String defaultValue) {
-        return properties.getProperty(key, defaultValue);
+        return System.getProperty(key, properties.getProperty(key, defaultValue));
     }
 
     /**
@@ -95,4 +123,44 @@ public final class AppConfig {
     public static double getDouble(String key) {
         return Double.parseDouble(get(key));
     }
+
+    /**
+     * Obtém uma propriedade de configuração como um inteiro, com um valor padrão.
+     *
+     * @param key          A chave da propriedade.
+     * @param defaultValue O valor a ser retornado se a chave não for encontrada.
+     * @return O valor da propriedade como int ou o valor padrão.
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = lookup(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Obtém uma propriedade de configuração como um double, com um valor padrão.
+     *
+     * @param key          A chave da propriedade.
+     * @param defaultValue O valor a ser retornado se a chave não for encontrada.
+     * @return O valor da propriedade como double ou o valor padrão.
+     */
+    public static double getDouble(String key, double defaultValue) {
+        String value = lookup(key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    /**
+     * Obtém uma propriedade de configuração como um boolean, com um valor padrão.
+     *
+     * @param key          A chave da propriedade.
+     * @param defaultValue O valor a ser retornado se a chave não for encontrada.
+     * @return O valor da propriedade como boolean ou o valor padrão.
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = lookup(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    private static String lookup(String key) {
+        return System.getProperty(key, properties.getProperty(key));
+    }
 }
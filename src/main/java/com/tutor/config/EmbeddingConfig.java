@@ -11,7 +11,9 @@ import dev.langchain4j.model.embedding.AllMiniLmL6V2QuantizedEmbeddingModel;
  public class EmbeddingConfig {
      private static EmbeddingModel embeddingModel;
 
-     public static EmbeddingModel createEmbeddingModel() {
+     // synchronized: na inicialização paralela, o TutorApp e a sincronização do banco vetorial
+     // podem pedir o modelo ao mesmo tempo, e ele só deve ser carregado uma vez.
+     public static synchronized EmbeddingModel createEmbeddingModel() {
          if(embeddingModel == null) {
              System.out.println("[INFO] Inicializando o modelo de embedding (AllMiniLmL6V2)...");
              System.out.println("[INFO] Isso pode levar alguns instantes na primeira execução, pois o modelo será baixado.");
@@ -1,7 +1,12 @@
 package com.tutor.config;
 
+import com.tutor.llm.OllamaScheduler;
+import com.tutor.llm.ScheduledChatLanguageModel;
+import com.tutor.llm.ScheduledStreamingChatLanguageModel;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
 import java.time.Duration;
 
 /**
@@ -51,6 +56,82 @@ public class ModelConfig {
                 .build();
     }
 
+    /**
+     * Cria e retorna uma instância do modelo de chat com streaming do Ollama.
+     * Usa as mesmas configurações do modelo bloqueante, mas entrega a resposta
+     * token a token, o que permite exibir o texto assim que ele é gerado.
+     *
+     * @return StreamingChatLanguageModel (interface genérica do LangChain4j).
+     */
+    public static StreamingChatLanguageModel createStreamingChatLanguageModel() {
+        String baseUrl = AppConfig.get("tutor.llm.ollama.base-url", "http://localhost:11434");
+        String modelName = AppConfig.get("tutor.llm.ollama.model-name");
+        int timeout = AppConfig.getInt("tutor.llm.ollama.timeout");
+        double temperature = AppConfig.getDouble("tutor.llm.model.temperature");
+
+        System.out.println("[CONFIG] Configurando o modelo LLM (streaming): " + modelName + " em " + baseUrl);
+
+        return OllamaStreamingChatModel.builder()
+                .baseUrl(baseUrl)
+                .modelName(modelName)
+                .timeout(Duration.ofSeconds(timeout))
+                .temperature(temperature)
+                .build();
+    }
+
+    /**
+     * Por quanto tempo o Ollama deve manter o modelo carregado depois da última requisição,
+     * no formato do Ollama ("30m", "2h", "-1" = indefinidamente).
+     *
+     * Os builders do LangChain4j 0.32 não enviam o campo keep_alive, e cada requisição sem ele volta
+     * o prazo para o padrão do servidor (5 minutos). Por isso o OllamaWarmup renova este valor
+     * periodicamente, em vez de ele ir em cada chamada.
+     *
+     * @return O valor de 'tutor.llm.ollama.keep-alive'.
+     */
+    public static String getKeepAlive() {
+        return AppConfig.get("tutor.llm.ollama.keep-alive", "30m");
+    }
+
+    // Um único cliente de cada tipo, compartilhado por todos os componentes.
+    private static volatile ChatLanguageModel sharedChatModel;
+    private static volatile StreamingChatLanguageModel sharedStreamingChatModel;
+
+    /**
+     * Retorna o modelo de chat compartilhado, passando pelo agendador do Ollama com a prioridade informada.
+     * Roteador e QueryTransformer usam este método em vez de criar cada um o seu cliente.
+     *
+     * @param priority A prioridade das chamadas feitas por quem vai usar o modelo.
+     * @return ChatLanguageModel agendado.
+     */
+    public static ChatLanguageModel getChatLanguageModel(OllamaScheduler.Priority priority) {
+        if (sharedChatModel == null) {
+            synchronized (ModelConfig.class) {
+                if (sharedChatModel == null) {
+                    sharedChatModel = createChatLanguageModel();
+                }
+            }
+        }
+        return new ScheduledChatLanguageModel(sharedChatModel, OllamaScheduler.shared(), priority);
+    }
+
+    /**
+     * Retorna o modelo com streaming compartilhado, passando pelo agendador do Ollama.
+     *
+     * @param priority A prioridade das chamadas feitas por quem vai usar o modelo.
+     * @return StreamingChatLanguageModel agendado.
+     */
+    public static StreamingChatLanguageModel getStreamingChatLanguageModel(OllamaScheduler.Priority priority) {
+        if (sharedStreamingChatModel == null) {
+            synchronized (ModelConfig.class) {
+                if (sharedStreamingChatModel == null) {
+                    sharedStreamingChatModel = createStreamingChatLanguageModel();
+                }
+            }
+        }
+        return new ScheduledStreamingChatLanguageModel(sharedStreamingChatModel, OllamaScheduler.shared(), priority);
+    }
+
     // O método getProperty() não é mais necessário aqui, pois
     // qualquer parte do código que precisar de uma propriedade
     // deve pedi-la diretamente ao AppConfig.
@@ -0,0 +1,287 @@
+package com.tutor.llm;
+
+import com.tutor.config.AppConfig;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Camada única de agendamento na frente do Ollama. Todas as chamadas ao LLM (síntese, roteamento,
+ * transformação de consultas) passam por aqui, em vez de cada componente ter o seu cliente.
+ *
+ * - No máximo 'tutor.llm.scheduler.max-concurrency' requisições ao mesmo tempo: um Ollama sem GPU
+ *   fica mais lento, e não mais rápido, quando recebe muitas gerações em paralelo.
+ * - Quando há fila, a próxima vaga vai para a maior prioridade (e, empatando, para quem chegou antes).
+ * - Chamadas bloqueantes idênticas que já estão em andamento são unidas: quem chega depois espera a
+ *   mesma resposta, sem gerar de novo.
+ * - Métricas de fila e de espera por prioridade em stats().
+ */
+public final class OllamaScheduler {
+
+    /**
+     * Classes de prioridade, da mais para a menos urgente.
+     */
+    public enum Priority {
+        /** A resposta que o aluno está esperando (síntese do RAG e conversa). */
+        INTERACTIVE,
+        /** Etapas auxiliares de um turno: roteamento e transformação de consultas. */
+        AUXILIARY,
+        /** Trabalho que pode esperar (aquecimento, avaliações, tarefas em lote). */
+        BACKGROUND
+    }
+
+    private static volatile OllamaScheduler shared;
+
+    private final int maxConcurrency;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private int running;
+    private long sequence;
+    // Quando a última vaga foi devolvida (o modelo está parado desde então, se running == 0).
+    private long idleSinceNanos = System.nanoTime();
+
+    // Chamadas bloqueantes em andamento, pela chave do prompt.
+    private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<Priority, PriorityStats> stats = new EnumMap<>(Priority.class);
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public OllamaScheduler(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        for (Priority priority : Priority.values()) {
+            stats.put(priority, new PriorityStats());
+        }
+    }
+
+    /**
+     * O agendador compartilhado por toda a aplicação, criado na primeira chamada.
+     */
+    public static OllamaScheduler shared() {
+        if (shared == null) {
+            synchronized (OllamaScheduler.class) {
+                if (shared == null) {
+                    int maxConcurrency = AppConfig.getInt("tutor.llm.scheduler.max-concurrency", 2);
+                    System.out.println("[SCHEDULER] Agendador do Ollama com até " + maxConcurrency + " requisições simultâneas.");
+                    shared = new OllamaScheduler(maxConcurrency);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Executa uma chamada bloqueante ao LLM dentro de uma vaga. Se uma chamada com a mesma chave
+     * já estiver em andamento, espera o resultado dela em vez de chamar o modelo de novo.
+     *
+     * @param priority A classe de prioridade da chamada.
+     * @param key      Chave que identifica o prompt (null desativa a união de chamadas).
+     * @param call     A chamada ao modelo.
+     * @return O resultado da chamada.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Priority priority, Object key, Supplier<T> call) {
+        if (key == null) {
+            return runWithPermit(priority, call);
+        }
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return (T) join(existing);
+        }
+        try {
+            T result = runWithPermit(priority, call);
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Espera uma vaga. Usado pelas chamadas com streaming, que só devolvem a vaga (release())
+     * quando a geração termina.
+     */
+    public void acquire(Priority priority) {
+        PriorityStats priorityStats = stats.get(priority);
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (running < maxConcurrency && waiters.isEmpty()) {
+                running++;
+            } else {
+                Waiter waiter = new Waiter(priority, sequence++, lock.newCondition());
+                waiters.add(waiter);
+                priorityStats.queued();
+                try {
+                    while (!waiter.granted) {
+                        waiter.condition.await();
+                    }
+                } catch (InterruptedException e) {
+                    // Chamada cancelada na fila (ex: busca especulativa descartada): sai sem ocupar vaga.
+                    if (!waiters.remove(waiter)) {
+                        releaseLocked(); // a vaga chegou junto com a interrupção; passa adiante
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Chamada ao LLM cancelada enquanto esperava na fila", e);
+                } finally {
+                    priorityStats.dequeued();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        priorityStats.started(System.nanoTime() - start);
+    }
+
+    /**
+     * Devolve a vaga, entregando-a diretamente ao próximo da fila de maior prioridade.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            releaseLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked() {
+        Waiter next = waiters.poll();
+        if (next != null) {
+            next.granted = true; // a vaga passa direto, sem decrementar 'running'
+            next.condition.signal();
+        } else {
+            running--;
+            if (running == 0) {
+                idleSinceNanos = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * @return Resumo das métricas por prioridade.
+     */
+    public String stats() {
+        StringBuilder sb = new StringBuilder("[SCHEDULER]");
+        lock.lock();
+        try {
+            sb.append(" em execução: ").append(running).append(", na fila: ").append(waiters.size())
+                    .append(", chamadas unidas: ").append(coalesced.get());
+        } finally {
+            lock.unlock();
+        }
+        for (Map.Entry<Priority, PriorityStats> entry : stats.entrySet()) {
+            PriorityStats s = entry.getValue();
+            sb.append(String.format("%n  %-11s %d requisições, espera média %.1f ms, máxima %.1f ms, fila máxima %d",
+                    entry.getKey(), s.requests.get(), s.averageWaitMillis(), s.maxWaitNanos.get() / 1e6, s.maxQueueDepth.get()));
+        }
+        return sb.toString();
+    }
+
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Há quanto tempo o modelo está sem nenhuma requisição em execução ou na fila.
+     * Usado por trabalhos de fundo que só devem rodar com o Ollama ocioso.
+     *
+     * @return Milissegundos desde a última requisição, ou 0 se houver alguma em andamento.
+     */
+    public long idleMillis() {
+        lock.lock();
+        try {
+            if (running > 0 || !waiters.isEmpty()) {
+                return 0;
+            }
+            return (System.nanoTime() - idleSinceNanos) / 1_000_000;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queueDepth(Priority priority) {
+        return (int) stats.get(priority).queueDepth.get();
+    }
+
+    private <T> T runWithPermit(Priority priority, Supplier<T> call) {
+        acquire(priority);
+        try {
+            return call.get();
+        } finally {
+            release();
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Uma chamada esperando vaga. Ordena por prioridade e, dentro da prioridade, por ordem de chegada.
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+        final Priority priority;
+        final long sequence;
+        final Condition condition;
+        boolean granted;
+
+        Waiter(Priority priority, long sequence, Condition condition) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class PriorityStats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong queueDepth = new AtomicLong();
+        final AtomicLong maxQueueDepth = new AtomicLong();
+
+        void queued() {
+            maxQueueDepth.accumulateAndGet(queueDepth.incrementAndGet(), Math::max);
+        }
+
+        void dequeued() {
+            queueDepth.decrementAndGet();
+        }
+
+        void started(long waitNanos) {
+            requests.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+
+        double averageWaitMillis() {
+            long count = requests.get();
+            return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.tutor.llm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.tutor.config.AppConfig;
+import com.tutor.config.ModelConfig;
+import com.tutor.prompt.PromptTemplates;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aquece o Ollama na inicialização e o mantém aquecido:
+ *
+ * - Para cada persona em 'tutor.llm.warmup.personas', envia uma requisição com o MCP (o prefixo fixo
+ *   de todos os prompts) e um único token de resposta. Isso carrega o modelo na memória e deixa o
+ *   prefixo no KV cache, então a primeira pergunta do aluno não paga nem a carga nem o prefill do MCP.
+ * - A cada 'tutor.llm.ollama.keep-alive-refresh-seconds', renova o keep_alive do modelo
+ *   (ModelConfig.getKeepAlive()), que as requisições do LangChain4j não enviam.
+ *
+ * As chamadas são HTTP direto na API do Ollama, porque os builders do LangChain4j não expõem keep_alive.
+ * O aquecimento passa pelo OllamaScheduler com prioridade BACKGROUND: uma pergunta que chegue
+ * nesse meio tempo é atendida primeiro.
+ */
+public class OllamaWarmup {
+
+    // O "turno" usado no aquecimento; só o prefixo antes dele importa para o cache.
+    private static final String WARMUP_MESSAGE = "Olá!";
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final String baseUrl;
+    private final String modelName;
+    private final String keepAlive;
+    private final double temperature;
+    private final Duration timeout;
+    private final List<String> personaLevels;
+    private final long refreshSeconds;
+    private ScheduledExecutorService refresher;
+
+    public OllamaWarmup(String baseUrl, String modelName, String keepAlive, double temperature, Duration timeout,
+                        List<String> personaLevels, long refreshSeconds) {
+        this.baseUrl = baseUrl;
+        this.modelName = modelName;
+        this.keepAlive = keepAlive;
+        this.temperature = temperature;
+        this.timeout = timeout;
+        this.personaLevels = personaLevels;
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    /**
+     * Cria o aquecedor com as mesmas configurações do ModelConfig e as propriedades 'tutor.llm.warmup.*'.
+     */
+    public static OllamaWarmup create() {
+        List<String> personas = new ArrayList<>();
+        for (String level : AppConfig.get("tutor.llm.warmup.personas", "beginner").split(",")) {
+            if (!level.isBlank()) {
+                personas.add(level.trim());
+            }
+        }
+        return new OllamaWarmup(
+                AppConfig.get("tutor.llm.ollama.base-url", "http://localhost:11434"),
+                AppConfig.get("tutor.llm.ollama.model-name"),
+                ModelConfig.getKeepAlive(),
+                AppConfig.getDouble("tutor.llm.model.temperature"),
+                Duration.ofSeconds(AppConfig.getInt("tutor.llm.ollama.timeout")),
+                personas,
+                AppConfig.getInt("tutor.llm.ollama.keep-alive-refresh-seconds", 240));
+    }
+
+    /**
+     * Dispara o aquecimento em segundo plano e agenda a renovação do keep_alive. Não bloqueia.
+     */
+    public void start() {
+        Thread.ofVirtual().name("ollama-warmup").start(this::warmUpPersonas);
+        if (refreshSeconds > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("ollama-keep-alive").daemon().factory());
+            refresher.scheduleAtFixedRate(this::refreshKeepAlive, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    private void warmUpPersonas() {
+        for (String level : personaLevels) {
+            try {
+                List<ChatMessage> prefix = PromptTemplates.getMcp(level);
+                long start = System.nanoTime();
+                JsonObject response = OllamaScheduler.shared().execute(OllamaScheduler.Priority.BACKGROUND, null,
+                        () -> post("/api/chat", chatRequest(prefix)));
+                System.out.printf("[WARMUP] Persona '%s' aquecida em %d ms (carga do modelo: %d ms, prefill de %d tokens: %d ms).%n",
+                        level, (System.nanoTime() - start) / 1_000_000,
+                        nanosToMillis(response, "load_duration"), response.has("prompt_eval_count") ? response.get("prompt_eval_count").getAsInt() : 0,
+                        nanosToMillis(response, "prompt_eval_duration"));
+            } catch (RuntimeException e) {
+                System.err.println("[WARMUP] WARN: Falha ao aquecer a persona '" + level + "': " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Uma requisição de /api/generate sem prompt só carrega o modelo (se preciso) e renova o keep_alive.
+     */
+    private void refreshKeepAlive() {
+        try {
+            JsonObject request = new JsonObject();
+            request.addProperty("model", modelName);
+            request.addProperty("keep_alive", keepAlive);
+            post("/api/generate", request);
+        } catch (RuntimeException e) {
+            System.err.println("[WARMUP] WARN: Falha ao renovar o keep_alive do modelo: " + e.getMessage());
+        }
+    }
+
+    private JsonObject chatRequest(List<ChatMessage> prefix) {
+        JsonArray messages = new JsonArray();
+        for (ChatMessage message : prefix) {
+            messages.add(toJson(message));
+        }
+        messages.add(toJson(UserMessage.from(WARMUP_MESSAGE)));
+
+        JsonObject options = new JsonObject();
+        options.addProperty("temperature", temperature);
+        options.addProperty("num_predict", 1);
+
+        JsonObject request = new JsonObject();
+        request.addProperty("model", modelName);
+        request.add("messages", messages);
+        request.addProperty("stream", false);
+        request.addProperty("keep_alive", keepAlive);
+        request.add("options", options);
+        return request;
+    }
+
+    /**
+     * Converte a mensagem para o formato da API de chat do Ollama, com o mesmo texto que o
+     * LangChain4j envia, para que o prefixo aquecido seja idêntico ao dos turnos.
+     */
+    private static JsonObject toJson(ChatMessage message) {
+        JsonObject json = new JsonObject();
+        if (message instanceof SystemMessage system) {
+            json.addProperty("role", "system");
+            json.addProperty("content", system.text());
+        } else if (message instanceof AiMessage ai) {
+            json.addProperty("role", "assistant");
+            json.addProperty("content", ai.text());
+        } else if (message instanceof UserMessage user) {
+            json.addProperty("role", "user");
+            json.addProperty("content", user.singleText());
+        } else {
+            throw new IllegalArgumentException("Mensagem não suportada no aquecimento: " + message.type());
+        }
+        return json;
+    }
+
+    private JsonObject post(String path, JsonObject body) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("Ollama respondeu " + response.statusCode() + " em " + path + ": " + response.body());
+            }
+            return JsonParser.parseString(response.body()).getAsJsonObject();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha na requisição ao Ollama em " + path, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Requisição ao Ollama interrompida", e);
+        }
+    }
+
+    private static long nanosToMillis(JsonObject response, String field) {
+        return response.has(field) ? response.get(field).getAsLong() / 1_000_000 : 0;
+    }
+}
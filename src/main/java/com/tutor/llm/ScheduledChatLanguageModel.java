@@ -0,0 +1,43 @@
+package com.tutor.llm;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * ChatLanguageModel que passa pelo OllamaScheduler com uma prioridade fixa.
+ * Prompts idênticos em andamento são unidos em uma única chamada ao modelo.
+ */
+public class ScheduledChatLanguageModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final OllamaScheduler scheduler;
+    private final OllamaScheduler.Priority priority;
+
+    public ScheduledChatLanguageModel(ChatLanguageModel delegate, OllamaScheduler scheduler,
+                                      OllamaScheduler.Priority priority) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.priority = priority;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        // As mensagens implementam equals/hashCode, então a lista serve de chave para unir chamadas.
+        return scheduler.execute(priority, List.copyOf(messages), () -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications) {
+        return scheduler.execute(priority, null, () -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, ToolSpecification toolSpecification) {
+        return scheduler.execute(priority, null, () -> delegate.generate(messages, toolSpecification));
+    }
+}
@@ -0,0 +1,63 @@
+package com.tutor.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * StreamingChatLanguageModel que passa pelo OllamaScheduler com uma prioridade fixa.
+ * A vaga é ocupada do início da chamada até o fim da geração (onComplete ou onError).
+ * Gerações com streaming não são unidas: cada cliente recebe os seus próprios tokens.
+ */
+public class ScheduledStreamingChatLanguageModel implements StreamingChatLanguageModel {
+
+    private final StreamingChatLanguageModel delegate;
+    private final OllamaScheduler scheduler;
+    private final OllamaScheduler.Priority priority;
+
+    public ScheduledStreamingChatLanguageModel(StreamingChatLanguageModel delegate, OllamaScheduler scheduler,
+                                               OllamaScheduler.Priority priority) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.priority = priority;
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        scheduler.acquire(priority);
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                scheduler.release();
+            }
+        };
+        try {
+            delegate.generate(messages, new StreamingResponseHandler<AiMessage>() {
+                @Override
+                public void onNext(String token) {
+                    handler.onNext(token);
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    release.run();
+                    handler.onComplete(response);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    release.run();
+                    handler.onError(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+    }
+}
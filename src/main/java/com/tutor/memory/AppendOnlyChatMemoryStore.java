@@ -0,0 +1,385 @@
+package com.tutor.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ChatMemoryStore durável: o histórico de cada sessão é gravado em um log append-only no disco,
+ * para que os alunos não percam a conversa quando o tutor reinicia.
+ *
+ * - Escrita "write-behind": updateMessages() só atualiza a memória e enfileira a sessão; uma thread
+ *   dedicada grava em lotes (um fsync por lote) e várias atualizações da mesma sessão viram uma só.
+ * - Em memória ficam apenas as sessões quentes (LRU) e, para cada sessão guardada, a posição do seu
+ *   último registro no log. O log guarda no máximo 'maxSessions' sessões: na compactação, as gravadas
+ *   há mais tempo são descartadas, então o índice (e o limite de compactação) não cresce com o número
+ *   de alunos que já passaram pelo tutor.
+ * - Na abertura, o log é varrido para montar o índice de posições; registros incompletos (queda no
+ *   meio de uma gravação) são descartados.
+ * - Quando o log passa a ter muitos registros antigos, ele é compactado: na abertura ou, com o tutor
+ *   no ar, pela própria thread de escrita depois de um lote, ou quando o índice passa de 'maxSessions'
+ *   com folga. Como o limite é proporcional ao número de sessões vivas, o custo da compactação se dilui
+ *   entre as gravações e o log não cresce sem limite. A cópia segue a ordem do log, então a posição de
+ *   uma sessão continua indicando quando ela foi gravada pela última vez.
+ *
+ * Formato de cada registro: [int tamanho do id][id UTF-8][int tamanho do JSON, -1 = sessão apagada][JSON].
+ */
+public class AppendOnlyChatMemoryStore implements ChatMemoryStore, AutoCloseable {
+
+    private static final int DELETED = -1;
+
+    // Marcador na fila de gravação que encerra a thread de escrita (nenhum ID de sessão começa com \0).
+    private static final String STOP = "\0stop";
+
+    // Compacta o log quando ele tem mais que isso de registros por sessão viva.
+    private static final int COMPACTION_RATIO = 4;
+
+    private final Path logFile;
+    // Trocado pela compactação; o lock impede uma leitura de misturar o arquivo antigo e o índice novo.
+    private volatile FileChannel channel;
+    private final ReentrantReadWriteLock channelLock = new ReentrantReadWriteLock();
+    // Registros no log (válidos ou substituídos); alterado só na abertura e pela thread de escrita.
+    private int records;
+    private final int maxHotSessions;
+    private final int maxSessions;
+
+    // Sessões quentes, em ordem de acesso (LRU).
+    private final Map<String, List<ChatMessage>> hotSessions;
+
+    // Posição do último registro de cada sessão no log.
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+    // Versão mais recente ainda não gravada de cada sessão (lida antes do disco).
+    private final Map<String, String> pendingWrites = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> writeQueue = new LinkedBlockingQueue<>();
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param logFile        O arquivo do log (criado se não existir).
+     * @param maxHotSessions Quantas sessões manter desserializadas em memória.
+     * @param maxSessions    Quantas sessões guardar no log; as gravadas há mais tempo saem na compactação.
+     */
+    public AppendOnlyChatMemoryStore(Path logFile, int maxHotSessions, int maxSessions) {
+        this.logFile = logFile;
+        this.maxHotSessions = maxHotSessions;
+        this.maxSessions = maxSessions;
+        this.hotSessions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<ChatMessage>> eldest) {
+                return size() > AppendOnlyChatMemoryStore.this.maxHotSessions;
+            }
+        };
+        try {
+            Path parent = logFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            records = rebuildIndex();
+            if (needsCompaction()) {
+                compact();
+            }
+            this.channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao abrir o log de memória de chat: " + logFile, e);
+        }
+        System.out.println("[MEMORY] Log de sessões aberto em " + logFile + " com " + offsets.size() + " sessões.");
+
+        this.writer = new Thread(this::writeLoop, "chat-memory-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        String sessionId = memoryId.toString();
+        synchronized (hotSessions) {
+            List<ChatMessage> hot = hotSessions.get(sessionId);
+            if (hot != null) {
+                return hot;
+            }
+        }
+        // Fora do LRU: a versão pendente é mais nova que a do disco.
+        String json = pendingWrites.get(sessionId);
+        if (json == null) {
+            json = readFromLog(sessionId);
+        }
+        List<ChatMessage> messages = json == null || json.isEmpty()
+                ? List.of()
+                : List.copyOf(ChatMessageDeserializer.messagesFromJson(json));
+        synchronized (hotSessions) {
+            hotSessions.putIfAbsent(sessionId, messages);
+        }
+        return messages;
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        String sessionId = memoryId.toString();
+        List<ChatMessage> snapshot = List.copyOf(messages);
+        synchronized (hotSessions) {
+            hotSessions.put(sessionId, snapshot);
+        }
+        pendingWrites.put(sessionId, ChatMessageSerializer.messagesToJson(snapshot));
+        writeQueue.add(sessionId);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String sessionId = memoryId.toString();
+        synchronized (hotSessions) {
+            hotSessions.remove(sessionId);
+        }
+        pendingWrites.put(sessionId, "");
+        writeQueue.add(sessionId);
+    }
+
+    /**
+     * Grava o que estiver pendente e fecha o log.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Sem interrupt(): interromper a thread no meio de uma escrita fecharia o FileChannel.
+        writeQueue.add(STOP);
+        try {
+            writer.join();
+            flushBatch(drainQueue());
+            channel.force(true);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("[MEMORY] WARN: Falha ao fechar o log de sessões: " + e.getMessage());
+        }
+    }
+
+    // ====================================================================================
+    // Gravação em segundo plano
+    // ====================================================================================
+
+    private void writeLoop() {
+        while (true) {
+            try {
+                Set<String> batch = new LinkedHashSet<>();
+                batch.add(writeQueue.take());
+                batch.addAll(drainQueue());
+                boolean stop = batch.remove(STOP);
+                flushBatch(batch);
+                if (stop) {
+                    return; // close() grava o que chegar depois
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("[MEMORY] ERRO ao gravar sessões no log: " + e.getMessage());
+            }
+        }
+    }
+
+    private Set<String> drainQueue() {
+        List<String> drained = new ArrayList<>();
+        writeQueue.drainTo(drained);
+        return new LinkedHashSet<>(drained);
+    }
+
+    /**
+     * Grava a versão mais recente de cada sessão do lote com um único fsync.
+     * Uma sessão só sai de pendingWrites se não foi atualizada de novo durante a gravação.
+     */
+    private void flushBatch(Set<String> sessionIds) throws IOException {
+        Map<String, String> written = new HashMap<>();
+        Map<String, Long> newOffsets = new HashMap<>();
+        for (String sessionId : sessionIds) {
+            String json = pendingWrites.get(sessionId);
+            if (json == null) {
+                continue; // já gravada por um lote anterior
+            }
+            newOffsets.put(sessionId, append(sessionId, json.isEmpty() ? null : json));
+            written.put(sessionId, json);
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+        channel.force(false);
+        newOffsets.forEach((sessionId, offset) -> {
+            if (written.get(sessionId).isEmpty()) {
+                offsets.remove(sessionId);
+            } else {
+                offsets.put(sessionId, offset);
+            }
+        });
+        written.forEach((sessionId, json) -> pendingWrites.remove(sessionId, json));
+        records += written.size();
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    private boolean needsCompaction() {
+        return records > COMPACTION_RATIO * Math.max(1, offsets.size())
+                || offsets.size() > maxSessions + maxSessions / 4;
+    }
+
+    private long append(String sessionId, String json) throws IOException {
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = json == null ? new byte[0] : json.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(8 + id.length + payload.length);
+        record.putInt(id.length).put(id).putInt(json == null ? DELETED : payload.length).put(payload).flip();
+        long offset = channel.size();
+        while (record.hasRemaining()) {
+            channel.write(record, offset + record.position());
+        }
+        return offset;
+    }
+
+    // ====================================================================================
+    // Leitura e manutenção do log
+    // ====================================================================================
+
+    private String readFromLog(String sessionId) {
+        channelLock.readLock().lock();
+        try {
+            Long offset = offsets.get(sessionId);
+            if (offset == null) {
+                return null;
+            }
+            ByteBuffer header = readFully(channel, offset, 4);
+            int idLength = header.getInt();
+            ByteBuffer lengthBuffer = readFully(channel, offset + 4 + idLength, 4);
+            int payloadLength = lengthBuffer.getInt();
+            if (payloadLength == DELETED) {
+                return null;
+            }
+            ByteBuffer payload = readFully(channel, offset + 8 + idLength, payloadLength);
+            return StandardCharsets.UTF_8.decode(payload).toString();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao ler a sessão " + sessionId + " do log", e);
+        } finally {
+            channelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Varre o log e guarda a posição do último registro de cada sessão.
+     * Um registro incompleto no final (queda durante a gravação) é cortado.
+     *
+     * @return Quantos registros válidos o log tem.
+     */
+    private int rebuildIndex() throws IOException {
+        if (!Files.exists(logFile)) {
+            return 0;
+        }
+        int records = 0;
+        try (FileChannel in = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position + 4 <= size) {
+                int idLength = readFully(in, position, 4).getInt();
+                if (idLength < 0 || position + 8 + idLength > size) {
+                    break;
+                }
+                ByteBuffer idBuffer = readFully(in, position + 4, idLength);
+                int payloadLength = readFully(in, position + 4 + idLength, 4).getInt();
+                long next = position + 8 + idLength + Math.max(0, payloadLength);
+                if (payloadLength < DELETED || next > size) {
+                    break;
+                }
+                String sessionId = StandardCharsets.UTF_8.decode(idBuffer).toString();
+                if (payloadLength == DELETED) {
+                    offsets.remove(sessionId);
+                } else {
+                    offsets.put(sessionId, position);
+                }
+                records++;
+                position = next;
+            }
+            if (position < size) {
+                System.err.println("[MEMORY] WARN: Registro incompleto no fim do log de sessões. Descartando " + (size - position) + " bytes.");
+                in.truncate(position);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reescreve o log só com a versão mais recente de cada sessão, na ordem do log, e descarta as
+     * gravadas há mais tempo além de maxSessions. Roda na abertura ou na thread de escrita, então nenhum
+     * registro é acrescentado durante a cópia; as leituras continuam no arquivo antigo até a troca.
+     */
+    private void compact() throws IOException {
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        List<Map.Entry<String, Long>> live = new ArrayList<>(offsets.entrySet());
+        live.sort(Map.Entry.comparingByValue());
+        List<Map.Entry<String, Long>> expired = live.subList(0, Math.max(0, live.size() - maxSessions));
+        List<String> dropped = new ArrayList<>(expired.size());
+        expired.forEach(entry -> dropped.add(entry.getKey()));
+        expired.clear();
+        Map<String, Long> compacted = new HashMap<>();
+        try (FileChannel in = FileChannel.open(logFile, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, Long> entry : live) {
+                long offset = entry.getValue();
+                int idLength = readFully(in, offset, 4).getInt();
+                int payloadLength = readFully(in, offset + 4 + idLength, 4).getInt();
+                compacted.put(entry.getKey(), out.position());
+                long length = 8L + idLength + payloadLength;
+                long copied = 0;
+                while (copied < length) {
+                    copied += in.transferTo(offset + copied, length - copied, out);
+                }
+            }
+            out.force(true);
+        }
+        channelLock.writeLock().lock();
+        try {
+            Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            offsets.putAll(compacted);
+            dropped.forEach(offsets::remove);
+            if (channel != null) {
+                channel.close();
+                channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        } finally {
+            channelLock.writeLock().unlock();
+        }
+        records = compacted.size();
+        System.out.println("[MEMORY] Log de sessões compactado: " + compacted.size() + " sessões"
+                + (dropped.isEmpty() ? "." : ", " + dropped.size() + " antigas descartadas."));
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Fim inesperado do log de sessões");
+            }
+        }
+        return buffer.flip();
+    }
+}
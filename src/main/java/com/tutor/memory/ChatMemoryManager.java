@@ -0,0 +1,188 @@
+package com.tutor.memory;
+
+import com.tutor.config.AppConfig;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gerencia uma memória de chat por sessão (aluno). Cada memória guarda apenas as últimas mensagens
+ * da conversa, como a antiga memória compartilhada do modo console. O MCP do tutor não fica na memória:
+ * as cadeias o colocam como prefixo fixo de cada prompt (ver StreamingTutorChain).
+ *
+ * As mensagens ficam no AppendOnlyChatMemoryStore, então sobrevivem a reinícios. Sessões sem uso
+ * por mais de 'tutor.memory.session-idle-minutes' saem deste gerenciador, mas continuam no disco: o aluno retoma a conversa quando voltar com o mesmo ID.
+ * O disco guarda as 'tutor.memory.max-sessions' sessões gravadas mais recentemente; as mais antigas são esquecidas.
+ */
+public class ChatMemoryManager {
+
+    /**
+     * Uma sessão de conversa. O lock serializa os turnos da mesma sessão: a MessageWindowChatMemory
+     * não é thread-safe e duas respostas simultâneas embaralhariam o histórico.
+     * É um ReentrantLock (e não synchronized) para não prender a thread portadora das virtual threads
+     * enquanto o turno espera o Ollama.
+     *
+     * A sessão só sai do gerenciador com o lock na mão; quem a obteve antes disso e ainda não pegou o lock
+     * encontra 'evicted' ao pegá-lo e busca a sessão de novo (ver acquire).
+     */
+    public static final class Session {
+        private final String id;
+        private final ChatMemory memory;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long lastAccessMillis = System.currentTimeMillis();
+        // Alterado só com o lock na mão.
+        private boolean evicted;
+
+        private Session(String id, ChatMemory memory) {
+            this.id = id;
+            this.memory = memory;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public ChatMemory memory() {
+            return memory;
+        }
+
+        public ReentrantLock lock() {
+            return lock;
+        }
+    }
+
+    // Intervalo mínimo entre duas varreduras de sessões ociosas.
+    private static final long EVICTION_INTERVAL_MILLIS = 60_000;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ChatMemoryStore chatMemoryStore;
+    private final int maxMessages;
+    private final long idleTimeoutMillis;
+    private volatile long lastEvictionMillis = System.currentTimeMillis();
+
+    /**
+     * @param chatMemoryStore Onde as mensagens de todas as sessões são guardadas.
+     * @param maxMessages     Quantas mensagens da conversa cada sessão mantém.
+     * @param idleTimeout     Tempo sem uso após o qual a sessão é descartada da memória.
+     */
+    public ChatMemoryManager(ChatMemoryStore chatMemoryStore, int maxMessages, Duration idleTimeout) {
+        this.chatMemoryStore = chatMemoryStore;
+        this.maxMessages = maxMessages;
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+    }
+
+    /**
+     * Cria o gerenciador a partir das propriedades 'tutor.memory.*'.
+     */
+    public static ChatMemoryManager create() {
+        AppendOnlyChatMemoryStore store = new AppendOnlyChatMemoryStore(
+                Paths.get(AppConfig.get("tutor.memory.file", "sessions/chat-memory.log")),
+                AppConfig.getInt("tutor.memory.hot-sessions", 1000),
+                AppConfig.getInt("tutor.memory.max-sessions", 50_000));
+        return new ChatMemoryManager(store,
+                AppConfig.getInt("tutor.memory.max-messages", 20),
+                Duration.ofMinutes(AppConfig.getInt("tutor.memory.session-idle-minutes", 60)));
+    }
+
+    /**
+     * Devolve a sessão com o ID informado, criando-a se ainda não existir.
+     */
+    public Session getOrCreate(String sessionId) {
+        evictIdleSessions();
+        Session session = sessions.computeIfAbsent(sessionId, id -> new Session(id, newMemory(id)));
+        session.lastAccessMillis = System.currentTimeMillis();
+        return session;
+    }
+
+    /**
+     * Devolve a sessão com o ID informado (criando-a se preciso) já com o lock na mão, para um turno.
+     * Quem chama deve liberar o lock ao final do turno.
+     */
+    public Session acquire(String sessionId) {
+        while (true) {
+            Session session = getOrCreate(sessionId);
+            session.lock.lock();
+            if (!session.evicted) {
+                return session;
+            }
+            // Descartada entre o getOrCreate e o lock: a próxima volta pega (ou cria) a sessão atual.
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Encerra a sessão e apaga o seu histórico. Se houver um turno em andamento, espera ele terminar,
+     * para que a resposta não grave o histórico de novo depois de apagado.
+     */
+    public void remove(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            chatMemoryStore.deleteMessages(sessionId);
+            return;
+        }
+        session.lock.lock();
+        try {
+            session.evicted = true;
+            sessions.remove(sessionId, session);
+            chatMemoryStore.deleteMessages(sessionId);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    public int activeSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Grava o que estiver pendente no store (chamado no encerramento da aplicação).
+     */
+    public void close() {
+        if (chatMemoryStore instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                System.err.println("[MEMORY] WARN: Falha ao fechar o store de memória: " + e.getMessage());
+            }
+        }
+    }
+
+    private ChatMemory newMemory(String sessionId) {
+        return MessageWindowChatMemory.builder()
+                .id(sessionId)
+                .maxMessages(maxMessages)
+                .chatMemoryStore(chatMemoryStore)
+                .build();
+    }
+
+    /**
+     * Descarta as sessões ociosas. Roda no máximo uma vez por minuto e só remove uma sessão com o seu
+     * lock na mão: uma sessão no meio de um turno (ou disputada) fica para a próxima varredura.
+     */
+    private void evictIdleSessions() {
+        long now = System.currentTimeMillis();
+        if (now - lastEvictionMillis < EVICTION_INTERVAL_MILLIS) {
+            return;
+        }
+        lastEvictionMillis = now;
+        for (Session session : sessions.values()) {
+            if (now - session.lastAccessMillis <= idleTimeoutMillis || !session.lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (now - session.lastAccessMillis > idleTimeoutMillis) {
+                    session.evicted = true;
+                    sessions.remove(session.id, session);
+                }
+            } finally {
+                session.lock.unlock();
+            }
+        }
+    }
+}
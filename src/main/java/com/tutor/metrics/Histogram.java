@@ -0,0 +1,130 @@
+package com.tutor.metrics;
+
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de buckets fixos, no formato do Prometheus. A gravação só incrementa contadores
+ * (LongAdder), sem alocar objetos nem travar, então pode ficar no caminho quente.
+ */
+public final class Histogram implements HistogramMXBean {
+
+    private final String name;
+    private final String labelName;
+    private final String labelValue;
+    private final String help;
+    private final double[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final DoubleAccumulator max = new DoubleAccumulator(Math::max, 0);
+
+    /**
+     * @param name       Nome da métrica no Prometheus (ex: "tutor_stage_seconds").
+     * @param labelName  Nome do rótulo que diferencia as séries (ex: "stage"), ou null.
+     * @param labelValue Valor do rótulo (ex: "routing").
+     * @param help       Descrição da métrica.
+     * @param bounds     Limites superiores dos buckets, em ordem crescente.
+     */
+    public Histogram(String name, String labelName, String labelValue, String help, double... bounds) {
+        this.name = name;
+        this.labelName = labelName;
+        this.labelValue = labelValue;
+        this.help = help;
+        this.bounds = bounds;
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(double value) {
+        if (!TutorMetrics.ENABLED) {
+            return;
+        }
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Grava o tempo decorrido desde 'startNanos' (obtido com TutorMetrics.start()), em segundos.
+     */
+    public void recordSince(long startNanos) {
+        if (!TutorMetrics.ENABLED) {
+            return;
+        }
+        record((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String help() {
+        return help;
+    }
+
+    /**
+     * Escreve as linhas _bucket, _sum e _count desta série no formato de exposição do Prometheus.
+     */
+    void writePrometheus(StringBuilder out) {
+        String labels = labelName == null ? "" : labelName + "=\"" + labelValue + "\",";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(labels).append("le=\"").append(bounds[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += buckets[bounds.length].sum();
+        out.append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        String plainLabels = labelName == null ? "" : "{" + labelName + "=\"" + labelValue + "\"}";
+        out.append(name).append("_sum").append(plainLabels).append(' ').append(sum.sum()).append('\n');
+        out.append(name).append("_count").append(plainLabels).append(' ').append(count.sum()).append('\n');
+    }
+
+    String objectNameKey() {
+        return labelName == null ? name : name + "." + labelValue;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getSum() {
+        return sum.sum();
+    }
+
+    @Override
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    @Override
+    public double getMax() {
+        return max.get();
+    }
+
+    @Override
+    public double[] getBucketBounds() {
+        return bounds.clone();
+    }
+
+    @Override
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,25 @@
+package com.tutor.metrics;
+
+/**
+ * Visão JMX de um Histogram (JConsole / VisualVM em com.tutor:type=Metrics).
+ */
+public interface HistogramMXBean {
+
+    long getCount();
+
+    double getSum();
+
+    double getMean();
+
+    double getMax();
+
+    /**
+     * @return Os limites superiores dos buckets, na unidade do histograma.
+     */
+    double[] getBucketBounds();
+
+    /**
+     * @return A contagem de cada bucket (não acumulada); o último é o "+Inf".
+     */
+    long[] getBucketCounts();
+}
@@ -0,0 +1,64 @@
+package com.tutor.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tutor.config.AppConfig;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Endpoint local com as métricas no formato do Prometheus: GET http://localhost:PORT/metrics.
+ *
+ * Escuta apenas no loopback e tem uma porta própria ('tutor.metrics.port'), para funcionar
+ * tanto no modo console quanto no modo servidor sem expor as métricas aos alunos.
+ */
+public class MetricsEndpoint {
+
+    private final int port;
+    private HttpServer server;
+
+    public MetricsEndpoint(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Cria o endpoint na porta definida em 'tutor.metrics.port'.
+     */
+    public static MetricsEndpoint create() {
+        return new MetricsEndpoint(AppConfig.getInt("tutor.metrics.port", 9464));
+    }
+
+    public void start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao abrir o endpoint de métricas na porta " + port, e);
+        }
+        // Uma raspagem a cada poucos segundos: a thread padrão do HttpServer basta.
+        server.createContext("/metrics", this::handleMetrics);
+        server.start();
+        System.out.println("[METRICS] Métricas disponíveis em http://localhost:" + port + "/metrics");
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = TutorMetrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+}
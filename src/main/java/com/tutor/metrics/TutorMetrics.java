@@ -0,0 +1,143 @@
+package com.tutor.metrics;
+
+import com.tutor.config.AppConfig;
+import com.tutor.llm.OllamaScheduler;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Métricas de latência e vazão de cada etapa de um turno, para saber onde o tempo é gasto
+ * (roteamento, transformação da consulta, embeddings, busca, geração) antes de otimizar.
+ *
+ * Os histogramas são campos estáticos fixos: o caminho quente só incrementa contadores, sem
+ * procurar a métrica por nome. Com 'tutor.metrics.enabled=false', start() nem lê o relógio e
+ * record() retorna na primeira linha, então a instrumentação não aloca nada.
+ *
+ * As métricas são publicadas no JMX (com.tutor:type=Metrics,name=...) e no formato de texto do
+ * Prometheus pelo MetricsEndpoint.
+ *
+ * Uso:
+ * <pre>
+ *     long t0 = TutorMetrics.start();
+ *     ...
+ *     TutorMetrics.ROUTING.recordSince(t0);
+ * </pre>
+ */
+public final class TutorMetrics {
+
+    public static final boolean ENABLED = AppConfig.getBoolean("tutor.metrics.enabled", false);
+
+    // Limites dos buckets de latência, em segundos (de 5 ms até a geração mais longa do phi3 sem GPU).
+    private static final double[] LATENCY_BOUNDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private static final String STAGE_SECONDS = "tutor_stage_seconds";
+    private static final String STAGE_HELP = "Duração de cada etapa do turno, em segundos.";
+
+    /** O turno inteiro, do recebimento da pergunta até o último token. */
+    public static final Histogram TURN = stage("turn");
+    /** Decisão do EmbeddingRouter (incluindo o fallback para o RouterAgent). */
+    public static final Histogram ROUTING = stage("routing");
+    /** Reescrita da pergunta pelo QueryTransformer. */
+    public static final Histogram QUERY_TRANSFORM = stage("query_transform");
+    /** Lote de embeddings das sub-consultas. */
+    public static final Histogram QUERY_EMBEDDING = stage("query_embedding");
+    /** Cada busca no banco vetorial. */
+    public static final Histogram DENSE_SEARCH = stage("dense_search");
+    /** Cada busca no índice BM25. */
+    public static final Histogram LEXICAL_SEARCH = stage("lexical_search");
+    /** A recuperação completa do RAG (transformação, embeddings, buscas e fusão). */
+    public static final Histogram RETRIEVAL = stage("retrieval");
+    /** Reordenação dos candidatos pelo cross-encoder. */
+    public static final Histogram RERANK = stage("rerank");
+    /** A geração da resposta, do envio do prompt ao último token. */
+    public static final Histogram GENERATION = stage("generation");
+    /** Tempo até o primeiro token da resposta (inclui a avaliação do prompt). */
+    public static final Histogram TIME_TO_FIRST_TOKEN = stage("time_to_first_token");
+
+    /** Vazão da geração depois do primeiro token. */
+    public static final Histogram TOKENS_PER_SECOND = new Histogram("tutor_generation_tokens_per_second", null, null,
+            "Tokens por segundo gerados após o primeiro token.", 1, 2, 5, 10, 15, 20, 30, 50, 100);
+
+    private static final double[] BATCH_BOUNDS = {1, 2, 4, 8, 16, 32, 64, 128};
+    private static final String BATCH_HELP = "Quantidade de textos por chamada ao modelo de embedding.";
+    public static final Histogram QUERY_EMBEDDING_BATCH = new Histogram("tutor_embedding_batch_size", "source", "query", BATCH_HELP, BATCH_BOUNDS);
+    public static final Histogram INGEST_EMBEDDING_BATCH = new Histogram("tutor_embedding_batch_size", "source", "ingest", BATCH_HELP, BATCH_BOUNDS);
+
+    private static final double[] HIT_BOUNDS = {0, 1, 2, 3, 5, 8, 13, 21};
+    private static final String HITS_HELP = "Quantidade de segmentos devolvidos por busca.";
+    public static final Histogram DENSE_HITS = new Histogram("tutor_retrieval_hits", "source", "dense", HITS_HELP, HIT_BOUNDS);
+    public static final Histogram LEXICAL_HITS = new Histogram("tutor_retrieval_hits", "source", "lexical", HITS_HELP, HIT_BOUNDS);
+    public static final Histogram FUSED_HITS = new Histogram("tutor_retrieval_hits", "source", "fused", HITS_HELP, HIT_BOUNDS);
+
+    /** Similaridade de cada segmento devolvido pela busca densa. */
+    public static final Histogram DENSE_SCORE = new Histogram("tutor_retrieval_score", "source", "dense",
+            "Similaridade dos segmentos devolvidos pela busca densa.", 0.5, 0.6, 0.65, 0.7, 0.75, 0.8, 0.85, 0.9, 0.95, 1);
+
+    private static final List<Histogram> ALL = List.of(TURN, ROUTING, QUERY_TRANSFORM, QUERY_EMBEDDING, DENSE_SEARCH,
+            LEXICAL_SEARCH, RETRIEVAL, RERANK, GENERATION, TIME_TO_FIRST_TOKEN, TOKENS_PER_SECOND,
+            QUERY_EMBEDDING_BATCH, INGEST_EMBEDDING_BATCH, DENSE_HITS, LEXICAL_HITS, FUSED_HITS, DENSE_SCORE);
+
+    static {
+        if (ENABLED) {
+            registerMBeans();
+        }
+    }
+
+    private TutorMetrics() {
+    }
+
+    /**
+     * @return O instante inicial de uma medição, ou 0 se as métricas estiverem desativadas.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Escreve todas as métricas no formato de texto do Prometheus (versão 0.0.4).
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(8 * 1024);
+        String previousName = null;
+        for (Histogram histogram : ALL) {
+            // As séries de uma mesma métrica estão juntas na lista; o cabeçalho sai uma vez só.
+            if (!histogram.name().equals(previousName)) {
+                out.append("# HELP ").append(histogram.name()).append(' ').append(histogram.help()).append('\n');
+                out.append("# TYPE ").append(histogram.name()).append(" histogram\n");
+                previousName = histogram.name();
+            }
+            histogram.writePrometheus(out);
+        }
+
+        OllamaScheduler scheduler = OllamaScheduler.shared();
+        out.append("# HELP tutor_llm_queue_depth Chamadas esperando vaga no agendador do Ollama.\n");
+        out.append("# TYPE tutor_llm_queue_depth gauge\n");
+        for (OllamaScheduler.Priority priority : OllamaScheduler.Priority.values()) {
+            out.append("tutor_llm_queue_depth{priority=\"").append(priority.name().toLowerCase(Locale.ROOT))
+                    .append("\"} ").append(scheduler.queueDepth(priority)).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Histogram histogram : ALL) {
+            try {
+                ObjectName name = new ObjectName("com.tutor:type=Metrics,name=" + histogram.objectNameKey());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(histogram, name);
+                }
+            } catch (Exception e) {
+                System.err.println("[METRICS] WARN: Falha ao registrar " + histogram.objectNameKey() + " no JMX: " + e.getMessage());
+            }
+        }
+    }
+
+    private static Histogram stage(String stage) {
+        return new Histogram(STAGE_SECONDS, "stage", stage, STAGE_HELP, LATENCY_BOUNDS);
+    }
+}
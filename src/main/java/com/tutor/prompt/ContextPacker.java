@@ -0,0 +1,246 @@
+package com.tutor.prompt;
+
+import com.tutor.config.AppConfig;
+import com.tutor.rag.PassageStitcher;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Monta o contexto enviado ao LLM dentro de um orçamento de tokens.
+ *
+ * No phi3:mini o tempo de avaliação do prompt (prefill) cresce com o tamanho do prompt, então
+ * o prompt precisa ter um teto previsível, por mais longa que seja a sessão:
+ * - As fontes do RAG perdem os quase-duplicados (o overlap de 100 caracteres do splitter gera
+ *   muitos), os trechos vizinhos do mesmo arquivo viram um só bloco e o total é limitado a
+ *   'tutor.context.information-tokens'.
+ * - O histórico é cortado das mensagens mais antigas para as mais novas até caber em
+ *   'tutor.context.max-tokens'. A mensagem de sistema (persona) e a pergunta atual nunca saem.
+ *
+ * A contagem de tokens é uma estimativa por caracteres (não há tokenizer do phi3 no classpath);
+ * ela é propositalmente conservadora.
+ */
+public class ContextPacker {
+
+    // Média de caracteres por token para texto em português/inglês em tokenizers do tipo Llama.
+    private static final double CHARS_PER_TOKEN = 3.5;
+
+    // Custo fixo de cada mensagem no template de chat (marcadores de papel e separadores).
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    // Blocos que sobrariam com menos que isso de espaço não valem o corte.
+    private static final int MIN_TRUNCATED_TOKENS = 48;
+
+    private final int maxTokens;
+    private final int informationTokens;
+    private final double duplicateThreshold;
+
+    /**
+     * @param maxTokens          Orçamento total do prompt (histórico + pergunta com as fontes).
+     * @param informationTokens  Orçamento das fontes recuperadas dentro do prompt.
+     * @param duplicateThreshold Similaridade (Jaccard de trigramas de palavras) a partir da qual
+     *                           dois trechos são considerados o mesmo.
+     */
+    public ContextPacker(int maxTokens, int informationTokens, double duplicateThreshold) {
+        this.maxTokens = maxTokens;
+        this.informationTokens = informationTokens;
+        this.duplicateThreshold = duplicateThreshold;
+    }
+
+    /**
+     * Cria o empacotador a partir das propriedades 'tutor.context.*'.
+     */
+    public static ContextPacker create() {
+        return new ContextPacker(
+                AppConfig.getInt("tutor.context.max-tokens", 2048),
+                AppConfig.getInt("tutor.context.information-tokens", 768),
+                AppConfig.getDouble("tutor.context.duplicate-threshold", 0.8));
+    }
+
+    /**
+     * Monta o texto das fontes para o {{information}} do template de RAG.
+     *
+     * @param segments Os segmentos recuperados, do mais para o menos relevante.
+     * @return As fontes deduplicadas, agrupadas e limitadas ao orçamento.
+     */
+    public String packInformation(List<TextSegment> segments) {
+        List<TextSegment> unique = removeNearDuplicates(segments);
+        // Os trechos vizinhos do mesmo arquivo viram um só bloco, sem a sobreposição do splitter.
+        List<TextSegment> passages = PassageStitcher.stitch(unique);
+
+        StringBuilder information = new StringBuilder();
+        int used = 0;
+        for (TextSegment passage : passages) {
+            String block = passage.text();
+            int tokens = estimateTokens(block);
+            if (used + tokens <= informationTokens) {
+                appendBlock(information, block);
+                used += tokens;
+                continue;
+            }
+            // O bloco não cabe inteiro: aproveita o espaço restante se ainda for útil, e para.
+            int remaining = informationTokens - used;
+            if (remaining >= MIN_TRUNCATED_TOKENS) {
+                appendBlock(information, truncate(block, remaining));
+            }
+            break;
+        }
+        return information.toString();
+    }
+
+    /**
+     * Corta o histórico para caber no orçamento total, descartando primeiro as mensagens mais antigas.
+     * As mensagens de sistema e a última mensagem (a pergunta atual) são sempre mantidas, e o histórico
+     * restante sempre começa por uma mensagem do usuário.
+     *
+     * @param messages O histórico completo, terminando na pergunta atual.
+     * @return As mensagens a enviar ao modelo.
+     */
+    public List<ChatMessage> packMessages(List<ChatMessage> messages) {
+        return packMessages(messages, firstTrimmable(messages));
+    }
+
+    /**
+     * Como packMessages(messages), mas as primeiras 'fixedPrefix' mensagens (o MCP, com o exemplo
+     * few-shot) nunca são descartadas, para que o início do prompt seja sempre o mesmo.
+     *
+     * @param messages    O prefixo fixo seguido do histórico, terminando na pergunta atual.
+     * @param fixedPrefix Quantas mensagens do início são o prefixo fixo.
+     * @return As mensagens a enviar ao modelo.
+     */
+    public List<ChatMessage> packMessages(List<ChatMessage> messages, int fixedPrefix) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        List<ChatMessage> packed = new ArrayList<>(messages);
+        int total = 0;
+        for (ChatMessage message : packed) {
+            total += estimateTokens(message);
+        }
+
+        int index = fixedPrefix;
+        while (total > maxTokens && index < packed.size() - 1) {
+            total -= estimateTokens(packed.remove(index));
+        }
+        // Não deixa uma resposta do tutor "órfã" no começo do histórico.
+        while (index < packed.size() - 1 && packed.get(index) instanceof AiMessage) {
+            packed.remove(index);
+        }
+        return packed;
+    }
+
+    /**
+     * Estima quantos tokens um texto ocupa.
+     */
+    public static int estimateTokens(String text) {
+        return (int) Math.ceil(text.length() / CHARS_PER_TOKEN);
+    }
+
+    private static int estimateTokens(ChatMessage message) {
+        return TOKENS_PER_MESSAGE + estimateTokens(textOf(message));
+    }
+
+    private static String textOf(ChatMessage message) {
+        if (message instanceof SystemMessage system) {
+            return system.text();
+        }
+        if (message instanceof AiMessage ai) {
+            return ai.text() != null ? ai.text() : "";
+        }
+        if (message instanceof UserMessage user && user.hasSingleText()) {
+            return user.singleText();
+        }
+        return message.toString();
+    }
+
+    /**
+     * Índice da primeira mensagem que pode ser descartada (logo após as mensagens de sistema iniciais).
+     */
+    private static int firstTrimmable(List<ChatMessage> messages) {
+        int index = 0;
+        while (index < messages.size() && messages.get(index) instanceof SystemMessage) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Remove os trechos quase iguais a um trecho mais relevante já aceito.
+     */
+    private List<TextSegment> removeNearDuplicates(List<TextSegment> segments) {
+        List<TextSegment> accepted = new ArrayList<>();
+        List<Set<String>> acceptedShingles = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            Set<String> shingles = shingles(segment.text());
+            boolean duplicate = false;
+            for (Set<String> other : acceptedShingles) {
+                if (jaccard(shingles, other) >= duplicateThreshold) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                accepted.add(segment);
+                acceptedShingles.add(shingles);
+            }
+        }
+        return accepted;
+    }
+
+    private static void appendBlock(StringBuilder information, String block) {
+        if (!information.isEmpty()) {
+            information.append("\n\n");
+        }
+        information.append(block);
+    }
+
+    /**
+     * Corta o texto para caber no número de tokens, preferindo terminar em um fim de frase ou palavra.
+     */
+    private static String truncate(String text, int tokens) {
+        int maxChars = (int) (tokens * CHARS_PER_TOKEN);
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        String cut = text.substring(0, maxChars);
+        int sentenceEnd = Math.max(cut.lastIndexOf(". "), cut.lastIndexOf('\n'));
+        if (sentenceEnd > maxChars / 2) {
+            return cut.substring(0, sentenceEnd + 1);
+        }
+        int space = cut.lastIndexOf(' ');
+        return (space > 0 ? cut.substring(0, space) : cut) + "...";
+    }
+
+    private static Set<String> shingles(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("\\W+");
+        Set<String> shingles = new HashSet<>();
+        for (int i = 0; i + 2 < words.length; i++) {
+            shingles.add(words[i] + " " + words[i + 1] + " " + words[i + 2]);
+        }
+        if (shingles.isEmpty()) {
+            shingles.add(String.join(" ", words));
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int intersection = 0;
+        for (String shingle : smaller) {
+            if (larger.contains(shingle)) {
+                intersection++;
+            }
+        }
+        int union = a.size() + b.size() - intersection;
+        return union == 0 ? 1.0 : (double) intersection / union;
+    }
+}
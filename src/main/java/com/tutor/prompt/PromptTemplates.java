@@ -8,6 +8,7 @@ import dev.langchain4j.data.message.SystemMessage;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Contém templates de prompts e "Master Control Prompts" (MCP) para o tutor de inglês.
@@ -112,6 +113,25 @@ public final class PromptTemplates {
         return Arrays.asList(systemPrompt, exampleUserMessage, exampleAiMessage);
     }
 
+    /**
+     * Retorna o MCP do nível informado ("beginner", "intermediate" ou "advanced").
+     *
+     * O MCP é o prefixo fixo de todo prompt enviado ao modelo: as cadeias o colocam antes do histórico,
+     * das fontes e da pergunta, e ele nunca é cortado. Como o texto é idêntico byte a byte em todos
+     * os turnos, o Ollama reaproveita o KV cache e não reavalia o prefixo a cada pergunta.
+     *
+     * @param level O nível da persona.
+     * @return As mensagens do MCP (sistema e exemplo few-shot).
+     */
+    public static List<ChatMessage> getMcp(String level) {
+        return switch (level.trim().toLowerCase(Locale.ROOT)) {
+            case "beginner" -> getBeginnerMcp();
+            case "intermediate" -> getIntermediateMcp();
+            case "advanced" -> getAdvancedMcp();
+            default -> throw new IllegalArgumentException("Nível de persona desconhecido: " + level);
+        };
+    }
+
     // ====================================================================================
     // MÓDULO 3: O PROTOCOLO DE SÍNTESE RAG
     // ====================================================================================
@@ -150,8 +170,12 @@ public final class PromptTemplates {
                 <sources>
                 {{information}}
                 </sources>
+                
+                <question>
+                {{question}}
+                </question>
                 """
-                // A ConversationalRetrievalChain irá adicionar o histórico e a pergunta do usuário aqui.
+                // O histórico da conversa vem da memória do chat; a pergunta entra em {{question}}.
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.tutor.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Busca vetorial não bloqueante, implementada pelos bancos que têm um cliente assíncrono
+ * (hoje, o Qdrant). Quem recebe um EmbeddingStore pode testar se ele também implementa esta
+ * interface para não prender uma thread por busca e para mandar várias consultas de uma vez.
+ */
+public interface AsyncEmbeddingSearch {
+
+    /**
+     * @param request A busca.
+     * @return Os resultados, do mais para o menos similar.
+     */
+    CompletableFuture<List<EmbeddingMatch<TextSegment>>> searchAsync(EmbeddingSearchRequest request);
+
+    /**
+     * Executa várias buscas em uma única chamada ao banco.
+     *
+     * @param requests As buscas.
+     * @return Os resultados de cada busca, na mesma ordem das requisições.
+     */
+    CompletableFuture<List<List<EmbeddingMatch<TextSegment>>>> searchBatchAsync(List<EmbeddingSearchRequest> requests);
+}
@@ -0,0 +1,350 @@
+package com.tutor.rag;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.WithVectorsSelectorFactory;
+import io.qdrant.client.grpc.JsonWithInt.Value;
+import io.qdrant.client.grpc.Points.BatchResult;
+import io.qdrant.client.grpc.Points.QuantizationSearchParams;
+import io.qdrant.client.grpc.Points.ScoredPoint;
+import io.qdrant.client.grpc.Points.SearchParams;
+import io.qdrant.client.grpc.Points.SearchPoints;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * EmbeddingStore do Qdrant com busca assíncrona, prazo por requisição e requisições especulativas (hedging).
+ *
+ * As gravações vão direto para o QdrantEmbeddingStore. A busca é feita aqui, sobre os futures do
+ * cliente gRPC compartilhado, porque o QdrantEmbeddingStore bloqueia a thread, não aceita prazo nem
+ * parâmetros de busca, e ainda pede os vetores de cada resultado para recalcular o cosseno no cliente:
+ * - cada busca tem um prazo ('qdrant.search.timeout-ms'); a requisição especulativa usa o que sobrou
+ *   dele, então uma busca nunca passa do prazo;
+ * - se a resposta demora mais que o p95 das últimas buscas do mesmo tipo (simples ou em lote, incluindo
+ *   as que falharam ou estouraram o prazo), uma segunda requisição igual é enviada e
+ *   vale a que responder primeiro (a outra é cancelada). Só ~5% das buscas são duplicadas, e uma
+ *   pausa do servidor (compactação, GC, rede) deixa de virar a latência da resposta ao aluno;
+ * - várias consultas (as sub-consultas do TransformingRetriever) podem ir em uma única chamada;
+ * - com uma coleção quantizada, o Qdrant percorre os vetores quantizados (na RAM) buscando
+ *   maxResults × oversampling candidatos e, com rescore, os reordena pelos vetores originais (no disco);
+ * - o minScore vai como score_threshold;
+ * - os vetores originais voltam junto, para a diversificação (MMR) do PassageSelector não precisar
+ *   vetorizar os trechos de novo.
+ *
+ * Os scores devolvidos seguem a mesma escala do QdrantEmbeddingStore (RelevanceScore, de 0 a 1),
+ * então o minScore do retriever continua valendo.
+ */
+public class AsyncQdrantEmbeddingStore implements EmbeddingStore<TextSegment>, AsyncEmbeddingSearch {
+
+    // Buscas medidas antes de a latência observada passar a disparar requisições especulativas.
+    private static final int MIN_SAMPLES_FOR_HEDGING = 20;
+
+    // Um único thread de timer para disparar as requisições especulativas de todas as buscas.
+    private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "qdrant-hedge-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final EmbeddingStore<TextSegment> delegate;
+    private final QdrantClient client;
+    private final String collectionName;
+    private final String payloadTextKey;
+    private final QuantizationSearchParams quantization;
+    private final Duration timeout;
+    private final boolean hedging;
+    private final long minHedgeDelayNanos;
+
+    // Buscas simples e em lote têm latências diferentes; cada uma dispara o hedging pelo próprio p95.
+    private final LatencyWindow latencies = new LatencyWindow(256);
+    private final LatencyWindow batchLatencies = new LatencyWindow(256);
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * @param delegate       O QdrantEmbeddingStore da mesma coleção, usado nas gravações.
+     * @param client         O cliente compartilhado do Qdrant.
+     * @param collectionName A coleção.
+     * @param payloadTextKey A chave do payload com o texto do segmento.
+     * @param quantization   Sobreamostragem e rescore de uma coleção quantizada, ou null.
+     * @param timeout        Prazo de cada busca.
+     * @param hedging        Se as buscas lentas (acima do p95) devem ganhar uma requisição especulativa.
+     * @param minHedgeDelay  Espera mínima antes da requisição especulativa, mesmo que o p95 seja menor.
+     */
+    public AsyncQdrantEmbeddingStore(EmbeddingStore<TextSegment> delegate, QdrantClient client, String collectionName,
+                                     String payloadTextKey, QuantizationSearchParams quantization,
+                                     Duration timeout, boolean hedging, Duration minHedgeDelay) {
+        this.delegate = delegate;
+        this.client = client;
+        this.collectionName = collectionName;
+        this.payloadTextKey = payloadTextKey;
+        this.quantization = quantization;
+        this.timeout = timeout;
+        this.hedging = hedging;
+        this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return delegate.add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        delegate.add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        return delegate.add(embedding, textSegment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return delegate.addAll(embeddings);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        return delegate.addAll(embeddings, embedded);
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return new EmbeddingSearchResult<>(await(searchAsync(request)));
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return await(searchAsync(EmbeddingSearchRequest.builder()
+                .queryEmbedding(referenceEmbedding)
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .build()));
+    }
+
+    @Override
+    public CompletableFuture<List<EmbeddingMatch<TextSegment>>> searchAsync(EmbeddingSearchRequest request) {
+        SearchPoints search = toSearchPoints(request);
+        return hedged(deadline -> Futures.transform(client.searchAsync(search, deadline),
+                this::toEmbeddingMatches, MoreExecutors.directExecutor()), latencies);
+    }
+
+    @Override
+    public CompletableFuture<List<List<EmbeddingMatch<TextSegment>>>> searchBatchAsync(List<EmbeddingSearchRequest> requests) {
+        List<SearchPoints> searches = new ArrayList<>(requests.size());
+        for (EmbeddingSearchRequest request : requests) {
+            searches.add(toSearchPoints(request));
+        }
+        return hedged(deadline -> Futures.transform(client.searchBatchAsync(collectionName, searches, null, deadline),
+                results -> {
+                    List<List<EmbeddingMatch<TextSegment>>> rankings = new ArrayList<>(results.size());
+                    for (BatchResult result : results) {
+                        rankings.add(toEmbeddingMatches(result.getResultList()));
+                    }
+                    return rankings;
+                }, MoreExecutors.directExecutor()), batchLatencies);
+    }
+
+    /**
+     * Resumo das buscas desde a inicialização, para o log de encerramento.
+     */
+    public String stats() {
+        return String.format("[QDRANT] %d buscas, p95 %s (em lote: %s); %d requisições especulativas (%d responderam primeiro).",
+                searches.get(), format(latencies.p95Nanos()), format(batchLatencies.p95Nanos()), hedges.get(), hedgeWins.get());
+    }
+
+    private static String format(long p95Nanos) {
+        return p95Nanos > 0 ? String.format("%.1f ms", p95Nanos / 1e6) : "-";
+    }
+
+    private SearchPoints toSearchPoints(EmbeddingSearchRequest request) {
+        SearchPoints.Builder search = SearchPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .addAllVector(request.queryEmbedding().vectorAsList())
+                .setLimit(request.maxResults())
+                .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                .setWithVectors(WithVectorsSelectorFactory.enable(true));
+        if (quantization != null) {
+            search.setParams(SearchParams.newBuilder().setQuantization(quantization));
+        }
+        if (request.minScore() > 0) {
+            // RelevanceScore = (cosseno + 1) / 2, então o limiar em cosseno é 2 * minScore - 1.
+            search.setScoreThreshold((float) (2 * request.minScore() - 1));
+        }
+        return search.build();
+    }
+
+    /**
+     * Envia a chamada e, se ela passar do p95 sem responder, uma segunda igual. O resultado é o da
+     * primeira que responder; a busca só falha se todas as tentativas falharem. Cancelar o
+     * future devolvido cancela as chamadas em andamento.
+     *
+     * @param call   Envia uma tentativa com o prazo dado.
+     * @param window As latências desse tipo de chamada, que decidem a espera e recebem as novas tentativas.
+     */
+    private <T> CompletableFuture<T> hedged(Function<Duration, ListenableFuture<T>> call, LatencyWindow window) {
+        searches.incrementAndGet();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        AtomicInteger running = new AtomicInteger(1);
+
+        ListenableFuture<T> primary = call.apply(timeout);
+        watch(primary, result, running, start, false, window);
+        result.whenComplete((value, error) -> primary.cancel(true));
+
+        long hedgeDelay = hedging ? hedgeDelayNanos(window) : -1;
+        if (hedgeDelay > 0) {
+            ScheduledFuture<?> timer = HEDGE_TIMER.schedule(() -> {
+                Duration remaining = timeout.minusNanos(System.nanoTime() - start);
+                if (result.isDone() || remaining.isNegative() || remaining.isZero()) {
+                    return;
+                }
+                running.incrementAndGet();
+                hedges.incrementAndGet();
+                ListenableFuture<T> hedge = call.apply(remaining);
+                watch(hedge, result, running, System.nanoTime(), true, window);
+                result.whenComplete((value, error) -> hedge.cancel(true));
+            }, hedgeDelay, TimeUnit.NANOSECONDS);
+            result.whenComplete((value, error) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    private <T> void watch(ListenableFuture<T> attempt, CompletableFuture<T> result, AtomicInteger running,
+                           long attemptStart, boolean isHedge, LatencyWindow window) {
+        attempt.addListener(() -> {
+            try {
+                T value = Futures.getDone(attempt);
+                window.record(System.nanoTime() - attemptStart);
+                if (result.complete(value) && isHedge) {
+                    hedgeWins.incrementAndGet();
+                }
+            } catch (CancellationException e) {
+                // A outra tentativa já respondeu.
+            } catch (ExecutionException e) {
+                // Falhas e prazos estourados também contam, pelo tempo que levaram (num prazo estourado,
+                // o prazo inteiro); senão o p95 só veria as buscas rápidas o bastante para dar certo.
+                window.record(System.nanoTime() - attemptStart);
+                if (running.decrementAndGet() == 0) {
+                    result.completeExceptionally(e.getCause());
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Espera antes da requisição especulativa: o p95 das últimas buscas do mesmo tipo (não menos que o mínimo
+     * configurado), ou -1 enquanto não houver amostras suficientes ou se o p95 já passar do prazo.
+     */
+    private long hedgeDelayNanos(LatencyWindow window) {
+        if (window.count() < MIN_SAMPLES_FOR_HEDGING) {
+            return -1;
+        }
+        long delay = Math.max(minHedgeDelayNanos, window.p95Nanos());
+        return delay < timeout.toNanos() ? delay : -1;
+    }
+
+    /**
+     * Espera a busca na thread atual. Se a thread for interrompida (busca especulativa descartada),
+     * a chamada ao Qdrant é cancelada.
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Busca no Qdrant interrompida", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Falha na busca no Qdrant", e.getCause());
+        }
+    }
+
+    private List<EmbeddingMatch<TextSegment>> toEmbeddingMatches(List<ScoredPoint> points) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(points.size());
+        for (ScoredPoint point : points) {
+            matches.add(toEmbeddingMatch(point));
+        }
+        return matches;
+    }
+
+    /**
+     * Converte o ponto no mesmo formato do QdrantEmbeddingStore: texto na chave do payload,
+     * demais chaves como metadados, e o vetor original como embedding.
+     */
+    private EmbeddingMatch<TextSegment> toEmbeddingMatch(ScoredPoint point) {
+        Map<String, Value> payload = point.getPayloadMap();
+        Map<String, Object> metadata = new HashMap<>();
+        payload.forEach((key, value) -> {
+            if (!key.equals(payloadTextKey)) {
+                metadata.put(key, value.getStringValue());
+            }
+        });
+        Value text = payload.get(payloadTextKey);
+        TextSegment segment = text == null ? null : TextSegment.from(text.getStringValue(), new Metadata(metadata));
+        Embedding embedding = point.hasVectors() ? Embedding.from(point.getVectors().getVector().getDataList()) : null;
+        return new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(point.getScore()),
+                point.getId().getUuid(), embedding, segment);
+    }
+
+    /**
+     * As latências das últimas tentativas de busca (com ou sem sucesso), em uma janela circular. O p95 é recalculado
+     * a cada 16 amostras, e não a cada busca.
+     */
+    private static final class LatencyWindow {
+
+        private final long[] samples;
+        private long count;
+        private volatile long p95Nanos;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            samples[(int) (count % samples.length)] = nanos;
+            count++;
+            if (count % 16 == 0) {
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+                Arrays.sort(sorted);
+                p95Nanos = sorted[(int) Math.ceil(0.95 * sorted.length) - 1];
+            }
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        long p95Nanos() {
+            return p95Nanos;
+        }
+    }
+}
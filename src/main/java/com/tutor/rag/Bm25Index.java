@@ -0,0 +1,417 @@
+package com.tutor.rag;
+
+import com.tutor.config.AppConfig;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido BM25 em memória sobre os mesmos segmentos gravados no banco vetorial.
+ *
+ * As perguntas de gramática trazem termos exatos ("present perfect", "phrasal verbs") que os
+ * embeddings do MiniLM nem sempre aproximam o suficiente. A busca lexical cobre esses casos
+ * em microssegundos e é fundida com a busca densa no TransformingRetriever.
+ *
+ * Cada termo tem uma lista de postings compacta (int[] com pares documento/frequência).
+ * Os segmentos usam os mesmos IDs determinísticos do IngestionManifest, então o índice serve
+ * tanto para o Qdrant quanto para o HNSW embutido. Documentos removidos ficam marcados até o
+ * próximo save(), que compacta as listas antes de gravar.
+ */
+public class Bm25Index {
+
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    // Parâmetros clássicos do BM25: saturação da frequência (k1) e normalização pelo tamanho (b).
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Lista de postings de um termo: pares (documento, frequência) intercalados em um único int[].
+     */
+    private static final class Postings {
+        int[] data = new int[4];
+        int size; // em pares
+
+        void add(int doc, int frequency) {
+            if (2 * size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[2 * size] = doc;
+            data[2 * size + 1] = frequency;
+            size++;
+        }
+    }
+
+    private final Path indexFile;
+
+    private final List<String> docIds = new ArrayList<>();
+    private final List<TextSegment> docSegments = new ArrayList<>(); // null = documento removido
+    private int[] docLengths = new int[64];
+    private final Map<String, Integer> docById = new HashMap<>();
+    private final Map<String, Postings> postingsByTerm = new HashMap<>();
+
+    private int liveDocs;
+    private long liveLength;
+    private int removedDocs;
+    private boolean dirty;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Bm25Index(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Carrega o índice do arquivo definido em 'tutor.retrieval.bm25.file'.
+     */
+    public static Bm25Index create() {
+        return load(Paths.get(AppConfig.get("tutor.retrieval.bm25.file", "bm25/lexical.bm25")));
+    }
+
+    /**
+     * Carrega o índice do disco. Se o arquivo não existir (ou for de outra versão), devolve um índice vazio;
+     * o DataSynchronizer o reconstrói a partir de 'data/' sem precisar recalcular embeddings.
+     */
+    public static Bm25Index load(Path indexFile) {
+        Bm25Index index = new Bm25Index(indexFile);
+        if (!Files.exists(indexFile)) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != FILE_FORMAT_VERSION) {
+                System.err.println("[BM25] WARN: Versão de índice lexical desconhecida. Reconstruindo.");
+                return new Bm25Index(indexFile);
+            }
+            int docCount = in.readInt();
+            index.docLengths = new int[Math.max(64, docCount)];
+            for (int doc = 0; doc < docCount; doc++) {
+                String id = readString(in);
+                String text = readString(in);
+                int metadataCount = in.readInt();
+                Map<String, String> metadata = new HashMap<>();
+                for (int i = 0; i < metadataCount; i++) {
+                    metadata.put(readString(in), readString(in));
+                }
+                int length = in.readInt();
+                index.docIds.add(id);
+                index.docSegments.add(TextSegment.from(text, new Metadata(metadata)));
+                index.docLengths[doc] = length;
+                index.docById.put(id, doc);
+                index.liveLength += length;
+            }
+            index.liveDocs = docCount;
+
+            int termCount = in.readInt();
+            for (int t = 0; t < termCount; t++) {
+                String term = readString(in);
+                Postings postings = new Postings();
+                postings.size = in.readInt();
+                postings.data = new int[Math.max(4, 2 * postings.size)];
+                for (int i = 0; i < 2 * postings.size; i++) {
+                    postings.data[i] = in.readInt();
+                }
+                index.postingsByTerm.put(term, postings);
+            }
+            System.out.println("[BM25] Índice lexical carregado: " + docCount + " segmentos, " + termCount + " termos.");
+        } catch (IOException e) {
+            System.err.println("[BM25] WARN: Falha ao ler o índice lexical: " + e.getMessage() + ". Reconstruindo.");
+            return new Bm25Index(indexFile);
+        }
+        return index;
+    }
+
+    /**
+     * Indexa (ou reindexa) os segmentos com os IDs informados.
+     */
+    public void addAll(List<String> ids, List<TextSegment> segments) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                removeLocked(ids.get(i));
+                addLocked(ids.get(i), segments.get(i));
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                removeLocked(id);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true se todos os IDs informados estão no índice.
+     */
+    public boolean containsAll(Collection<String> ids) {
+        lock.readLock().lock();
+        try {
+            return docById.keySet().containsAll(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Os IDs de todos os segmentos indexados.
+     */
+    public Set<String> ids() {
+        lock.readLock().lock();
+        try {
+            return Set.copyOf(docById.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Busca os segmentos com maior pontuação BM25 para a consulta.
+     * O resultado usa EmbeddingMatch (sem embedding) para ser fundido diretamente com a busca densa;
+     * o score é o do BM25, não uma similaridade de cosseno.
+     *
+     * @param query      O texto da consulta.
+     * @param maxResults Quantos segmentos devolver.
+     * @return Os segmentos em ordem decrescente de pontuação (apenas os que contêm algum termo da consulta).
+     */
+    public List<EmbeddingMatch<TextSegment>> search(String query, int maxResults) {
+        List<String> queryTerms = tokenize(query).stream().distinct().toList();
+        lock.readLock().lock();
+        try {
+            if (liveDocs == 0 || queryTerms.isEmpty()) {
+                return List.of();
+            }
+            float averageLength = (float) liveLength / liveDocs;
+            float[] scores = new float[docIds.size()];
+            boolean matched = false;
+
+            for (String term : queryTerms) {
+                Postings postings = postingsByTerm.get(term);
+                if (postings == null) {
+                    continue;
+                }
+                // df inclui documentos removidos ainda não compactados; a diferença é desprezível.
+                int df = postings.size;
+                float idf = (float) Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+                int[] data = postings.data;
+                for (int i = 0; i < postings.size; i++) {
+                    int doc = data[2 * i];
+                    if (docSegments.get(doc) == null) {
+                        continue;
+                    }
+                    int tf = data[2 * i + 1];
+                    float norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+                    scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+                    matched = true;
+                }
+            }
+            if (!matched) {
+                return List.of();
+            }
+
+            // Seleção parcial dos k melhores com um heap mínimo.
+            PriorityQueue<Integer> top = new PriorityQueue<>(maxResults + 1, (a, b) -> Float.compare(scores[a], scores[b]));
+            for (int doc = 0; doc < scores.length; doc++) {
+                if (scores[doc] <= 0) {
+                    continue;
+                }
+                top.offer(doc);
+                if (top.size() > maxResults) {
+                    top.poll();
+                }
+            }
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                int doc = top.poll();
+                matches.add(new EmbeddingMatch<>((double) scores[doc], docIds.get(doc), null, docSegments.get(doc)));
+            }
+            return matches.reversed();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Grava o índice (já compactado) em um arquivo temporário e o move para o lugar definitivo.
+     * Não faz nada se não houve alterações desde a última gravação.
+     */
+    public void save() {
+        lock.writeLock().lock();
+        try {
+            if (!dirty && Files.exists(indexFile)) {
+                return;
+            }
+            compactLocked();
+            Path parent = indexFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_FORMAT_VERSION);
+                out.writeInt(docIds.size());
+                for (int doc = 0; doc < docIds.size(); doc++) {
+                    TextSegment segment = docSegments.get(doc);
+                    writeString(out, docIds.get(doc));
+                    writeString(out, segment.text());
+                    Map<String, Object> metadata = segment.metadata().toMap();
+                    out.writeInt(metadata.size());
+                    for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                        writeString(out, entry.getKey());
+                        writeString(out, String.valueOf(entry.getValue()));
+                    }
+                    out.writeInt(docLengths[doc]);
+                }
+                out.writeInt(postingsByTerm.size());
+                for (Map.Entry<String, Postings> entry : postingsByTerm.entrySet()) {
+                    writeString(out, entry.getKey());
+                    Postings postings = entry.getValue();
+                    out.writeInt(postings.size);
+                    for (int i = 0; i < 2 * postings.size; i++) {
+                        out.writeInt(postings.data[i]);
+                    }
+                }
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            System.out.println("[BM25] Índice lexical salvo: " + liveDocs + " segmentos, " + postingsByTerm.size() + " termos.");
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao gravar o índice lexical: " + indexFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Normaliza e quebra o texto em termos: minúsculas, sem acentos, apenas letras e dígitos.
+     * Termos de um único caractere são descartados.
+     */
+    static List<String> tokenize(String text) {
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> terms = new ArrayList<>();
+        for (String token : NON_WORD.split(normalized)) {
+            if (token.length() > 1) {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+
+    private void addLocked(String id, TextSegment segment) {
+        List<String> terms = tokenize(segment.text());
+        int doc = docIds.size();
+        docIds.add(id);
+        docSegments.add(segment);
+        if (doc == docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, docLengths.length * 2);
+        }
+        docLengths[doc] = terms.size();
+        docById.put(id, doc);
+        liveDocs++;
+        liveLength += terms.size();
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        frequencies.forEach((term, frequency) ->
+                postingsByTerm.computeIfAbsent(term, t -> new Postings()).add(doc, frequency));
+    }
+
+    private void removeLocked(String id) {
+        Integer doc = docById.remove(id);
+        if (doc == null) {
+            return;
+        }
+        docSegments.set(doc, null);
+        liveDocs--;
+        liveLength -= docLengths[doc];
+        removedDocs++;
+    }
+
+    /**
+     * Remove de vez os documentos marcados como apagados, renumerando os restantes.
+     */
+    private void compactLocked() {
+        if (removedDocs == 0) {
+            return;
+        }
+        int[] remap = new int[docIds.size()];
+        int next = 0;
+        for (int doc = 0; doc < docIds.size(); doc++) {
+            if (docSegments.get(doc) == null) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = next;
+            docIds.set(next, docIds.get(doc));
+            docSegments.set(next, docSegments.get(doc));
+            docLengths[next] = docLengths[doc];
+            docById.put(docIds.get(next), next);
+            next++;
+        }
+        docIds.subList(next, docIds.size()).clear();
+        docSegments.subList(next, docSegments.size()).clear();
+
+        postingsByTerm.values().removeIf(postings -> {
+            int kept = 0;
+            for (int i = 0; i < postings.size; i++) {
+                int doc = remap[postings.data[2 * i]];
+                if (doc >= 0) {
+                    postings.data[2 * kept] = doc;
+                    postings.data[2 * kept + 1] = postings.data[2 * i + 1];
+                    kept++;
+                }
+            }
+            postings.size = kept;
+            return kept == 0;
+        });
+        removedDocs = 0;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,151 @@
+package com.tutor.rag;
+
+import com.tutor.config.EmbeddingConfig;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sincroniza o diretório 'data/' com um banco vetorial, usando o IngestionManifest.
+ * Compartilhado pelo Qdrant e pelo índice HNSW embutido: cada um informa apenas
+ * como gravar (SegmentSink) e como apagar (SegmentRemover) os seus pontos.
+ * O índice lexical (Bm25Index), quando informado, é mantido em sincronia com os mesmos segmentos.
+ */
+public final class DataSynchronizer {
+
+    private DataSynchronizer() {} // Classe utilitária, não deve ser instanciada.
+
+    /**
+     * Apaga pontos do banco vetorial pelos seus IDs.
+     */
+    @FunctionalInterface
+    public interface SegmentRemover {
+        void remove(List<String> segmentIds);
+    }
+
+    /**
+     * Compara os arquivos de 'data/' com o manifesto e aplica apenas as diferenças:
+     * arquivos novos ou alterados passam pelo IngestionPipeline (upsert), e os pontos de
+     * arquivos alterados ou removidos são apagados. Arquivos inalterados não custam nada além do hash.
+     *
+     * @param dataDirectory O diretório com os documentos do curso.
+     * @param manifest      O manifesto do banco vetorial de destino (é salvo ao final).
+     * @param lexicalIndex  O índice BM25 a manter junto (pode ser null se a busca híbrida estiver desligada).
+     * @param sink          Como gravar os lotes vetorizados.
+     * @param remover       Como apagar os pontos de versões antigas.
+     */
+    public static void synchronize(String dataDirectory, IngestionManifest manifest, Bm25Index lexicalIndex,
+                                   IngestionPipeline.SegmentSink sink, SegmentRemover remover) {
+        if (lexicalIndex != null) {
+            // Cada lote gravado no banco vetorial também entra no índice lexical, com os mesmos IDs.
+            IngestionPipeline.SegmentSink vectorSink = sink;
+            SegmentRemover vectorRemover = remover;
+            sink = (ids, embeddings, segments) -> {
+                lexicalIndex.addAll(ids, segments);
+                return vectorSink.write(ids, embeddings, segments);
+            };
+            remover = segmentIds -> {
+                lexicalIndex.removeAll(segmentIds);
+                vectorRemover.remove(segmentIds);
+            };
+        }
+
+        List<Path> files = DocumentLoader.listSupportedFiles(dataDirectory);
+        Set<String> currentFiles = new HashSet<>();
+        List<IngestionPipeline.FileJob> jobs = new ArrayList<>();
+        int unchanged = 0;
+        int removed = 0;
+
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            currentFiles.add(fileName);
+            String contentHash = IngestionManifest.contentHash(file);
+            IngestionManifest.FileEntry previous = manifest.get(fileName);
+
+            if (previous != null && previous.contentHash().equals(contentHash)) {
+                unchanged++;
+                continue;
+            }
+            System.out.println("[INGEST] " + (previous == null ? "Novo arquivo: " : "Arquivo alterado: ") + fileName);
+            jobs.add(new IngestionPipeline.FileJob(file, contentHash));
+        }
+
+        if (!jobs.isEmpty()) {
+            // O modelo de embedding só é necessário se houver algo para ingerir.
+            EmbeddingModel embeddingModel = EmbeddingConfig.createEmbeddingModel();
+            IngestionPipeline pipeline = IngestionPipeline.create(embeddingModel, DocumentLoader.createRecursiveSplitter(), sink);
+            Map<String, List<String>> segmentIdsByFile = pipeline.run(jobs);
+
+            for (IngestionPipeline.FileJob job : jobs) {
+                String fileName = job.file().getFileName().toString();
+                // Os pontos novos já estão gravados; só agora apagamos os da versão anterior.
+                IngestionManifest.FileEntry previous = manifest.get(fileName);
+                if (previous != null) {
+                    remover.remove(previous.segmentIds());
+                }
+                List<String> segmentIds = segmentIdsByFile.getOrDefault(fileName, List.of());
+                manifest.put(fileName, new IngestionManifest.FileEntry(job.contentHash(), segmentIds));
+            }
+        }
+
+        for (String fileName : manifest.fileNames()) {
+            if (!currentFiles.contains(fileName)) {
+                System.out.println("[INGEST] Arquivo removido: " + fileName);
+                remover.remove(manifest.get(fileName).segmentIds());
+                manifest.remove(fileName);
+                removed++;
+            }
+        }
+        manifest.save();
+
+        if (lexicalIndex != null) {
+            synchronizeLexicalIndex(manifest, lexicalIndex, dataDirectory);
+        }
+
+        System.out.println("[INGEST] Sincronização concluída: " + jobs.size() + " ingerido(s), "
+                + unchanged + " inalterado(s), " + removed + " removido(s).");
+    }
+
+    /**
+     * Garante que o índice lexical tenha exatamente os segmentos do manifesto. Se o arquivo do índice
+     * foi apagado (ou o banco vetorial foi trocado), os arquivos faltantes são apenas lidos e divididos
+     * de novo: os IDs são determinísticos, então não é preciso recalcular nenhum embedding.
+     */
+    private static void synchronizeLexicalIndex(IngestionManifest manifest, Bm25Index lexicalIndex, String dataDirectory) {
+        Set<String> expectedIds = new HashSet<>();
+        List<String> staleIds = new ArrayList<>();
+        for (String fileName : manifest.fileNames()) {
+            expectedIds.addAll(manifest.get(fileName).segmentIds());
+        }
+        for (String id : lexicalIndex.ids()) {
+            if (!expectedIds.contains(id)) {
+                staleIds.add(id);
+            }
+        }
+        lexicalIndex.removeAll(staleIds);
+
+        DocumentSplitter splitter = DocumentLoader.createRecursiveSplitter();
+        for (String fileName : manifest.fileNames()) {
+            IngestionManifest.FileEntry entry = manifest.get(fileName);
+            if (lexicalIndex.containsAll(entry.segmentIds())) {
+                continue;
+            }
+            System.out.println("[BM25] Reindexando lexicalmente: " + fileName);
+            List<TextSegment> segments = DocumentLoader.loadSegments(Paths.get(dataDirectory, fileName), splitter);
+            List<String> ids = new ArrayList<>(segments.size());
+            for (int i = 0; i < segments.size(); i++) {
+                ids.add(IngestionManifest.segmentId(fileName, entry.contentHash(), i));
+            }
+            lexicalIndex.addAll(ids, segments);
+        }
+        lexicalIndex.save();
+    }
+}
@@ -3,10 +3,15 @@ package com.tutor.rag;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentParser;
 import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
 import dev.langchain4j.data.document.parser.TextDocumentParser;
 import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
 
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
@@ -24,6 +29,14 @@ public final class DocumentLoader {
 
     private DocumentLoader() {} // Classe utilitária, não deve ser instanciada.
 
+    /**
+     * Recebe as páginas de um arquivo à medida que são lidas.
+     */
+    @FunctionalInterface
+    public interface PageConsumer {
+        void accept(Document page) throws InterruptedException;
+    }
+
     /**
      * Carrega todos os documentos suportados (.txt, .pdf) de um diretório.
      * Retorna os documentos brutos, sem dividi-los, prontos para o Ingestor.
@@ -32,25 +45,130 @@ public final class DocumentLoader {
      */
     public static List<Document> loadDocuments(String directoryPath) {
         System.out.println("[DOCLOADER] Carregando documentos brutos de: " + directoryPath);
-        DocumentParser pdfParser = new ApachePdfBoxDocumentParser();
-        DocumentParser txtParser = new TextDocumentParser();
         List<Document> documents = new ArrayList<>();
+        for (Path filePath : listSupportedFiles(directoryPath)) {
+            documents.add(loadDocument(filePath));
+        }
+        System.out.println("[DOCLOADER] Total de documentos brutos carregados: " + documents.size());
+        return documents;
+    }
+
+    /**
+     * Lista os arquivos suportados (.txt, .pdf) de um diretório, em ordem alfabética.
+     * @param directoryPath O caminho para o diretório 'data/'.
+     * @return Os caminhos dos arquivos que podem ser carregados.
+     */
+    public static List<Path> listSupportedFiles(String directoryPath) {
+        List<Path> files = new ArrayList<>();
         Path dataDir = Paths.get(directoryPath);
 
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dataDir)) {
             for (Path filePath : stream) {
-                String fileName = filePath.getFileName().toString().toLowerCase();
-                if (fileName.endsWith(".pdf")) {
-                    documents.add(FileSystemDocumentLoader.loadDocument(filePath, pdfParser));
-                } else if (fileName.endsWith(".txt")) {
-                    documents.add(FileSystemDocumentLoader.loadDocument(filePath, txtParser));
+                if (isSupported(filePath)) {
+                    files.add(filePath);
                 }
             }
         } catch (IOException e) {
             throw new RuntimeException("Falha ao ler o diretório de dados: " + directoryPath, e);
         }
-        System.out.println("[DOCLOADER] Total de documentos brutos carregados: " + documents.size());
-        return documents;
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Carrega um único arquivo suportado, escolhendo o parser pela extensão.
+     * @param filePath O caminho do arquivo (.txt ou .pdf).
+     * @return O Document bruto.
+     */
+    public static Document loadDocument(Path filePath) {
+        String fileName = filePath.getFileName().toString().toLowerCase();
+        DocumentParser parser = fileName.endsWith(".pdf") ? new ApachePdfBoxDocumentParser() : new TextDocumentParser();
+        return FileSystemDocumentLoader.loadDocument(filePath, parser);
+    }
+
+    /**
+     * Lê um arquivo página a página, entregando cada uma assim que é extraída, sem montar o documento inteiro.
+     *
+     * PDFs são abertos com o buffer do PDFBox em arquivo temporário (MemoryUsageSetting.setupTempFileOnly()):
+     * o conteúdo do PDF não fica no heap, e só o texto da página atual existe como String. Cada página
+     * leva os metadados 'file_name', 'absolute_directory_path' (como no FileSystemDocumentLoader) e 'page'
+     * (a partir de 1). Páginas sem texto são puladas. Arquivos .txt são entregues como uma única página, sem 'page'.
+     *
+     * @param filePath O caminho do arquivo (.txt ou .pdf).
+     * @param consumer Quem recebe as páginas (pode bloquear, por exemplo em uma fila cheia).
+     * @return Quantas páginas foram entregues.
+     */
+    public static int streamPages(Path filePath, PageConsumer consumer) throws InterruptedException {
+        String fileName = filePath.getFileName().toString();
+        if (!fileName.toLowerCase().endsWith(".pdf")) {
+            consumer.accept(loadDocument(filePath));
+            return 1;
+        }
+
+        try (PDDocument pdf = PDDocument.load(filePath.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            int delivered = 0;
+            for (int page = 1; page <= pdf.getNumberOfPages(); page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String text = stripper.getText(pdf);
+                if (text.isBlank()) {
+                    continue;
+                }
+                Metadata metadata = new Metadata();
+                metadata.put("file_name", fileName);
+                metadata.put("absolute_directory_path", filePath.toAbsolutePath().getParent().toString());
+                metadata.put("page", String.valueOf(page));
+                consumer.accept(Document.from(text, metadata));
+                delivered++;
+            }
+            return delivered;
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao ler o PDF: " + filePath, e);
+        }
+    }
+
+    /**
+     * Divide uma página, numerando os segmentos ('index') a partir de firstIndex. A numeração é do arquivo,
+     * e não da página, para que segmentos vizinhos em páginas diferentes continuem consecutivos. Cada página
+     * é dividida sozinha, então o último segmento de uma página e o primeiro da seguinte não têm a
+     * sobreposição do splitter entre si (o PassageStitcher os une sem procurar emenda).
+     *
+     * @param splitter  O splitter da ingestão.
+     * @param page      A página entregue por streamPages.
+     * @param firstIndex O índice do primeiro segmento da página dentro do arquivo.
+     * @return Os segmentos da página, com os metadados dela ('page', 'file_name') e o 'index' no arquivo.
+     */
+    public static List<TextSegment> splitPage(DocumentSplitter splitter, Document page, int firstIndex) {
+        List<TextSegment> segments = splitter.split(page);
+        for (int i = 0; i < segments.size(); i++) {
+            segments.get(i).metadata().put("index", String.valueOf(firstIndex + i));
+        }
+        return segments;
+    }
+
+    /**
+     * Lê e divide um arquivo inteiro página a página, com a mesma numeração da ingestão.
+     * Usado quando só é preciso o texto dos segmentos (ex: reconstruir o índice BM25).
+     *
+     * @param filePath O caminho do arquivo (.txt ou .pdf).
+     * @param splitter O splitter da ingestão.
+     * @return Todos os segmentos do arquivo, em ordem.
+     */
+    public static List<TextSegment> loadSegments(Path filePath, DocumentSplitter splitter) {
+        List<TextSegment> segments = new ArrayList<>();
+        try {
+            streamPages(filePath, page -> segments.addAll(splitPage(splitter, page, segments.size())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Leitura interrompida: " + filePath, e);
+        }
+        return segments;
+    }
+
+    private static boolean isSupported(Path filePath) {
+        String fileName = filePath.getFileName().toString().toLowerCase();
+        return fileName.endsWith(".pdf") || fileName.endsWith(".txt");
     }
 
     /**
@@ -0,0 +1,841 @@
+package com.tutor.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * EmbeddingStore embutido, sem servidor: um índice HNSW (Hierarchical Navigable Small World)
+ * para busca aproximada de vizinhos mais próximos, dentro do próprio processo.
+ *
+ * Os vetores e o grafo ficam em arquivos mapeados em memória, então reabrir o índice após
+ * um reinício é instantâneo (o sistema operacional carrega as páginas sob demanda).
+ * Os textos e metadados dos segmentos ficam em um arquivo à parte, só de acréscimo,
+ * lido apenas para os resultados de cada busca.
+ *
+ * Arquivos no diretório do índice:
+ * - nodes.hnsw    cabeçalho + um registro de tamanho fixo por nó (vetor, nível, vizinhos da camada 0);
+ * - upper.hnsw    vizinhos das camadas superiores (só os ~1/M nós com nível acima de 0 ocupam espaço);
+ * - payloads.dat  id, texto e metadados de cada segmento.
+ *
+ * Os vetores são normalizados na inserção, de modo que o produto escalar é a similaridade de cosseno.
+ * Remoções apenas marcam o nó como apagado: ele continua servindo de caminho no grafo,
+ * mas nunca aparece nos resultados. Como os apagados ainda ocupam lugar entre os ef candidatos,
+ * a busca alarga o ef até achar maxResults nós vivos; e quando metade do grafo está apagada
+ * (uma reingestão completa, por exemplo), o índice é reconstruído só com os vivos.
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, AutoCloseable {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Cabeçalho de nodes.hnsw
+    private static final int HEADER_BYTES = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_DIMENSION = 8;
+    private static final int H_M = 12;
+    private static final int H_COUNT = 16;
+    private static final int H_ENTRY_POINT = 20;
+    private static final int H_MAX_LEVEL = 24;
+    private static final int H_UPPER_COUNT = 28;
+    private static final int H_CAPACITY = 32;
+    private static final int H_UPPER_CAPACITY = 36;
+
+    private static final int FLAG_DELETED = 1;
+    private static final int FILTER_OVERSAMPLING = 4;
+    // Fração de nós apagados que dispara a reconstrução do índice, e o lote de cópia dos nós vivos.
+    private static final double COMPACTION_RATIO = 0.5;
+    private static final int COMPACTION_BATCH = 256;
+    private static final List<String> INDEX_FILES = List.of("nodes.hnsw", "upper.hnsw", "payloads.dat");
+
+    private record Candidate(int node, float similarity) {}
+
+    private final Path directory;
+    private final int dimension;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+
+    // Deslocamentos dentro do registro de um nó (após o vetor).
+    private final int offLevel;
+    private final int offFlags;
+    private final int offUpperSlot;
+    private final int offPayloadOffset;
+    private final int offPayloadLength;
+    private final int offNeighborCount;
+    private final int offNeighbors;
+    private final int nodeBytes;
+    private final int upperLevelBytes;
+    private final int upperSlotBytes;
+
+    private FileChannel nodeChannel;
+    private FileChannel upperChannel;
+    private FileChannel payloadChannel;
+    private MappedByteBuffer nodes;
+    private MappedByteBuffer upper;
+
+    private int capacity;
+    private int upperCapacity;
+    private int count;
+    private int deleted;
+    private int entryPoint;
+    private int maxLevel;
+    private int upperCount;
+    private long payloadSize;
+
+    // Índice id -> nó, montado sob demanda (só é necessário para upserts e remoções por id).
+    private Map<String, Integer> idIndex;
+
+    private final SplittableRandom random = new SplittableRandom();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Abre (ou cria) um índice no diretório informado.
+     *
+     * @param directory      Diretório dos arquivos do índice.
+     * @param dimension      Dimensão dos vetores (384 para o all-MiniLM-L6-v2).
+     * @param m              Número de vizinhos por nó nas camadas superiores (a camada 0 usa 2*M).
+     * @param efConstruction Largura da busca durante a inserção (qualidade do grafo).
+     * @param efSearch       Largura mínima da busca nas consultas (recall x latência).
+     */
+    public HnswEmbeddingStore(Path directory, int dimension, int m, int efConstruction, int efSearch) {
+        this.directory = directory;
+        this.dimension = dimension;
+        this.m = m;
+        this.m0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+
+        this.offLevel = dimension * Float.BYTES;
+        this.offFlags = offLevel + 4;
+        this.offUpperSlot = offFlags + 4;
+        this.offPayloadOffset = offUpperSlot + 4;
+        this.offPayloadLength = offPayloadOffset + 8;
+        this.offNeighborCount = offPayloadLength + 4;
+        this.offNeighbors = offNeighborCount + 4;
+        this.nodeBytes = offNeighbors + m0 * 4;
+        this.upperLevelBytes = (1 + m) * 4;
+        this.upperSlotBytes = (MAX_LEVEL - 1) * upperLevelBytes;
+
+        try {
+            Files.createDirectories(directory);
+            openFiles();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao abrir o índice HNSW em " + directory, e);
+        }
+        System.out.println("[HNSW] Índice aberto em " + directory.toAbsolutePath() + " com " + (count - deleted)
+                + " vetores (" + deleted + " apagados).");
+    }
+
+    // ====================================================================================
+    // API do EmbeddingStore
+    // ====================================================================================
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        addAll(ids, embeddings, textSegments);
+        return ids;
+    }
+
+    /**
+     * Insere (ou substitui) segmentos com IDs escolhidos pelo chamador, como um upsert.
+     *
+     * @param ids          Os IDs dos segmentos.
+     * @param embeddings   Os vetores, na mesma ordem.
+     * @param textSegments Os segmentos, na mesma ordem (ou null para gravar só os vetores).
+     */
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                String id = ids.get(i);
+                Integer existing = idIndex().get(id);
+                if (existing != null) {
+                    markDeleted(existing);
+                }
+                TextSegment segment = textSegments == null ? null : textSegments.get(i);
+                int node = insert(normalized(embeddings.get(i).vector()), writePayload(id, segment));
+                idIndex().put(id, node);
+            }
+            nodes.force();
+            upper.force();
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao gravar no índice HNSW", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer node = idIndex().remove(id);
+                if (node != null) {
+                    markDeleted(node);
+                }
+            }
+            nodes.force();
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao remover do índice HNSW", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            payloadChannel.truncate(0);
+            payloadSize = 0;
+            count = 0;
+            deleted = 0;
+            upperCount = 0;
+            entryPoint = -1;
+            maxLevel = -1;
+            idIndex = new HashMap<>();
+            writeHeader();
+            nodes.force();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao limpar o índice HNSW", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return new EmbeddingSearchResult<>(
+                search(request.queryEmbedding(), request.maxResults(), request.minScore(), request.filter()));
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        return search(referenceEmbedding, maxResults, minScore, null);
+    }
+
+    /**
+     * O grafo não conhece os metadados, então um filtro é aplicado aos candidatos depois da busca.
+     * Com filtro, a busca começa com FILTER_OVERSAMPLING vezes mais candidatos. Se nós apagados ou
+     * descartados pelo filtro deixarem menos de maxResults, o ef dobra e a busca é refeita, até
+     * cobrir o índice inteiro ou um candidato ficar abaixo de minScore.
+     */
+    private List<EmbeddingMatch<TextSegment>> search(Embedding referenceEmbedding, int maxResults, double minScore,
+                                                     Filter filter) {
+        float[] query = normalized(referenceEmbedding.vector());
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            int ep = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                ep = greedyClosest(query, ep, level);
+            }
+            int ef = Math.max(efSearch, filter == null ? maxResults : maxResults * FILTER_OVERSAMPLING);
+            while (true) {
+                PriorityQueue<Candidate> found = searchLayer(query, ep, ef, 0);
+                List<Candidate> sorted = new ArrayList<>(found);
+                sorted.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+
+                List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(maxResults);
+                boolean belowMinScore = false;
+                for (Candidate candidate : sorted) {
+                    if (matches.size() >= maxResults) break;
+                    if (isDeleted(candidate.node())) continue;
+                    double score = RelevanceScore.fromCosineSimilarity(candidate.similarity());
+                    if (score < minScore) {
+                        belowMinScore = true;
+                        break;
+                    }
+                    Payload payload = readPayload(candidate.node());
+                    if (filter != null && !filter.test(payload.segment().metadata())) continue;
+                    matches.add(new EmbeddingMatch<>(score, payload.id(), Embedding.from(vector(candidate.node())), payload.segment()));
+                }
+                if (matches.size() >= maxResults || belowMinScore || ef >= count) {
+                    return matches;
+                }
+                ef = (int) Math.min(count, 2L * ef);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao ler o índice HNSW", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Quantos vetores vivos (sem contar os apagados) existem no índice.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - deleted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            nodes.force();
+            upper.force();
+            nodeChannel.close();
+            upperChannel.close();
+            payloadChannel.close();
+        } catch (IOException e) {
+            System.err.println("[HNSW] WARN: Falha ao fechar o índice: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ====================================================================================
+    // Algoritmo HNSW
+    // ====================================================================================
+
+    private int insert(float[] vector, long[] payloadRef) throws IOException {
+        ensureCapacity();
+        int node = count;
+        int level = randomLevel();
+
+        int base = nodeOffset(node);
+        for (int i = 0; i < dimension; i++) {
+            nodes.putFloat(base + i * Float.BYTES, vector[i]);
+        }
+        nodes.putInt(base + offLevel, level);
+        nodes.putInt(base + offFlags, 0);
+        nodes.putInt(base + offUpperSlot, level > 0 ? allocateUpperSlot() : -1);
+        nodes.putLong(base + offPayloadOffset, payloadRef[0]);
+        nodes.putInt(base + offPayloadLength, (int) payloadRef[1]);
+        for (int l = 0; l <= level; l++) {
+            setNeighborCount(node, l, 0);
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            count++;
+            writeHeader();
+            return node;
+        }
+
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(vector, ep, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<Candidate> found = searchLayer(vector, ep, efConstruction, l);
+            List<Candidate> sorted = new ArrayList<>(found);
+            sorted.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+
+            int connections = Math.min(m, sorted.size());
+            for (int i = 0; i < connections; i++) {
+                setNeighbor(node, l, i, sorted.get(i).node());
+            }
+            setNeighborCount(node, l, connections);
+
+            int maxConnections = l == 0 ? m0 : m;
+            for (int i = 0; i < connections; i++) {
+                link(sorted.get(i).node(), node, l, maxConnections);
+            }
+            ep = sorted.get(0).node();
+        }
+
+        count++;
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        writeHeader();
+        return node;
+    }
+
+    /**
+     * Adiciona 'to' à lista de vizinhos de 'from'. Se a lista estiver cheia, mantém apenas
+     * os vizinhos mais próximos de 'from'.
+     */
+    private void link(int from, int to, int level, int maxConnections) {
+        int n = neighborCount(from, level);
+        if (n < maxConnections) {
+            setNeighbor(from, level, n, to);
+            setNeighborCount(from, level, n + 1);
+            return;
+        }
+        float[] origin = vector(from);
+        List<Candidate> all = new ArrayList<>(n + 1);
+        for (int i = 0; i < n; i++) {
+            int neighbor = neighbor(from, level, i);
+            all.add(new Candidate(neighbor, similarity(origin, neighbor)));
+        }
+        all.add(new Candidate(to, similarity(origin, to)));
+        all.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+        for (int i = 0; i < maxConnections; i++) {
+            setNeighbor(from, level, i, all.get(i).node());
+        }
+        setNeighborCount(from, level, maxConnections);
+    }
+
+    private int greedyClosest(float[] query, int ep, int level) {
+        int current = ep;
+        float currentSimilarity = similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int n = neighborCount(current, level);
+            for (int i = 0; i < n; i++) {
+                int candidate = neighbor(current, level, i);
+                float s = similarity(query, candidate);
+                if (s > currentSimilarity) {
+                    currentSimilarity = s;
+                    current = candidate;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Busca em largura limitada (ef) em uma camada. Devolve um heap mínimo com os ef melhores nós.
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] query, int ep, int ef, int level) {
+        BitSet visited = new BitSet(count + 1);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity).reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity));
+
+        Candidate start = new Candidate(ep, similarity(query, ep));
+        visited.set(ep);
+        candidates.add(start);
+        results.add(start);
+
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.similarity() < results.peek().similarity()) {
+                break;
+            }
+            int n = neighborCount(current.node(), level);
+            for (int i = 0; i < n; i++) {
+                int neighbor = neighbor(current.node(), level, i);
+                if (visited.get(neighbor)) continue;
+                visited.set(neighbor);
+
+                float s = similarity(query, neighbor);
+                if (results.size() < ef || s > results.peek().similarity()) {
+                    Candidate next = new Candidate(neighbor, s);
+                    candidates.add(next);
+                    results.add(next);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble(); // (0, 1]
+        return (int) Math.min(MAX_LEVEL - 1, Math.floor(-Math.log(r) * levelMultiplier));
+    }
+
+    // ====================================================================================
+    // Acesso aos arquivos mapeados
+    // ====================================================================================
+
+    private int nodeOffset(int node) {
+        return HEADER_BYTES + node * nodeBytes;
+    }
+
+    private float similarity(float[] query, int node) {
+        int base = nodeOffset(node);
+        float dot = 0f;
+        for (int i = 0; i < dimension; i++) {
+            dot += query[i] * nodes.getFloat(base + i * Float.BYTES);
+        }
+        return dot;
+    }
+
+    private float[] vector(int node) {
+        int base = nodeOffset(node);
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = nodes.getFloat(base + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    private boolean isDeleted(int node) {
+        return (nodes.getInt(nodeOffset(node) + offFlags) & FLAG_DELETED) != 0;
+    }
+
+    private void markDeleted(int node) {
+        int position = nodeOffset(node) + offFlags;
+        int flags = nodes.getInt(position);
+        if ((flags & FLAG_DELETED) == 0) {
+            nodes.putInt(position, flags | FLAG_DELETED);
+            deleted++;
+        }
+    }
+
+    private int neighborListOffset(int node, int level) {
+        if (level == 0) {
+            return nodeOffset(node) + offNeighborCount;
+        }
+        int slot = nodes.getInt(nodeOffset(node) + offUpperSlot);
+        return slot * upperSlotBytes + (level - 1) * upperLevelBytes;
+    }
+
+    private MappedByteBuffer neighborBuffer(int level) {
+        return level == 0 ? nodes : upper;
+    }
+
+    private int neighborCount(int node, int level) {
+        return neighborBuffer(level).getInt(neighborListOffset(node, level));
+    }
+
+    private void setNeighborCount(int node, int level, int n) {
+        neighborBuffer(level).putInt(neighborListOffset(node, level), n);
+    }
+
+    private int neighbor(int node, int level, int i) {
+        return neighborBuffer(level).getInt(neighborListOffset(node, level) + 4 + i * 4);
+    }
+
+    private void setNeighbor(int node, int level, int i, int neighbor) {
+        neighborBuffer(level).putInt(neighborListOffset(node, level) + 4 + i * 4, neighbor);
+    }
+
+    private int allocateUpperSlot() throws IOException {
+        if (upperCount == upperCapacity) {
+            upperCapacity *= 2;
+            upper = map(upperChannel, (long) upperCapacity * upperSlotBytes);
+        }
+        return upperCount++;
+    }
+
+    private void ensureCapacity() throws IOException {
+        if (count == capacity) {
+            capacity *= 2;
+            nodes = map(nodeChannel, HEADER_BYTES + (long) capacity * nodeBytes);
+        }
+    }
+
+    private MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("O índice HNSW excedeu o limite de 2 GB por arquivo mapeado.");
+        }
+        // Mapear além do tamanho atual estende o arquivo (com zeros).
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void initialize() throws IOException {
+        capacity = INITIAL_CAPACITY;
+        upperCapacity = Math.max(16, INITIAL_CAPACITY / m);
+        nodes = map(nodeChannel, HEADER_BYTES + (long) capacity * nodeBytes);
+        upper = map(upperChannel, (long) upperCapacity * upperSlotBytes);
+        count = 0;
+        upperCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        payloadChannel.truncate(0);
+        nodes.putInt(H_MAGIC, MAGIC);
+        nodes.putInt(H_VERSION, VERSION);
+        nodes.putInt(H_DIMENSION, dimension);
+        nodes.putInt(H_M, m);
+        writeHeader();
+    }
+
+    private void openExisting() throws IOException {
+        nodes = nodeChannel.map(FileChannel.MapMode.READ_WRITE, 0, nodeChannel.size());
+        if (nodes.getInt(H_MAGIC) != MAGIC || nodes.getInt(H_VERSION) != VERSION) {
+            throw new IllegalStateException("Arquivo de índice HNSW inválido em " + directory);
+        }
+        if (nodes.getInt(H_DIMENSION) != dimension || nodes.getInt(H_M) != m) {
+            throw new IllegalStateException("O índice HNSW em " + directory + " foi criado com dimensão="
+                    + nodes.getInt(H_DIMENSION) + " e M=" + nodes.getInt(H_M) + ". Apague o diretório para recriá-lo.");
+        }
+        count = nodes.getInt(H_COUNT);
+        entryPoint = nodes.getInt(H_ENTRY_POINT);
+        maxLevel = nodes.getInt(H_MAX_LEVEL);
+        upperCount = nodes.getInt(H_UPPER_COUNT);
+        capacity = nodes.getInt(H_CAPACITY);
+        upperCapacity = nodes.getInt(H_UPPER_CAPACITY);
+        nodes = map(nodeChannel, HEADER_BYTES + (long) capacity * nodeBytes);
+        upper = map(upperChannel, (long) upperCapacity * upperSlotBytes);
+        deleted = 0;
+        for (int node = 0; node < count; node++) {
+            if (isDeleted(node)) {
+                deleted++;
+            }
+        }
+    }
+
+    private void openFiles() throws IOException {
+        nodeChannel = FileChannel.open(directory.resolve("nodes.hnsw"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        upperChannel = FileChannel.open(directory.resolve("upper.hnsw"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        payloadChannel = FileChannel.open(directory.resolve("payloads.dat"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (nodeChannel.size() >= HEADER_BYTES) {
+            openExisting();
+        } else {
+            initialize();
+        }
+        payloadSize = payloadChannel.size();
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (deleted > 0 && deleted >= COMPACTION_RATIO * count) {
+            compact();
+        }
+    }
+
+    /**
+     * Reconstrói o índice só com os nós vivos, em um diretório ao lado, e troca os arquivos.
+     * Os vetores e payloads são copiados em lotes, sem carregar o índice inteiro na memória.
+     * Chamado com o lock de escrita.
+     */
+    private void compact() throws IOException {
+        long start = System.nanoTime();
+        int before = count;
+        Path rebuilt = directory.resolveSibling(directory.getFileName() + ".rebuild");
+        deleteIndexFiles(rebuilt);
+        try (HnswEmbeddingStore target = new HnswEmbeddingStore(rebuilt, dimension, m, efConstruction, efSearch)) {
+            List<String> ids = new ArrayList<>();
+            List<Embedding> embeddings = new ArrayList<>();
+            List<TextSegment> segments = new ArrayList<>();
+            for (int node = 0; node < count; node++) {
+                if (isDeleted(node)) {
+                    continue;
+                }
+                Payload payload = readPayload(node);
+                ids.add(payload.id());
+                embeddings.add(Embedding.from(vector(node)));
+                segments.add(payload.segment());
+                if (ids.size() == COMPACTION_BATCH) {
+                    target.addAll(ids, embeddings, segments);
+                    ids.clear();
+                    embeddings.clear();
+                    segments.clear();
+                }
+            }
+            if (!ids.isEmpty()) {
+                target.addAll(ids, embeddings, segments);
+            }
+        }
+
+        nodes.force();
+        upper.force();
+        nodeChannel.close();
+        upperChannel.close();
+        payloadChannel.close();
+        for (String file : INDEX_FILES) {
+            Files.move(rebuilt.resolve(file), directory.resolve(file),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.deleteIfExists(rebuilt);
+        openFiles();
+        idIndex = null;
+        System.out.printf("[HNSW] Índice reconstruído: %d nós, %d apagados descartados, em %.1f s.%n",
+                count, before - count, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static void deleteIndexFiles(Path dir) throws IOException {
+        for (String file : INDEX_FILES) {
+            Files.deleteIfExists(dir.resolve(file));
+        }
+    }
+
+    private void writeHeader() {
+        nodes.putInt(H_COUNT, count);
+        nodes.putInt(H_ENTRY_POINT, entryPoint);
+        nodes.putInt(H_MAX_LEVEL, maxLevel);
+        nodes.putInt(H_UPPER_COUNT, upperCount);
+        nodes.putInt(H_CAPACITY, capacity);
+        nodes.putInt(H_UPPER_CAPACITY, upperCapacity);
+    }
+
+    private float[] normalized(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Dimensão do vetor (" + vector.length + ") difere da do índice (" + dimension + ")");
+        }
+        double norm = 0.0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            result[i] = norm == 0.0 ? 0f : (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    // ====================================================================================
+    // Payloads (id, texto e metadados)
+    // ====================================================================================
+
+    private record Payload(String id, TextSegment segment) {}
+
+    /**
+     * Grava o payload no fim do arquivo e devolve {deslocamento, tamanho}.
+     */
+    private long[] writePayload(String id, TextSegment segment) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(id);
+            out.writeBoolean(segment != null);
+            if (segment != null) {
+                writeString(out, segment.text());
+                Map<String, Object> metadata = segment.metadata().toMap();
+                out.writeInt(metadata.size());
+                for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeString(out, String.valueOf(entry.getValue()));
+                }
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        long offset = payloadSize;
+        while (buffer.hasRemaining()) {
+            payloadSize += payloadChannel.write(buffer, payloadSize);
+        }
+        return new long[]{offset, payloadSize - offset};
+    }
+
+    private Payload readPayload(int node) throws IOException {
+        int base = nodeOffset(node);
+        long offset = nodes.getLong(base + offPayloadOffset);
+        int length = nodes.getInt(base + offPayloadLength);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (payloadChannel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Payload truncado para o nó " + node);
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()))) {
+            String id = in.readUTF();
+            if (!in.readBoolean()) {
+                return new Payload(id, null);
+            }
+            String text = readString(in);
+            int metadataSize = in.readInt();
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            for (int i = 0; i < metadataSize; i++) {
+                metadata.put(readString(in), readString(in));
+            }
+            return new Payload(id, TextSegment.from(text, Metadata.from(metadata)));
+        }
+    }
+
+    /**
+     * Monta o índice id -> nó lendo os ids dos payloads. Só é chamado em upserts e remoções,
+     * nunca no caminho das buscas, para que a abertura do índice continue instantânea.
+     */
+    private Map<String, Integer> idIndex() {
+        if (idIndex == null) {
+            idIndex = new HashMap<>(Math.max(16, count * 2));
+            try {
+                for (int node = 0; node < count; node++) {
+                    if (!isDeleted(node)) {
+                        idIndex.put(readPayload(node).id(), node);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Falha ao ler os ids do índice HNSW", e);
+            }
+        }
+        return idIndex;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
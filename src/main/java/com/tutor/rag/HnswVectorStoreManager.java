@@ -0,0 +1,54 @@
+package com.tutor.rag;
+
+import com.tutor.config.AppConfig;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Alternativa embutida ao QdrantVectorStoreManager: o índice HNSW roda dentro da JVM,
+ * em arquivos mapeados em memória, sem nenhum serviço externo.
+ * Usa o mesmo manifesto e o mesmo pipeline de ingestão incremental do Qdrant.
+ */
+public final class HnswVectorStoreManager {
+
+    private HnswVectorStoreManager() {}
+
+    private static final String DATA_DIRECTORY = "data";
+
+    /**
+     * Abre o índice local, sincroniza com 'data/' e retorna o EmbeddingStore para o retriever.
+     * @param lexicalIndex O índice BM25 a manter sincronizado com o índice HNSW (pode ser null).
+     * @return Uma instância de EmbeddingStore apoiada no índice HNSW local.
+     */
+    public static EmbeddingStore<TextSegment> getEmbeddingStore(Bm25Index lexicalIndex) {
+        Path directory = Paths.get(AppConfig.get("tutor.hnsw.directory", "hnsw_index"));
+        int vectorDimension = 384; // Dimensão para o modelo all-MiniLM-L6-v2
+
+        HnswEmbeddingStore store = new HnswEmbeddingStore(directory, vectorDimension,
+                AppConfig.getInt("tutor.hnsw.m", 16),
+                AppConfig.getInt("tutor.hnsw.ef-construction", 100),
+                AppConfig.getInt("tutor.hnsw.ef-search", 64));
+        // Garante que as páginas mapeadas sejam gravadas em disco ao encerrar a aplicação.
+        Runtime.getRuntime().addShutdownHook(new Thread(store::close, "hnsw-close"));
+
+        // O manifesto fica dentro do próprio diretório do índice: os dois nascem e morrem juntos.
+        IngestionManifest manifest = IngestionManifest.load(directory.resolve("ingestion.manifest"));
+        if (!manifest.exists() && store.size() > 0) {
+            // Índice sem manifesto: os IDs dos pontos são desconhecidos, então recomeçamos do zero.
+            System.out.println("[HNSW] Índice sem manifesto de ingestão. Recriando...");
+            store.removeAll();
+        }
+
+        DataSynchronizer.synchronize(DATA_DIRECTORY, manifest, lexicalIndex,
+                (ids, embeddings, segments) -> {
+                    store.addAll(ids, embeddings, segments);
+                    return CompletableFuture.completedFuture(null);
+                },
+                store::removeAll);
+        return store;
+    }
+}
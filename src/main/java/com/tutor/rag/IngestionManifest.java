@@ -0,0 +1,149 @@
+package com.tutor.rag;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Manifesto da ingestão: para cada arquivo de 'data/', guarda o hash do conteúdo e os IDs
+ * dos pontos gravados no banco vetorial. Com ele, a inicialização só reprocessa os arquivos que mudaram
+ * e apaga os pontos dos arquivos removidos, em vez de reindexar tudo.
+ *
+ * Formato do arquivo (texto UTF-8, uma linha por arquivo):
+ * nome_do_arquivo TAB sha256 TAB id1,id2,...
+ */
+public final class IngestionManifest {
+
+    private static final String HEADER = "# tutor ingestion manifest v1";
+
+    /**
+     * O estado de um arquivo já ingerido.
+     */
+    public record FileEntry(String contentHash, List<String> segmentIds) {}
+
+    private final Path manifestFile;
+    private final Map<String, FileEntry> files;
+
+    private IngestionManifest(Path manifestFile, Map<String, FileEntry> files) {
+        this.manifestFile = manifestFile;
+        this.files = files;
+    }
+
+    /**
+     * Carrega o manifesto do disco. Se o arquivo não existir, devolve um manifesto vazio.
+     */
+    public static IngestionManifest load(Path manifestFile) {
+        Map<String, FileEntry> files = new TreeMap<>();
+        if (Files.exists(manifestFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank() || line.startsWith("#")) continue;
+                    String[] parts = line.split("\t", -1);
+                    if (parts.length != 3) continue;
+                    List<String> ids = parts[2].isEmpty() ? List.of() : Arrays.asList(parts[2].split(","));
+                    files.put(parts[0], new FileEntry(parts[1], ids));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Falha ao ler o manifesto de ingestão: " + manifestFile, e);
+            }
+        }
+        return new IngestionManifest(manifestFile, files);
+    }
+
+    public boolean exists() {
+        return Files.exists(manifestFile);
+    }
+
+    public FileEntry get(String fileName) {
+        return files.get(fileName);
+    }
+
+    public Set<String> fileNames() {
+        return Set.copyOf(files.keySet());
+    }
+
+    public void put(String fileName, FileEntry entry) {
+        files.put(fileName, entry);
+    }
+
+    public void remove(String fileName) {
+        files.remove(fileName);
+    }
+
+    public void clear() {
+        files.clear();
+    }
+
+    /**
+     * Grava o manifesto em um arquivo temporário e o move para o lugar definitivo,
+     * para que uma interrupção nunca deixe um manifesto pela metade.
+     */
+    public void save() {
+        try {
+            Path parent = manifestFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Map.Entry<String, FileEntry> entry : files.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue().contentHash() + "\t"
+                            + String.join(",", entry.getValue().segmentIds()));
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao gravar o manifesto de ingestão: " + manifestFile, e);
+        }
+    }
+
+    // Versão da divisão em segmentos, incluída no hash: quando a forma de dividir muda (ex: PDFs passaram
+    // a ser divididos por página, com o número da página nos metadados), os arquivos já ingeridos são
+    // tratados como alterados e reingeridos uma vez, em vez de ficarem com segmentos no formato antigo.
+    private static final String SEGMENTATION_VERSION = "paged-1";
+
+    /**
+     * Calcula o SHA-256 do conteúdo de um arquivo (junto com a versão da divisão em segmentos).
+     */
+    public static String contentHash(Path file) {
+        try (InputStream input = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(SEGMENTATION_VERSION.getBytes(StandardCharsets.UTF_8));
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Falha ao calcular o hash de " + file, e);
+        }
+    }
+
+    /**
+     * Gera o ID determinístico de um segmento. O hash do conteúdo faz parte da chave,
+     * então uma nova versão do arquivo nunca sobrescreve os pontos da versão anterior por acidente.
+     */
+    public static String segmentId(String fileName, String contentHash, int segmentIndex) {
+        String key = fileName + "#" + contentHash + "#" + segmentIndex;
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -0,0 +1,336 @@
+package com.tutor.rag;
+
+import com.tutor.config.AppConfig;
+import com.tutor.metrics.TutorMetrics;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline de ingestão em estágios, com filas limitadas entre eles:
+ *
+ * 1. parse   - arquivos lidos em paralelo (PDFBox é CPU-bound), página a página;
+ * 2. split   - páginas divididas com o splitter recursivo;
+ * 3. embed   - segmentos de vários arquivos agrupados em lotes e vetorizados;
+ * 4. upsert  - lotes gravados de forma assíncrona, com um número máximo de gravações pendentes.
+ *
+ * As filas são limitadas, então um estágio rápido espera o mais lento (backpressure)
+ * em vez de acumular o corpus inteiro na memória. Como o parse entrega uma página por vez
+ * (DocumentLoader.streamPages), nem um único PDF grande é carregado inteiro: o heap usado pela
+ * ingestão depende do tamanho das filas, e não do tamanho dos arquivos. Cada segmento leva o
+ * número da página de onde saiu. Ao final, cada estágio reporta sua vazão.
+ */
+public final class IngestionPipeline {
+
+    /**
+     * Um arquivo a ser ingerido, com o hash usado para gerar os IDs dos segmentos.
+     */
+    public record FileJob(Path file, String contentHash) {}
+
+    /**
+     * Destino dos lotes vetorizados. A gravação pode ser assíncrona: o pipeline limita
+     * quantos Futures ficam pendentes ao mesmo tempo.
+     */
+    @FunctionalInterface
+    public interface SegmentSink {
+        Future<?> write(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments);
+    }
+
+    private record ParsedPage(String fileName, String contentHash, Document page) {}
+
+    private record PendingSegment(String id, TextSegment segment) {}
+
+    private record EmbeddedBatch(List<PendingSegment> segments, List<Embedding> embeddings) {}
+
+    // Marcadores de fim de fluxo. Quem encontra um marcador o devolve à fila para os demais consumidores.
+    private static final ParsedPage END_OF_PAGES = new ParsedPage(null, null, null);
+    private static final PendingSegment END_OF_SEGMENTS = new PendingSegment(null, null);
+    private static final EmbeddedBatch END_OF_BATCHES = new EmbeddedBatch(List.of(), List.of());
+
+    private final EmbeddingModel embeddingModel;
+    private final DocumentSplitter splitter;
+    private final SegmentSink sink;
+
+    private final int parseParallelism;
+    private final int embedParallelism;
+    private final int embedBatchSize;
+    private final int upsertBatchSize;
+    private final int maxInFlightUpserts;
+    private final int queueCapacity;
+
+    private final StageStats parseStats = new StageStats("parse", "páginas");
+    private final StageStats splitStats = new StageStats("split", "segmentos");
+    private final StageStats embedStats = new StageStats("embed", "segmentos");
+    private final StageStats upsertStats = new StageStats("upsert", "segmentos");
+
+    public IngestionPipeline(EmbeddingModel embeddingModel, DocumentSplitter splitter, SegmentSink sink,
+                             int parseParallelism, int embedParallelism, int embedBatchSize,
+                             int upsertBatchSize, int maxInFlightUpserts, int queueCapacity) {
+        this.embeddingModel = embeddingModel;
+        this.splitter = splitter;
+        this.sink = sink;
+        this.parseParallelism = parseParallelism;
+        this.embedParallelism = embedParallelism;
+        this.embedBatchSize = embedBatchSize;
+        this.upsertBatchSize = upsertBatchSize;
+        this.maxInFlightUpserts = maxInFlightUpserts;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Método fábrica que lê os parâmetros do pipeline da configuração ('tutor.ingest.*').
+     */
+    public static IngestionPipeline create(EmbeddingModel embeddingModel, DocumentSplitter splitter, SegmentSink sink) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int parseParallelism = AppConfig.getInt("tutor.ingest.parse-parallelism", Math.max(1, cores / 2));
+        // O modelo ONNX já distribui cada lote entre os núcleos; dois lotes simultâneos
+        // bastam para que o próximo lote esteja pronto quando o anterior terminar.
+        int embedParallelism = AppConfig.getInt("tutor.ingest.embed-parallelism", 2);
+        int embedBatchSize = AppConfig.getInt("tutor.ingest.embed-batch-size", 32);
+        int upsertBatchSize = AppConfig.getInt("tutor.ingest.upsert-batch-size", 256);
+        int maxInFlightUpserts = AppConfig.getInt("tutor.ingest.max-in-flight-upserts", 4);
+        int queueCapacity = AppConfig.getInt("tutor.ingest.queue-capacity", 64);
+
+        System.out.println("[CONFIG] Pipeline de ingestão: parse=" + parseParallelism + " threads, embed="
+                + embedParallelism + "x" + embedBatchSize + ", upsert=" + upsertBatchSize
+                + " (máx. " + maxInFlightUpserts + " pendentes), filas=" + queueCapacity);
+        return new IngestionPipeline(embeddingModel, splitter, sink, parseParallelism, embedParallelism,
+                embedBatchSize, upsertBatchSize, maxInFlightUpserts, queueCapacity);
+    }
+
+    /**
+     * Executa o pipeline completo sobre os arquivos informados.
+     *
+     * @param jobs Os arquivos a ingerir.
+     * @return Para cada nome de arquivo, os IDs dos segmentos gravados, em ordem.
+     */
+    public Map<String, List<String>> run(List<FileJob> jobs) {
+        BlockingQueue<FileJob> pendingFiles = new ArrayBlockingQueue<>(Math.max(1, jobs.size()), false, jobs);
+        BlockingQueue<ParsedPage> parsedPages = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<PendingSegment> segments = new ArrayBlockingQueue<>(queueCapacity * embedBatchSize);
+        BlockingQueue<EmbeddedBatch> embeddedBatches = new ArrayBlockingQueue<>(queueCapacity);
+        Map<String, List<String>> segmentIdsByFile = new ConcurrentHashMap<>();
+
+        long start = System.nanoTime();
+        AtomicInteger activeParsers = new AtomicInteger(parseParallelism);
+        AtomicInteger activeEmbedders = new AtomicInteger(embedParallelism);
+
+        ExecutorService workers = Executors.newFixedThreadPool(parseParallelism + embedParallelism + 2);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(workers);
+        int stageWorkers = 0;
+        try {
+            for (int i = 0; i < parseParallelism; i++) {
+                stages.submit(() -> {
+                    parseFiles(pendingFiles, parsedPages);
+                    // O último parser a terminar sinaliza o fim para o estágio seguinte.
+                    if (activeParsers.decrementAndGet() == 0) {
+                        parsedPages.put(END_OF_PAGES);
+                    }
+                    return null;
+                });
+                stageWorkers++;
+            }
+            stages.submit(() -> {
+                splitPages(parsedPages, segments, segmentIdsByFile);
+                return null;
+            });
+            stageWorkers++;
+            for (int i = 0; i < embedParallelism; i++) {
+                stages.submit(() -> {
+                    embedSegments(segments, embeddedBatches);
+                    if (activeEmbedders.decrementAndGet() == 0) {
+                        embeddedBatches.put(END_OF_BATCHES);
+                    }
+                    return null;
+                });
+                stageWorkers++;
+            }
+            stages.submit(() -> {
+                upsertBatches(embeddedBatches);
+                return null;
+            });
+            stageWorkers++;
+
+            // Espera na ordem em que os estágios terminam: a primeira falha é vista imediatamente,
+            // mesmo que outros estágios estejam bloqueados esperando por ela.
+            for (int i = 0; i < stageWorkers; i++) {
+                stages.take().get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            // Interrompe os demais estágios, que podem estar bloqueados em filas cheias.
+            workers.shutdownNow();
+            throw new RuntimeException("Falha no pipeline de ingestão", e);
+        } finally {
+            workers.shutdown();
+        }
+
+        report(System.nanoTime() - start);
+        return segmentIdsByFile;
+    }
+
+    /**
+     * Cada arquivo é lido por um único parser, então as páginas dele entram na fila em ordem.
+     * O tempo de cada página é medido sem a espera na fila.
+     */
+    private void parseFiles(BlockingQueue<FileJob> pendingFiles, BlockingQueue<ParsedPage> parsedPages)
+            throws InterruptedException {
+        FileJob job;
+        while ((job = pendingFiles.poll()) != null) {
+            String fileName = job.file().getFileName().toString();
+            String contentHash = job.contentHash();
+            long[] pageStart = {System.nanoTime()};
+            DocumentLoader.streamPages(job.file(), page -> {
+                parseStats.record(1, System.nanoTime() - pageStart[0]);
+                parsedPages.put(new ParsedPage(fileName, contentHash, page));
+                pageStart[0] = System.nanoTime();
+            });
+        }
+    }
+
+    /**
+     * Divide as páginas, numerando os segmentos de cada arquivo em sequência (a numeração define os IDs).
+     */
+    private void splitPages(BlockingQueue<ParsedPage> parsedPages, BlockingQueue<PendingSegment> segments,
+                            Map<String, List<String>> segmentIdsByFile) throws InterruptedException {
+        while (true) {
+            ParsedPage parsed = parsedPages.take();
+            if (parsed == END_OF_PAGES) {
+                segments.put(END_OF_SEGMENTS);
+                return;
+            }
+            List<String> ids = segmentIdsByFile.computeIfAbsent(parsed.fileName(), fileName -> new ArrayList<>());
+            long t0 = System.nanoTime();
+            List<TextSegment> pageSegments = DocumentLoader.splitPage(splitter, parsed.page(), ids.size());
+            splitStats.record(pageSegments.size(), System.nanoTime() - t0);
+
+            for (TextSegment segment : pageSegments) {
+                String id = IngestionManifest.segmentId(parsed.fileName(), parsed.contentHash(), ids.size());
+                ids.add(id);
+                segments.put(new PendingSegment(id, segment));
+            }
+        }
+    }
+
+    private void embedSegments(BlockingQueue<PendingSegment> segments, BlockingQueue<EmbeddedBatch> embeddedBatches)
+            throws InterruptedException {
+        boolean finished = false;
+        while (!finished) {
+            List<PendingSegment> batch = new ArrayList<>(embedBatchSize);
+            batch.add(segments.take());
+            segments.drainTo(batch, embedBatchSize - 1);
+
+            // Se o marcador de fim veio no lote, devolvemos para os outros embedders e encerramos após este lote.
+            if (batch.remove(END_OF_SEGMENTS)) {
+                segments.put(END_OF_SEGMENTS);
+                finished = true;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            List<TextSegment> textSegments = new ArrayList<>(batch.size());
+            for (PendingSegment pending : batch) {
+                textSegments.add(pending.segment());
+            }
+            long t0 = System.nanoTime();
+            List<Embedding> embeddings = embeddingModel.embedAll(textSegments).content();
+            embedStats.record(batch.size(), System.nanoTime() - t0);
+            TutorMetrics.INGEST_EMBEDDING_BATCH.record(batch.size());
+            embeddedBatches.put(new EmbeddedBatch(batch, embeddings));
+        }
+    }
+
+    private void upsertBatches(BlockingQueue<EmbeddedBatch> embeddedBatches)
+            throws InterruptedException, ExecutionException {
+        Deque<Future<?>> inFlight = new ArrayDeque<>();
+        List<String> ids = new ArrayList<>(upsertBatchSize);
+        List<Embedding> embeddings = new ArrayList<>(upsertBatchSize);
+        List<TextSegment> textSegments = new ArrayList<>(upsertBatchSize);
+
+        while (true) {
+            EmbeddedBatch batch = embeddedBatches.take();
+            boolean finished = batch == END_OF_BATCHES;
+            for (int i = 0; i < batch.segments().size(); i++) {
+                ids.add(batch.segments().get(i).id());
+                textSegments.add(batch.segments().get(i).segment());
+                embeddings.add(batch.embeddings().get(i));
+            }
+
+            if (ids.size() >= upsertBatchSize || (finished && !ids.isEmpty())) {
+                // Limita as gravações pendentes: espera a mais antiga antes de enviar outra.
+                while (inFlight.size() >= maxInFlightUpserts) {
+                    inFlight.removeFirst().get();
+                }
+                long t0 = System.nanoTime();
+                inFlight.addLast(sink.write(List.copyOf(ids), List.copyOf(embeddings), List.copyOf(textSegments)));
+                upsertStats.record(ids.size(), System.nanoTime() - t0);
+                ids.clear();
+                embeddings.clear();
+                textSegments.clear();
+            }
+
+            if (finished) {
+                while (!inFlight.isEmpty()) {
+                    inFlight.removeFirst().get();
+                }
+                return;
+            }
+        }
+    }
+
+    private void report(long totalNanos) {
+        double totalSeconds = totalNanos / 1e9;
+        System.out.printf("[INGEST] Pipeline concluído em %.2fs%n", totalSeconds);
+        for (StageStats stats : List.of(parseStats, splitStats, embedStats, upsertStats)) {
+            System.out.println("[INGEST]   " + stats.summary(totalSeconds));
+        }
+    }
+
+    /**
+     * Contadores de um estágio: itens processados e tempo ocupado (somado entre as threads).
+     */
+    private static final class StageStats {
+        private final String name;
+        private final String unit;
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        StageStats(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        void record(long count, long nanos) {
+            items.addAndGet(count);
+            busyNanos.addAndGet(nanos);
+        }
+
+        String summary(double totalSeconds) {
+            long count = items.get();
+            double busySeconds = busyNanos.get() / 1e9;
+            double throughput = totalSeconds > 0 ? count / totalSeconds : 0.0;
+            return String.format("%-6s %6d %s | %8.1f %s/s | ocupado %.2fs", name, count, unit, throughput, unit, busySeconds);
+        }
+    }
+}
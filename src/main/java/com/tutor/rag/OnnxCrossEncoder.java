@@ -0,0 +1,226 @@
+package com.tutor.rag;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.util.PairList;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import com.tutor.config.AppConfig;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.scoring.ScoringModel;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Cross-encoder local (ONNX Runtime) que dá uma nota a cada par (pergunta, segmento).
+ *
+ * Ao contrário do modelo de embedding, que vetoriza pergunta e segmento separadamente, o cross-encoder
+ * lê os dois juntos e percebe se o trecho realmente responde à pergunta. É mais caro, por isso só é
+ * usado para reordenar os poucos candidatos que a busca já trouxe (ver RerankingRetriever).
+ *
+ * - Modelo e tokenizer vêm de arquivos locais ('tutor.rerank.model-path' e 'tutor.rerank.tokenizer-path'),
+ *   por exemplo o cross-encoder/ms-marco-MiniLM-L-6-v2 exportado para ONNX.
+ * - Os pares são avaliados em lotes de 'tutor.rerank.batch-size', cada lote em uma única execução.
+ * - Um pool de 'tutor.rerank.sessions' sessões é compartilhado por todas as buscas: cada sessão usa
+ *   uma fatia dos núcleos, e buscas simultâneas não disputam os mesmos threads do ONNX Runtime.
+ *
+ * As notas são os logits do modelo (quanto maior, mais relevante), sem normalização.
+ */
+public class OnnxCrossEncoder implements ScoringModel, AutoCloseable {
+
+    private static volatile OnnxCrossEncoder shared;
+    private static volatile boolean sharedResolved;
+
+    private final OrtEnvironment environment;
+    private final BlockingQueue<OrtSession> sessions;
+    private final List<OrtSession> allSessions;
+    private final HuggingFaceTokenizer tokenizer;
+    private final boolean usesTokenTypeIds;
+    private final int batchSize;
+
+    /**
+     * @param modelPath     O arquivo .onnx do cross-encoder.
+     * @param tokenizerPath O tokenizer.json do mesmo modelo.
+     * @param maxTokens     Tamanho máximo do par tokenizado (o segmento é truncado, a pergunta não).
+     * @param batchSize     Pares por execução do modelo.
+     * @param sessionCount  Sessões no pool.
+     */
+    public OnnxCrossEncoder(Path modelPath, Path tokenizerPath, int maxTokens, int batchSize, int sessionCount) {
+        try {
+            this.environment = OrtEnvironment.getEnvironment();
+            int threadsPerSession = Math.max(1, Runtime.getRuntime().availableProcessors() / sessionCount);
+            this.allSessions = new ArrayList<>(sessionCount);
+            for (int i = 0; i < sessionCount; i++) {
+                OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+                options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+                options.setIntraOpNumThreads(threadsPerSession);
+                options.setInterOpNumThreads(1);
+                allSessions.add(environment.createSession(modelPath.toString(), options));
+            }
+            this.sessions = new ArrayBlockingQueue<>(sessionCount, false, allSessions);
+            this.usesTokenTypeIds = allSessions.get(0).getInputNames().contains("token_type_ids");
+            this.tokenizer = HuggingFaceTokenizer.builder()
+                    .optTokenizerPath(tokenizerPath)
+                    .optMaxLength(maxTokens)
+                    .optTruncateSecondOnly()
+                    .optPadding(true)
+                    .build();
+            this.batchSize = batchSize;
+        } catch (OrtException | IOException e) {
+            throw new RuntimeException("Falha ao carregar o cross-encoder de " + modelPath, e);
+        }
+    }
+
+    /**
+     * O cross-encoder compartilhado, criado na primeira chamada a partir do AppConfig.
+     *
+     * @return O modelo, ou null se o reranking estiver desativado ou os arquivos do modelo não existirem.
+     */
+    public static OnnxCrossEncoder shared() {
+        if (!sharedResolved) {
+            synchronized (OnnxCrossEncoder.class) {
+                if (!sharedResolved) {
+                    shared = create();
+                    sharedResolved = true;
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Fecha o cross-encoder compartilhado, se ele foi criado. Chamado no encerramento da aplicação,
+     * depois do TutorService, para não fechar sessões com um reranking em andamento.
+     */
+    public static synchronized void shutdown() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    private static OnnxCrossEncoder create() {
+        if (!AppConfig.getBoolean("tutor.rerank.enabled", false)) {
+            return null;
+        }
+        Path modelPath = Paths.get(AppConfig.get("tutor.rerank.model-path", "models/cross-encoder/model.onnx"));
+        Path tokenizerPath = Paths.get(AppConfig.get("tutor.rerank.tokenizer-path", "models/cross-encoder/tokenizer.json"));
+        if (!Files.isRegularFile(modelPath) || !Files.isRegularFile(tokenizerPath)) {
+            System.out.println("[RERANK] Cross-encoder não encontrado em " + modelPath.toAbsolutePath()
+                    + " / " + tokenizerPath.toAbsolutePath() + ". Reranking desativado.");
+            return null;
+        }
+        int maxTokens = AppConfig.getInt("tutor.rerank.max-tokens", 256);
+        int batchSize = AppConfig.getInt("tutor.rerank.batch-size", 16);
+        int sessionCount = AppConfig.getInt("tutor.rerank.sessions", 2);
+        System.out.println("[RERANK] Carregando o cross-encoder " + modelPath + " (" + sessionCount + " sessões, lotes de "
+                + batchSize + ", até " + maxTokens + " tokens)...");
+        return new OnnxCrossEncoder(modelPath, tokenizerPath, maxTokens, batchSize, sessionCount);
+    }
+
+    @Override
+    public Response<List<Double>> scoreAll(List<TextSegment> segments, String query) {
+        List<Double> scores = new ArrayList<>(segments.size());
+        for (int start = 0; start < segments.size(); start += batchSize) {
+            List<TextSegment> batch = segments.subList(start, Math.min(segments.size(), start + batchSize));
+            scores.addAll(scoreBatch(query, batch));
+        }
+        return Response.from(scores);
+    }
+
+    /**
+     * Avalia um lote em uma única execução, com uma sessão emprestada do pool.
+     */
+    private List<Double> scoreBatch(String query, List<TextSegment> batch) {
+        PairList<String, String> pairs = new PairList<>(batch.size());
+        for (TextSegment segment : batch) {
+            pairs.add(query, segment.text());
+        }
+        // Com padding, todas as codificações do lote têm o mesmo tamanho.
+        Encoding[] encodings = tokenizer.batchEncode(pairs);
+        int rows = encodings.length;
+        int length = encodings[0].getIds().length;
+        LongBuffer ids = LongBuffer.allocate(rows * length);
+        LongBuffer mask = LongBuffer.allocate(rows * length);
+        LongBuffer types = LongBuffer.allocate(rows * length);
+        for (Encoding encoding : encodings) {
+            ids.put(encoding.getIds());
+            mask.put(encoding.getAttentionMask());
+            types.put(encoding.getTypeIds());
+        }
+        long[] shape = {rows, length};
+
+        OrtSession session = borrowSession();
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            inputs.put("input_ids", OnnxTensor.createTensor(environment, ids.flip(), shape));
+            inputs.put("attention_mask", OnnxTensor.createTensor(environment, mask.flip(), shape));
+            if (usesTokenTypeIds) {
+                inputs.put("token_type_ids", OnnxTensor.createTensor(environment, types.flip(), shape));
+            }
+            try (OrtSession.Result result = session.run(inputs)) {
+                return readLogits(result.get(0).getValue(), rows);
+            }
+        } catch (OrtException e) {
+            throw new RuntimeException("Falha ao executar o cross-encoder", e);
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+            sessions.add(session);
+        }
+    }
+
+    /**
+     * A saída é [lote, 1] (um logit por par) na maioria dos cross-encoders, ou [lote] em alguns exports.
+     */
+    private static List<Double> readLogits(Object output, int rows) {
+        List<Double> scores = new ArrayList<>(rows);
+        if (output instanceof float[][] matrix) {
+            for (float[] row : matrix) {
+                scores.add((double) row[0]);
+            }
+        } else if (output instanceof float[] vector) {
+            for (float value : vector) {
+                scores.add((double) value);
+            }
+        } else {
+            throw new IllegalStateException("Saída inesperada do cross-encoder: " + output.getClass().getSimpleName()
+                    + " (esperado um logit por par)");
+        }
+        return scores;
+    }
+
+    private OrtSession borrowSession() {
+        try {
+            return sessions.take();
+        } catch (InterruptedException e) {
+            // Busca especulativa cancelada enquanto esperava uma sessão.
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Reranking cancelado enquanto esperava uma sessão do cross-encoder", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (OrtSession session : allSessions) {
+            try {
+                session.close();
+            } catch (OrtException e) {
+                System.err.println("[RERANK] Falha ao fechar a sessão do cross-encoder: " + e.getMessage());
+            }
+        }
+        tokenizer.close();
+    }
+}
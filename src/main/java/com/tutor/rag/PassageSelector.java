@@ -0,0 +1,217 @@
+package com.tutor.rag;
+
+import com.tutor.config.AppConfig;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Escolhe quantos e quais candidatos de uma busca vão para o prompt, em vez de sempre os 3 primeiros.
+ *
+ * 1. k adaptativo: com os candidatos ordenados pela nota, o corte é feito no maior degrau da curva
+ *    (entre minResults e maxResults), se ele for relevante em relação à faixa de notas. Uma pergunta
+ *    com uma resposta clara leva 1 ou 2 trechos; uma pergunta ampla, até maxResults.
+ * 2. MMR (Maximal Marginal Relevance): os k trechos são escolhidos um a um, descontando da nota de
+ *    cada candidato a similaridade com os já escolhidos. Três pedaços quase iguais da mesma página
+ *    dão lugar a trechos que acrescentam informação. A similaridade usa os vetores que o banco
+ *    vetorial já devolve; só os candidatos sem vetor (os que vieram apenas do BM25) são vetorizados,
+ *    em um único lote.
+ *
+ * A nota vem da busca densa (similaridade), do cross-encoder (probabilidade) ou do RRF. Nas duas
+ * primeiras o degrau é medido em relação à faixa de notas. No RRF a nota é derivada da posição
+ * (1 / (k + posição) em cada ranking), e degraus entre posições vizinhas são sempre minúsculos: o
+ * seletor de {@link #forFusion(int)} mede o degrau em "votos", a nota de um 1º lugar em um ranking.
+ * O MMR usa as notas normalizadas pela maior.
+ */
+public class PassageSelector {
+
+    private final int candidates;
+    private final int minResults;
+    private final int maxResults;
+    private final double minScore;
+    private final double minGap;
+    private final double lambda;
+    private final double rrfMinGap;
+    // Degrau mínimo absoluto (seletor do RRF), ou 0 para medir o degrau pela faixa de notas.
+    private final double absoluteMinGap;
+
+    /**
+     * @param candidates Quantos candidatos cada busca deve trazer.
+     * @param minResults Mínimo de trechos devolvidos (se houver candidatos).
+     * @param maxResults Máximo de trechos devolvidos.
+     * @param minScore   Similaridade mínima exigida na busca densa.
+     * @param minGap     Tamanho mínimo do degrau, como fração da faixa de notas, para cortar antes de maxResults.
+     * @param lambda     Peso da relevância no MMR (1 = só relevância, 0 = só diversidade).
+     * @param rrfMinGap  Degrau mínimo nas notas do RRF, em votos (ver {@link #forFusion(int)}).
+     */
+    public PassageSelector(int candidates, int minResults, int maxResults, double minScore, double minGap, double lambda,
+                           double rrfMinGap) {
+        this(candidates, minResults, maxResults, minScore, minGap, lambda, rrfMinGap, 0);
+    }
+
+    private PassageSelector(int candidates, int minResults, int maxResults, double minScore, double minGap, double lambda,
+                            double rrfMinGap, double absoluteMinGap) {
+        this.candidates = candidates;
+        this.minResults = minResults;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.minGap = minGap;
+        this.lambda = lambda;
+        this.rrfMinGap = rrfMinGap;
+        this.absoluteMinGap = absoluteMinGap;
+    }
+
+    /**
+     * O mesmo seletor, calibrado para notas do RRF: só corta antes de maxResults onde a nota cai pelo
+     * menos 'rrf-min-gap' votos (um voto = 1 / (rrfK + 1), um 1º lugar em um ranking), ou seja, onde
+     * o próximo candidato tem o apoio de menos buscas.
+     *
+     * @param rrfK A constante de suavização do RRF usada na fusão.
+     */
+    public PassageSelector forFusion(int rrfK) {
+        return new PassageSelector(candidates, minResults, maxResults, minScore, minGap, lambda, rrfMinGap,
+                rrfMinGap / (rrfK + 1));
+    }
+
+    /**
+     * Cria o seletor a partir das propriedades 'tutor.retrieval.adaptive.*'.
+     *
+     * @return O seletor, ou null se 'tutor.retrieval.adaptive.enabled' for false.
+     */
+    public static PassageSelector create() {
+        if (!AppConfig.getBoolean("tutor.retrieval.adaptive.enabled", true)) {
+            return null;
+        }
+        return new PassageSelector(
+                AppConfig.getInt("tutor.retrieval.adaptive.candidates", 12),
+                AppConfig.getInt("tutor.retrieval.adaptive.min-results", 1),
+                AppConfig.getInt("tutor.retrieval.adaptive.max-results", 5),
+                AppConfig.getDouble("tutor.retrieval.adaptive.min-score", 0.6),
+                AppConfig.getDouble("tutor.retrieval.adaptive.min-gap", 0.25),
+                AppConfig.getDouble("tutor.retrieval.adaptive.mmr-lambda", 0.7),
+                AppConfig.getDouble("tutor.retrieval.adaptive.rrf-min-gap", 1.0));
+    }
+
+    public int candidates() {
+        return candidates;
+    }
+
+    public double minScore() {
+        return minScore;
+    }
+
+    public int maxResults() {
+        return maxResults;
+    }
+
+    /**
+     * @param ranked         Os candidatos, do mais para o menos relevante, com a nota em score().
+     * @param embeddingModel Usado apenas para vetorizar os candidatos que vieram sem vetor.
+     * @return Os trechos escolhidos, na ordem em que devem entrar no prompt. Os vizinhos do mesmo
+     *         documento são unidos depois, pelo ContextPacker.
+     */
+    public List<TextSegment> select(List<EmbeddingMatch<TextSegment>> ranked, EmbeddingModel embeddingModel) {
+        if (ranked.isEmpty()) {
+            return List.of();
+        }
+        int k = adaptiveK(ranked);
+        List<Embedding> vectors = vectors(ranked, embeddingModel);
+        List<TextSegment> chosen = mmr(ranked, vectors, k);
+        System.out.println("[SELECTOR] " + ranked.size() + " candidatos, k=" + k + ".");
+        return chosen;
+    }
+
+    /**
+     * O corte no maior degrau entre minResults e maxResults. Se nenhum degrau passar de minGap
+     * (como fração da faixa de notas dos candidatos considerados; no RRF, o degrau absoluto em votos),
+     * a curva é plana e vão maxResults.
+     */
+    int adaptiveK(List<EmbeddingMatch<TextSegment>> ranked) {
+        int limit = Math.min(maxResults, ranked.size());
+        if (limit <= minResults) {
+            return limit;
+        }
+        double top = ranked.get(0).score();
+        double range = top - ranked.get(Math.min(ranked.size(), limit + 1) - 1).score();
+        if (range <= 0) {
+            return limit;
+        }
+        int bestK = limit;
+        double bestGap = 0;
+        // Degrau entre a posição i-1 e i: cortar ali devolve i trechos.
+        for (int i = minResults; i < Math.min(ranked.size(), limit + 1); i++) {
+            double gap = ranked.get(i - 1).score() - ranked.get(i).score();
+            if (gap > bestGap) {
+                bestGap = gap;
+                bestK = i;
+            }
+        }
+        boolean step = absoluteMinGap > 0 ? bestGap >= absoluteMinGap : bestGap / range >= minGap;
+        return step ? Math.min(bestK, limit) : limit;
+    }
+
+    /**
+     * Os vetores dos candidatos: os que vieram da busca densa são reaproveitados,
+     * os demais são vetorizados em um único lote.
+     */
+    private static List<Embedding> vectors(List<EmbeddingMatch<TextSegment>> ranked, EmbeddingModel embeddingModel) {
+        List<Embedding> vectors = new ArrayList<>(ranked.size());
+        List<Integer> missing = new ArrayList<>();
+        List<TextSegment> missingSegments = new ArrayList<>();
+        for (int i = 0; i < ranked.size(); i++) {
+            Embedding embedding = ranked.get(i).embedding();
+            vectors.add(embedding);
+            if (embedding == null) {
+                missing.add(i);
+                missingSegments.add(ranked.get(i).embedded());
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<Embedding> embedded = embeddingModel.embedAll(missingSegments).content();
+            for (int i = 0; i < missing.size(); i++) {
+                vectors.set(missing.get(i), embedded.get(i));
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * Escolhe k candidatos maximizando lambda * relevância - (1 - lambda) * maior similaridade com os já escolhidos.
+     * A relevância é a nota normalizada pela maior, para ficar na mesma escala do cosseno.
+     */
+    private List<TextSegment> mmr(List<EmbeddingMatch<TextSegment>> ranked, List<Embedding> vectors, int k) {
+        double top = ranked.get(0).score();
+        int n = ranked.size();
+        boolean[] taken = new boolean[n];
+        double[] maxSimilarity = new double[n];
+        List<TextSegment> chosen = new ArrayList<>(k);
+        for (int round = 0; round < k; round++) {
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (taken[i]) {
+                    continue;
+                }
+                double relevance = top > 0 ? ranked.get(i).score() / top : ranked.get(i).score();
+                double value = lambda * relevance - (1 - lambda) * (round == 0 ? 0 : maxSimilarity[i]);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = i;
+                }
+            }
+            taken[best] = true;
+            chosen.add(ranked.get(best).embedded());
+            for (int i = 0; i < n; i++) {
+                if (!taken[i]) {
+                    maxSimilarity[i] = Math.max(maxSimilarity[i], CosineSimilarity.between(vectors.get(i), vectors.get(best)));
+                }
+            }
+        }
+        return chosen;
+    }
+}
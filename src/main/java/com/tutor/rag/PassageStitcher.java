@@ -0,0 +1,133 @@
+package com.tutor.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Junta segmentos vizinhos do mesmo documento em uma única passagem.
+ *
+ * O splitter recursivo corta a apostila em pedaços de até 1000 caracteres com 100 de sobreposição,
+ * então dois segmentos consecutivos recuperados juntos repetem o trecho da emenda e chegam ao prompt
+ * como duas fontes quase iguais. Aqui eles viram uma passagem só, sem a repetição.
+ *
+ * Os vizinhos são identificados pelos metadados que a ingestão já grava: 'file_name' e 'index'
+ * (a posição do segmento no documento). Segmentos sem esses metadados passam sem alteração.
+ *
+ * É o único lugar que faz essa junção: o ContextPacker a chama ao montar as fontes do prompt,
+ * depois de descartar os quase-duplicados.
+ */
+public final class PassageStitcher {
+
+    // A sobreposição do splitter é de 100 caracteres; a busca vai um pouco além para tolerar espaços.
+    private static final int MAX_OVERLAP_CHARS = 200;
+    // Abaixo disso a coincidência é acaso (um ponto, uma palavra curta), não a emenda do splitter.
+    private static final int MIN_OVERLAP_CHARS = 10;
+
+    private PassageStitcher() {}
+
+    /**
+     * @param segments Os segmentos escolhidos, em ordem de relevância.
+     * @return As passagens, na ordem do segmento mais relevante de cada uma.
+     */
+    public static List<TextSegment> stitch(List<TextSegment> segments) {
+        if (segments.size() < 2) {
+            return segments;
+        }
+
+        // Agrupa por documento, guardando a ordem de relevância de cada segmento.
+        Map<Object, List<Positioned>> byDocument = new LinkedHashMap<>();
+        for (int rank = 0; rank < segments.size(); rank++) {
+            TextSegment segment = segments.get(rank);
+            String fileName = segment.metadata().getString("file_name");
+            Integer index = parseIndex(segment.metadata().getString("index"));
+            Object key = fileName != null && index != null ? fileName : rank; // sem metadados: grupo próprio
+            byDocument.computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(new Positioned(segment, index, rank, segment.metadata().getString("page")));
+        }
+
+        List<Positioned> passages = new ArrayList<>(segments.size());
+        for (List<Positioned> group : byDocument.values()) {
+            if (group.size() == 1) {
+                passages.add(group.get(0));
+                continue;
+            }
+            group.sort(Comparator.comparingInt(Positioned::index));
+            Positioned current = group.get(0);
+            for (int i = 1; i < group.size(); i++) {
+                Positioned next = group.get(i);
+                int gap = next.index() - current.index();
+                if (gap == 1) {
+                    current = merge(current, next);
+                } else if (gap > 1) { // gap == 0: o mesmo segmento duas vezes
+                    passages.add(current);
+                    current = next;
+                }
+            }
+            passages.add(current);
+        }
+
+        passages.sort(Comparator.comparingInt(Positioned::rank));
+        List<TextSegment> stitched = new ArrayList<>(passages.size());
+        for (Positioned passage : passages) {
+            stitched.add(passage.segment());
+        }
+        return stitched;
+    }
+
+    /**
+     * Une dois segmentos consecutivos, removendo a sobreposição. A passagem fica com o índice do
+     * último segmento (para continuar emendando) e com a melhor posição de relevância dos dois.
+     *
+     * Segmentos de páginas diferentes não têm sobreposição (cada página é dividida sozinha, ver
+     * DocumentLoader.splitPage): são só concatenados, sem procurar emenda.
+     */
+    private static Positioned merge(Positioned first, Positioned second) {
+        String a = first.segment().text();
+        String b = second.segment().text();
+        int overlap = Objects.equals(first.lastPage(), second.lastPage()) ? overlap(a, b) : 0;
+        String text = overlap > 0 ? a + b.substring(overlap) : a + "\n" + b;
+
+        Metadata metadata = first.segment().metadata().copy();
+        metadata.put("index", String.valueOf(second.index()));
+        return new Positioned(TextSegment.from(text, metadata), second.index(), Math.min(first.rank(), second.rank()),
+                second.lastPage());
+    }
+
+    /**
+     * O tamanho do maior sufixo de 'a' que é prefixo de 'b' (entre MIN_OVERLAP_CHARS e MAX_OVERLAP_CHARS),
+     * ou 0 se não houver.
+     */
+    static int overlap(String a, String b) {
+        int max = Math.min(MAX_OVERLAP_CHARS, Math.min(a.length(), b.length()));
+        for (int length = max; length >= MIN_OVERLAP_CHARS; length--) {
+            if (a.regionMatches(a.length() - length, b, 0, length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private static Integer parseIndex(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param lastPage A página do último segmento da passagem ('page'; null em arquivos .txt, tratados
+     *                 como uma página só).
+     */
+    private record Positioned(TextSegment segment, Integer index, int rank, String lastPage) {}
+}
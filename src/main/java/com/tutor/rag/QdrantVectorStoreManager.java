@@ -1,98 +1,321 @@
 package com.tutor.rag;
 
 import com.tutor.config.AppConfig;
-import com.tutor.config.EmbeddingConfig;
-import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.PointIdFactory;
 import io.qdrant.client.QdrantClient;
 import io.qdrant.client.QdrantGrpcClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Collections.BinaryQuantization;
+import io.qdrant.client.grpc.Collections.CollectionInfo;
+import io.qdrant.client.grpc.Collections.CreateCollection;
+import io.qdrant.client.grpc.Collections.Disabled;
 import io.qdrant.client.grpc.Collections.Distance;
+import io.qdrant.client.grpc.Collections.QuantizationConfig;
+import io.qdrant.client.grpc.Collections.QuantizationConfigDiff;
+import io.qdrant.client.grpc.Collections.QuantizationType;
+import io.qdrant.client.grpc.Collections.ScalarQuantization;
+import io.qdrant.client.grpc.Collections.UpdateCollection;
 import io.qdrant.client.grpc.Collections.VectorParams;
+import io.qdrant.client.grpc.Collections.VectorParamsDiff;
+import io.qdrant.client.grpc.Collections.VectorsConfig;
+import io.qdrant.client.grpc.Collections.VectorsConfigDiff;
+import io.qdrant.client.grpc.Points.PointId;
+import io.qdrant.client.grpc.Points.PointStruct;
+import io.qdrant.client.grpc.Points.QuantizationSearchParams;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public final class QdrantVectorStoreManager {
 
+    /**
+     * Quantização dos vetores da coleção ('qdrant.quantization').
+     *
+     * - NONE:   float32, 1536 bytes por vetor de 384 dimensões.
+     * - SCALAR: int8 por dimensão (4x menor), praticamente sem perda de recall com o rescore.
+     * - BINARY: 1 bit por dimensão (32x menor); depende mais da sobreamostragem para manter o recall.
+     *
+     * Com quantização, os vetores quantizados ficam na RAM e os originais (float32) no disco,
+     * lidos apenas para reordenar os candidatos de cada busca.
+     */
+    public enum Quantization {
+        NONE, SCALAR, BINARY;
+
+        public static Quantization fromConfig() {
+            String value = AppConfig.get("qdrant.quantization", "none").trim().toUpperCase(Locale.ROOT);
+            try {
+                return valueOf(value);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Quantização desconhecida em 'qdrant.quantization': " + value, e);
+            }
+        }
+    }
+
     private QdrantVectorStoreManager() {}
 
     private static final String COLLECTION_NAME = AppConfig.get("qdrant.collection.name");
 
+    private static final String DATA_DIRECTORY = "data";
+
+    // Mesma chave de payload usada pelo QdrantEmbeddingStore para o texto do segmento.
+    private static final String PAYLOAD_TEXT_KEY = "text_segment";
+
+    private static final int VECTOR_DIMENSION = 384; // Dimensão para o modelo all-MiniLM-L6-v2
+
+    // Um único cliente (e canal gRPC) para a ingestão e todas as buscas, fechado em shutdown().
+    private static QdrantClient sharedClient;
+    private static AsyncQdrantEmbeddingStore sharedStore;
+
+    /**
+     * O cliente compartilhado, criado na primeira chamada. O canal gRPC multiplexa as chamadas
+     * concorrentes, então não há motivo para mais de um cliente por processo.
+     */
+    public static synchronized QdrantClient client() {
+        if (sharedClient == null) {
+            String host = AppConfig.get("qdrant.host");
+            int port = AppConfig.getInt("qdrant.port");
+            sharedClient = new QdrantClient(QdrantGrpcClient.newBuilder(host, port, false).build());
+        }
+        return sharedClient;
+    }
+
+    /**
+     * Fecha o cliente compartilhado (e o canal gRPC). As buscas em andamento são canceladas.
+     */
+    public static synchronized void shutdown() {
+        if (sharedStore != null) {
+            System.out.println(sharedStore.stats());
+            sharedStore = null;
+        }
+        if (sharedClient != null) {
+            sharedClient.close();
+            sharedClient = null;
+            System.out.println("[QDRANT] Conexão encerrada.");
+        }
+    }
+
     /**
      * Ponto de entrada principal. Garante que o Qdrant esteja pronto e retorna
      * um EmbeddingStore funcional para o retriever.
+     * @param lexicalIndex O índice BM25 a manter sincronizado com a coleção (pode ser null).
      * @return Uma instância de EmbeddingStore conectada ao Qdrant.
      */
-    public static EmbeddingStore<TextSegment> getEmbeddingStore() {
-        String host = AppConfig.get("qdrant.host");
-        int port = AppConfig.getInt("qdrant.port");
+    public static EmbeddingStore<TextSegment> getEmbeddingStore(Bm25Index lexicalIndex) {
+        QdrantClient client = client();
 
-        QdrantClient client = new QdrantClient(
-                QdrantGrpcClient.newBuilder(host, port, false).build()
-        );
+        Quantization quantization = Quantization.fromConfig();
 
         try {
             List<String> collectionNames = client.listCollectionsAsync().get();
             boolean collectionExists = collectionNames.contains(COLLECTION_NAME);
+            IngestionManifest manifest = IngestionManifest.load(manifestFile());
 
             if (!collectionExists) {
-                // A coleção não existe, então a criamos e disparamos a ingestão de dados.
-                createCollectionAndIngestData(client);
+                // A coleção não existe: a criamos e o manifesto antigo (se houver) não vale mais nada.
+                createCollection(client, quantization);
+                manifest.clear();
+            } else if (!manifest.exists()) {
+                // Coleção criada antes do manifesto existir: os IDs dos pontos são desconhecidos,
+                // então a recriamos uma única vez para passar a ter controle incremental.
+                System.out.println("[QDRANT] Coleção '" + COLLECTION_NAME + "' sem manifesto de ingestão. Recriando...");
+                client.deleteCollectionAsync(COLLECTION_NAME).get();
+                createCollection(client, quantization);
             } else {
                 System.out.println("[QDRANT] Conectado à coleção existente: '" + COLLECTION_NAME + "'.");
+                migrateQuantization(client, quantization);
             }
+
+            DataSynchronizer.synchronize(DATA_DIRECTORY, manifest, lexicalIndex,
+                    (ids, embeddings, segments) -> upsertPoints(client, ids, embeddings, segments),
+                    segmentIds -> deletePoints(client, segmentIds));
         } catch (InterruptedException | ExecutionException e) {
             if (e instanceof InterruptedException) Thread.currentThread().interrupt();
             throw new RuntimeException("Falha ao inicializar a coleção no Qdrant", e);
         }
 
         // Retorna uma instância do EmbeddingStore para uso pelo Retriever.
-        return QdrantEmbeddingStore.builder()
+        QdrantEmbeddingStore store = QdrantEmbeddingStore.builder()
                 .collectionName(COLLECTION_NAME)
                 .client(client)
                 .build();
+        QuantizationSearchParams quantizationParams = null;
+        if (quantization != Quantization.NONE) {
+            // Coleção quantizada: a busca passa pelos vetores quantizados com sobreamostragem
+            // e os candidatos são reordenados pelos vetores originais.
+            double oversampling = AppConfig.getDouble("qdrant.quantization.oversampling", quantization == Quantization.BINARY ? 3.0 : 2.0);
+            boolean rescore = AppConfig.getBoolean("qdrant.quantization.rescore", true);
+            System.out.println("[QDRANT] Busca quantizada (" + quantization + ") com sobreamostragem " + oversampling
+                    + (rescore ? " e rescore pelos vetores originais." : " sem rescore."));
+            quantizationParams = QuantizationSearchParams.newBuilder()
+                    .setOversampling(oversampling)
+                    .setRescore(rescore)
+                    .build();
+        }
+        Duration timeout = Duration.ofMillis(AppConfig.getInt("qdrant.search.timeout-ms", 2000));
+        boolean hedging = AppConfig.getBoolean("qdrant.search.hedge.enabled", true);
+        Duration minHedgeDelay = Duration.ofMillis(AppConfig.getInt("qdrant.search.hedge.min-delay-ms", 20));
+        System.out.println("[QDRANT] Buscas com prazo de " + timeout.toMillis() + " ms"
+                + (hedging ? " e requisição especulativa acima do p95." : "."));
+        AsyncQdrantEmbeddingStore asyncStore = new AsyncQdrantEmbeddingStore(store, client, COLLECTION_NAME, PAYLOAD_TEXT_KEY,
+                quantizationParams, timeout, hedging, minHedgeDelay);
+        synchronized (QdrantVectorStoreManager.class) {
+            sharedStore = asyncStore;
+        }
+        return asyncStore;
     }
 
     /**
-     * Cria a coleção no Qdrant e, em seguida, executa o processo de ingestão.
-     * Este método é chamado apenas uma vez.
+     * Cria a coleção vazia no Qdrant, já com a quantização configurada.
      */
-    private static void createCollectionAndIngestData(QdrantClient client) throws ExecutionException, InterruptedException {
-        // 1. Cria a coleção
-        System.out.println("[QDRANT] Coleção '" + COLLECTION_NAME + "' não encontrada. Criando...");
-        int vectorDimension = 384; // Dimensão para o modelo all-MiniLM-L6-v2
-        client.createCollectionAsync(COLLECTION_NAME,
-                VectorParams.newBuilder().setDistance(Distance.Cosine).setSize(vectorDimension).build()
-        ).get();
-        System.out.println("[QDRANT] Coleção criada com sucesso. Iniciando ingestão de dados...");
-
-        // 2. Prepara o Ingestor
-        EmbeddingStore<TextSegment> embeddingStoreForIngestion = QdrantEmbeddingStore.builder()
-                .collectionName(COLLECTION_NAME)
-                .client(client)
-                .build();
-        EmbeddingModel embeddingModel = EmbeddingConfig.createEmbeddingModel();
+    private static void createCollection(QdrantClient client, Quantization quantization) throws ExecutionException, InterruptedException {
+        System.out.println("[QDRANT] Criando a coleção '" + COLLECTION_NAME + "' (quantização: " + quantization + ")...");
+        client.createCollectionAsync(createCollectionRequest(COLLECTION_NAME, quantization)).get();
+        System.out.println("[QDRANT] Coleção criada com sucesso.");
+    }
 
-        EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
-                .documentSplitter(DocumentLoader.createRecursiveSplitter())
-                .embeddingModel(embeddingModel)
-                .embeddingStore(embeddingStoreForIngestion)
-                .build();
+    /**
+     * Monta a criação de uma coleção de 384 dimensões com distância de cosseno. Com quantização,
+     * os vetores originais vão para o disco e só os quantizados ficam na RAM.
+     * Também usado pelo benchmark de recall, para medir exatamente a configuração da aplicação.
+     *
+     * @param collectionName O nome da coleção.
+     * @param quantization   A quantização dos vetores.
+     * @return A requisição de criação.
+     */
+    public static CreateCollection createCollectionRequest(String collectionName, Quantization quantization) {
+        CreateCollection.Builder request = CreateCollection.newBuilder()
+                .setCollectionName(collectionName)
+                .setVectorsConfig(VectorsConfig.newBuilder().setParams(VectorParams.newBuilder()
+                        .setDistance(Distance.Cosine)
+                        .setSize(VECTOR_DIMENSION)
+                        .setOnDisk(quantization != Quantization.NONE)));
+        QuantizationConfig quantizationConfig = quantizationConfig(quantization);
+        if (quantizationConfig != null) {
+            request.setQuantizationConfig(quantizationConfig);
+        }
+        return request.build();
+    }
 
-        // 3. Carrega os documentos brutos
-        List<Document> documents = DocumentLoader.loadDocuments("data");
-        if (documents.isEmpty()) {
-            System.out.println("[INGEST] Nenhum documento encontrado para ingestão.");
+    /**
+     * A configuração de quantização do Qdrant para o modo escolhido (null para NONE).
+     * O quantile 0.99 descarta os 1% de valores extremos ao calcular a faixa do int8,
+     * o que preserva a resolução da maioria das dimensões.
+     */
+    private static QuantizationConfig quantizationConfig(Quantization quantization) {
+        return switch (quantization) {
+            case NONE -> null;
+            case SCALAR -> QuantizationConfig.newBuilder().setScalar(ScalarQuantization.newBuilder()
+                    .setType(QuantizationType.Int8)
+                    .setQuantile(0.99f)
+                    .setAlwaysRam(true)).build();
+            case BINARY -> QuantizationConfig.newBuilder().setBinary(BinaryQuantization.newBuilder()
+                    .setAlwaysRam(true)).build();
+        };
+    }
+
+    /**
+     * Ajusta uma coleção existente à quantização configurada, sem reingerir os documentos:
+     * o Qdrant recalcula os vetores quantizados em segundo plano a partir dos originais,
+     * e as buscas continuam funcionando (sem quantização) enquanto isso.
+     */
+    private static void migrateQuantization(QdrantClient client, Quantization quantization)
+            throws ExecutionException, InterruptedException {
+        CollectionInfo info = client.getCollectionInfoAsync(COLLECTION_NAME).get();
+        Quantization current = currentQuantization(info);
+        if (current == quantization) {
             return;
         }
+        System.out.println("[QDRANT] Migrando a quantização da coleção de " + current + " para " + quantization + "...");
+        QuantizationConfigDiff.Builder diff = QuantizationConfigDiff.newBuilder();
+        switch (quantization) {
+            case NONE -> diff.setDisabled(Disabled.getDefaultInstance());
+            case SCALAR -> diff.setScalar(quantizationConfig(quantization).getScalar());
+            case BINARY -> diff.setBinary(quantizationConfig(quantization).getBinary());
+        }
+        client.updateCollectionAsync(UpdateCollection.newBuilder()
+                .setCollectionName(COLLECTION_NAME)
+                .setQuantizationConfig(diff)
+                .setVectorsConfig(VectorsConfigDiff.newBuilder().setParams(VectorParamsDiff.newBuilder()
+                        .setOnDisk(quantization != Quantization.NONE)))
+                .build()).get();
+        System.out.println("[QDRANT] Quantização atualizada; o Qdrant reconstrói os segmentos em segundo plano.");
+    }
 
-        // 4. Executa a ingestão
-        // O Ingestor agora lida com todo o processo de forma segura.
-        ingestor.ingest(documents);
-        System.out.println("[INGEST] Ingestão de " + documents.size() + " documentos concluída.");
+    private static Quantization currentQuantization(CollectionInfo info) {
+        if (!info.getConfig().hasQuantizationConfig()) {
+            return Quantization.NONE;
+        }
+        QuantizationConfig config = info.getConfig().getQuantizationConfig();
+        if (config.hasScalar()) {
+            return Quantization.SCALAR;
+        }
+        if (config.hasBinary()) {
+            return Quantization.BINARY;
+        }
+        // Quantização por produto (criada fora da aplicação): tratada como diferente de tudo, será substituída.
+        return null;
+    }
+
+    /**
+     * Grava um lote de segmentos com IDs determinísticos. A gravação é assíncrona:
+     * o pipeline decide quantas podem ficar pendentes ao mesmo tempo.
+     */
+    private static Future<?> upsertPoints(QdrantClient client, List<String> ids,
+                                          List<Embedding> embeddings, List<TextSegment> segments) {
+        List<PointStruct> points = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            points.add(toPoint(ids.get(i), embeddings.get(i), segments.get(i)));
+        }
+        return client.upsertAsync(COLLECTION_NAME, points);
+    }
+
+    /**
+     * Monta o ponto no mesmo formato que o QdrantEmbeddingStore usa, para que o retriever
+     * consiga ler o texto e os metadados de volta.
+     */
+    private static PointStruct toPoint(String id, Embedding embedding, TextSegment segment) {
+        PointStruct.Builder point = PointStruct.newBuilder()
+                .setId(PointIdFactory.id(UUID.fromString(id)))
+                .setVectors(VectorsFactory.vectors(embedding.vector()))
+                .putPayload(PAYLOAD_TEXT_KEY, ValueFactory.value(segment.text()));
+        segment.metadata().toMap().forEach((key, value) ->
+                point.putPayload(key, ValueFactory.value(String.valueOf(value))));
+        return point.build();
+    }
+
+    private static void deletePoints(QdrantClient client, List<String> segmentIds) {
+        if (segmentIds.isEmpty()) {
+            return;
+        }
+        List<PointId> pointIds = new ArrayList<>(segmentIds.size());
+        for (String id : segmentIds) {
+            pointIds.add(PointIdFactory.id(UUID.fromString(id)));
+        }
+        try {
+            client.deleteAsync(COLLECTION_NAME, pointIds).get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw new RuntimeException("Falha ao apagar pontos no Qdrant", e);
+        }
+    }
+
+    /**
+     * O manifesto fica junto aos dados do Qdrant (o volume 'qdrant_storage' do docker-compose),
+     * um por coleção. Pode ser alterado com 'qdrant.manifest.file'.
+     */
+    private static Path manifestFile() {
+        return Paths.get(AppConfig.get("qdrant.manifest.file", "qdrant_storage/" + COLLECTION_NAME + ".manifest"));
     }
-}
\ No newline at end of file
+}
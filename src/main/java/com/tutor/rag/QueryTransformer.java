@@ -1,6 +1,7 @@
 package com.tutor.rag;
 
 import com.tutor.config.ModelConfig;
+import com.tutor.llm.OllamaScheduler;
 import dev.langchain4j.chain.Chain;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.input.PromptTemplate;
@@ -14,7 +15,8 @@ public class QueryTransformer implements Chain<String, String> {
     private final Chain<String, String> chain;
 
     public QueryTransformer() {
-        ChatLanguageModel model = ModelConfig.createChatLanguageModel();
+        // Transformação de consulta é etapa auxiliar: cede a vez às respostas em andamento.
+        ChatLanguageModel model = ModelConfig.getChatLanguageModel(OllamaScheduler.Priority.AUXILIARY);
         // Um prompt que instrui o LLM a agir como um especialista em buscas.
         PromptTemplate promptTemplate = PromptTemplate.from(
                 "Sua tarefa é transformar a pergunta de um usuário em 2 ou 3 consultas de busca semântica, separadas por vírgula. Retorne APENAS as consultas, nada mais.\n\n" +
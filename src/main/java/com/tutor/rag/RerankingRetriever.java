@@ -0,0 +1,103 @@
+package com.tutor.rag;
+
+import com.tutor.metrics.TutorMetrics;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.retriever.Retriever;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Retriever em dois estágios: o retriever de candidatos traz mais segmentos do que o prompt comporta
+ * (ex: 20, com um minScore mais baixo), e o cross-encoder reordena esses candidatos lendo cada um junto
+ * com a pergunta original. Só os maxResults melhores seguem para o prompt.
+ *
+ * Trechos relevantes que o bi-encoder deixava em 4º a 10º lugar, ou pouco abaixo do minScore,
+ * passam a chegar ao prompt, e trechos parecidos mas inúteis deixam de ocupá-lo.
+ *
+ * Com um PassageSelector, o corte fixo em maxResults dá lugar à seleção adaptativa (k pelo degrau
+ * nas notas do cross-encoder, depois MMR). Os logits passam por uma sigmoide antes, para que as
+ * notas fiquem entre 0 e 1 como as da busca densa.
+ */
+public class RerankingRetriever implements Retriever<TextSegment> {
+
+    private final Retriever<TextSegment> candidateRetriever;
+    private final ScoringModel scoringModel;
+    private final int maxResults;
+    private final Double minScore;
+    private final PassageSelector selector;
+    private final EmbeddingModel embeddingModel;
+
+    /**
+     * @param candidateRetriever O retriever que busca os candidatos.
+     * @param scoringModel       O cross-encoder.
+     * @param maxResults         Quantos segmentos devolver após a reordenação.
+     * @param minScore           Nota mínima do cross-encoder, ou null para não filtrar.
+     */
+    public RerankingRetriever(Retriever<TextSegment> candidateRetriever, ScoringModel scoringModel,
+                              int maxResults, Double minScore) {
+        this(candidateRetriever, scoringModel, maxResults, minScore, null, null);
+    }
+
+    /**
+     * @param selector       A seleção adaptativa aplicada às notas do cross-encoder, ou null para o corte em maxResults.
+     * @param embeddingModel Usado pelo seletor para vetorizar os candidatos no MMR.
+     */
+    public RerankingRetriever(Retriever<TextSegment> candidateRetriever, ScoringModel scoringModel,
+                              int maxResults, Double minScore, PassageSelector selector, EmbeddingModel embeddingModel) {
+        this.candidateRetriever = candidateRetriever;
+        this.scoringModel = scoringModel;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.selector = selector;
+        this.embeddingModel = embeddingModel;
+    }
+
+    @Override
+    public List<TextSegment> findRelevant(String query) {
+        List<TextSegment> candidates = candidateRetriever.findRelevant(query);
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+
+        long start = System.nanoTime();
+        List<Double> scores = scoringModel.scoreAll(candidates, query).content();
+        long elapsedNanos = System.nanoTime() - start;
+        TutorMetrics.RERANK.record(elapsedNanos / 1e9);
+
+        List<Integer> order = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            if (minScore == null || scores.get(i) >= minScore) {
+                order.add(i);
+            }
+        }
+        order.sort(Comparator.comparingDouble(scores::get).reversed());
+
+        List<TextSegment> reranked;
+        if (selector != null && !order.isEmpty()) {
+            // Só os primeiros 'candidates' entram na seleção: o MMR precisa vetorizar cada um.
+            List<EmbeddingMatch<TextSegment>> ranked = new ArrayList<>();
+            for (int i = 0; i < order.size() && ranked.size() < selector.candidates(); i++) {
+                int index = order.get(i);
+                ranked.add(new EmbeddingMatch<>(sigmoid(scores.get(index)), String.valueOf(index), null, candidates.get(index)));
+            }
+            reranked = selector.select(ranked, embeddingModel);
+        } else {
+            reranked = new ArrayList<>(Math.min(maxResults, order.size()));
+            for (int i = 0; i < order.size() && reranked.size() < maxResults; i++) {
+                reranked.add(candidates.get(order.get(i)));
+            }
+        }
+        System.out.printf("[RERANK] %d candidatos reordenados em %.1f ms; %d mantidos.%n",
+                candidates.size(), elapsedNanos / 1e6, reranked.size());
+        return reranked;
+    }
+
+    private static double sigmoid(double logit) {
+        return 1 / (1 + Math.exp(-logit));
+    }
+}
@@ -1,11 +1,17 @@
 package com.tutor.rag;
 
+import com.tutor.config.AppConfig;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.retriever.EmbeddingStoreRetriever;
 import dev.langchain4j.retriever.Retriever;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 
+import java.util.List;
+
 /**
  * Serviço responsável por criar e configurar o Retriever.
  * O Retriever é o componente que busca informações relevantes no EmbeddingStore (Qdrant)
@@ -13,6 +19,19 @@ import dev.langchain4j.store.embedding.EmbeddingStore;
  */
 public class RetrieverService {
 
+    private static final int MAX_RESULTS = 3;
+
+    // <<<< AUMENTANDO O LIMIAR DE SIMILARIDADE >>>>
+    // Um valor mais alto (e.g., 0.7) exige que o texto recuperado seja
+    // muito mais parecido com a pergunta. Isso ajuda a filtrar
+    // resultados irrelevantes para perguntas genéricas como "ola".
+    private static final double MIN_SCORE = 0.7;
+
+    // Com o cross-encoder, a busca traz mais candidatos e com um limiar mais baixo:
+    // quem decide o que entra no prompt passa a ser a reordenação.
+    private static final int RERANK_CANDIDATES = AppConfig.getInt("tutor.rerank.candidates", 20);
+    private static final double RERANK_CANDIDATE_MIN_SCORE = AppConfig.getDouble("tutor.rerank.candidate-min-score", 0.5);
+
     /**
      * Cria um Retriever que se conecta ao nosso EmbeddingStore (Qdrant).
      *
@@ -24,17 +43,90 @@ public class RetrieverService {
             EmbeddingStore<TextSegment> embeddingStore,
             EmbeddingModel embeddingModel) {
 
-        int maxResults = 3;
+        OnnxCrossEncoder reranker = OnnxCrossEncoder.shared();
+        PassageSelector selector = PassageSelector.create();
+        if (reranker != null) {
+            System.out.println("[CONFIG] Criando Retriever com " + RERANK_CANDIDATES + " candidatos (minScore="
+                    + RERANK_CANDIDATE_MIN_SCORE + ") reordenados pelo cross-encoder até " + describeCut(selector));
+            return withReranking(EmbeddingStoreRetriever.from(embeddingStore, embeddingModel, RERANK_CANDIDATES, RERANK_CANDIDATE_MIN_SCORE),
+                    reranker, selector, embeddingModel);
+        }
+
+        if (selector != null) {
+            System.out.println("[CONFIG] Criando Retriever com " + selector.candidates() + " candidatos (minScore="
+                    + selector.minScore() + ") e seleção adaptativa de até " + selector.maxResults() + " trechos");
+            return query -> {
+                Embedding queryEmbedding = embeddingModel.embed(query).content();
+                List<EmbeddingMatch<TextSegment>> matches = embeddingStore.search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(queryEmbedding)
+                        .maxResults(selector.candidates())
+                        .minScore(selector.minScore())
+                        .build()).matches();
+                return selector.select(matches, embeddingModel);
+            };
+        }
 
-        // <<<< AUMENTANDO O LIMIAR DE SIMILARIDADE >>>>
-        // Um valor mais alto (e.g., 0.7) exige que o texto recuperado seja
-        // muito mais parecido com a pergunta. Isso ajuda a filtrar
-        // resultados irrelevantes para perguntas genéricas como "ola".
-        double minScore = 0.7;
+        System.out.println("[CONFIG] Criando Retriever com maxResults=" + MAX_RESULTS + " e minScore=" + MIN_SCORE);
 
-        System.out.println("[CONFIG] Criando Retriever com maxResults=" + maxResults + " e minScore=" + minScore);
+        return EmbeddingStoreRetriever.from(embeddingStore, embeddingModel, MAX_RESULTS, MIN_SCORE);
+    }
+
+    /**
+     * Cria o Retriever de múltiplas consultas: a pergunta é reescrita pelo QueryTransformer,
+     * cada sub-consulta é buscada em paralelo e os resultados são fundidos (RRF).
+     * Com um Bm25Index, cada sub-consulta também é buscada lexicalmente e entra na mesma fusão.
+     *
+     * @param embeddingStore   A instância do nosso banco de dados vetorial (Qdrant).
+     * @param embeddingModel   O modelo de embedding para converter as consultas em vetores.
+     * @param queryTransformer O serviço que reescreve a pergunta em várias consultas.
+     * @param lexicalIndex     O índice BM25 para a busca híbrida, ou null para usar apenas a busca densa.
+     * @return Uma instância de Retriever<TextSegment> pronta para uso.
+     */
+    public static Retriever<TextSegment> createTransformingRetriever(
+            EmbeddingStore<TextSegment> embeddingStore,
+            EmbeddingModel embeddingModel,
+            QueryTransformer queryTransformer,
+            Bm25Index lexicalIndex) {
+
+        String search = lexicalIndex != null ? "híbrida (densa + BM25)" : "densa";
+        OnnxCrossEncoder reranker = OnnxCrossEncoder.shared();
+        PassageSelector selector = PassageSelector.create();
+        if (reranker != null) {
+            System.out.println("[CONFIG] Criando Retriever multi-consulta com busca " + search + ", " + RERANK_CANDIDATES
+                    + " candidatos (minScore=" + RERANK_CANDIDATE_MIN_SCORE + ") reordenados pelo cross-encoder até " + describeCut(selector));
+            return withReranking(new TransformingRetriever(embeddingStore, embeddingModel, queryTransformer,
+                    RERANK_CANDIDATES, RERANK_CANDIDATE_MIN_SCORE, lexicalIndex, null), reranker, selector, embeddingModel);
+        }
+
+        if (selector != null) {
+            System.out.println("[CONFIG] Criando Retriever multi-consulta com busca " + search + ", " + selector.candidates()
+                    + " candidatos (minScore=" + selector.minScore() + ") e seleção adaptativa de até " + selector.maxResults() + " trechos");
+            return new TransformingRetriever(embeddingStore, embeddingModel, queryTransformer,
+                    selector.candidates(), selector.minScore(), lexicalIndex, selector);
+        }
+
+        System.out.println("[CONFIG] Criando Retriever multi-consulta com maxResults=" + MAX_RESULTS + ", minScore=" + MIN_SCORE
+                + " e busca " + search);
+
+        return new TransformingRetriever(embeddingStore, embeddingModel, queryTransformer, MAX_RESULTS, MIN_SCORE, lexicalIndex, null);
+    }
+
+    /**
+     * Coloca o cross-encoder depois do retriever de candidatos. A nota mínima do cross-encoder
+     * ('tutor.rerank.min-score') é opcional: sem ela, os maxResults melhores candidatos sempre seguem.
+     * Com o seletor, é ele quem decide quantos e quais trechos seguem, sobre as notas do cross-encoder.
+     */
+    private static Retriever<TextSegment> withReranking(Retriever<TextSegment> candidateRetriever, OnnxCrossEncoder reranker,
+                                                        PassageSelector selector, EmbeddingModel embeddingModel) {
+        String minScore = AppConfig.get("tutor.rerank.min-score", "");
+        return new RerankingRetriever(candidateRetriever, reranker, MAX_RESULTS,
+                minScore.isBlank() ? null : Double.parseDouble(minScore.trim()), selector, embeddingModel);
+    }
 
-        return EmbeddingStoreRetriever.from(embeddingStore, embeddingModel, maxResults, minScore);
+    private static String describeCut(PassageSelector selector) {
+        return selector != null
+                ? "a seleção adaptativa de até " + selector.maxResults() + " trechos"
+                : "maxResults=" + MAX_RESULTS;
     }
 
 }
\ No newline at end of file
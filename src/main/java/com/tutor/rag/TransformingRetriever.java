@@ -1,62 +1,303 @@
 package com.tutor.rag;
 
+import com.tutor.config.AppConfig;
+import com.tutor.metrics.TutorMetrics;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.retriever.Retriever;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 /**
- * Implementa o Padrão de Projeto "Decorator" para a interface Retriever.
- * Esta classe "envolve" um retriever existente para adicionar uma funcionalidade extra:
- * a transformação da consulta do usuário antes que a busca vetorial seja realizada.
+ * Retriever que transforma a consulta do usuário antes que a busca vetorial seja realizada.
+ *
+ * O QueryTransformer devolve 2 ou 3 consultas separadas por vírgula. Esta classe separa
+ * essas consultas, gera os embeddings de todas em um único lote, executa as buscas no
+ * EmbeddingStore em paralelo (uma virtual thread por consulta) e combina os resultados
+ * com Reciprocal Rank Fusion (RRF), removendo segmentos duplicados.
+ *
+ * Com um Bm25Index, cada sub-consulta também é buscada lexicalmente, ao mesmo tempo que a busca
+ * densa. O ranking do BM25 entra na mesma fusão: termos exatos ("present perfect") que o embedding
+ * não aproxima, ou que ficariam abaixo do minScore, ainda chegam ao prompt.
+ *
+ * Quando o EmbeddingStore também implementa AsyncEmbeddingSearch (Qdrant), as buscas densas de todas
+ * as sub-consultas vão em uma única chamada, sem ocupar threads enquanto esperam. Se essa chamada
+ * estourar o prazo, a resposta segue com o que o BM25 encontrou, em vez de esperar ou falhar.
+ *
+ * Com um PassageSelector, os candidatos fundidos não são simplesmente cortados em maxResults:
+ * o seletor escolhe quantos e quais entram no prompt (k adaptativo, MMR e junção de vizinhos).
+ * Como as notas do RRF dependem só das posições, o seletor é recalibrado para elas
+ * ({@link PassageSelector#forFusion(int)}): o corte exige a perda de votos entre as buscas.
  *
  * O objetivo principal é resolver o problema de perguntas vagas ou mal formuladas,
- * tornando a busca RAG (Retrieval-Augmented Generation) mais eficaz e precisa.
+ * tornando a busca RAG (Retrieval-Augmented Generation) mais eficaz e precisa,
+ * sem que o tempo total fique muito acima do de uma única busca.
  */
 public class TransformingRetriever implements Retriever<TextSegment> {
 
-    // O retriever original (base) que executa a busca vetorial real no Qdrant.
-    private final Retriever<TextSegment> retriever;
+    // Constante de suavização do RRF; 60 é o valor usual da literatura.
+    private static final int RRF_K = 60;
+
+    // Limite de consultas por pergunta, para não multiplicar as buscas sem necessidade.
+    private static final int MAX_QUERIES = 4;
+
+    // Registra a pergunta e as sub-consultas de cada busca (diagnóstico; desligado no uso normal).
+    private static final boolean LOG_QUERIES = AppConfig.getBoolean("tutor.retrieval.log-queries", false);
+
+    // Aspas só nas pontas da sub-consulta: as duplas saem mesmo sozinhas (a separação por vírgula pode
+    // deixar só a de abertura ou a de fechamento); as simples, só se envolverem a sub-consulta inteira,
+    // para não confundir com apóstrofos ("don't", "students'").
+    private static final Pattern EDGE_DOUBLE_QUOTES = Pattern.compile("^[\"“”]+|[\"“”]+$");
+    private static final Pattern WRAPPING_SINGLE_QUOTES = Pattern.compile("^['‘](.*)['’]$");
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final EmbeddingModel embeddingModel;
 
     // O componente que usa um LLM para reescrever a consulta do usuário.
     private final QueryTransformer queryTransformer;
 
+    // Índice lexical opcional para a busca híbrida (null = apenas busca densa).
+    private final Bm25Index lexicalIndex;
+
+    // Seleção adaptativa dos candidatos fundidos, calibrada para o RRF (null = os maxResults primeiros do RRF).
+    private final PassageSelector selector;
+
+    private final int maxResults;
+    private final double minScore;
+
     /**
      * Construtor que recebe as dependências necessárias (Injeção de Dependência).
      *
-     * @param retriever O retriever subjacente que fará a busca no banco de dados vetorial.
+     * @param embeddingStore   O banco de dados vetorial onde as buscas são feitas.
+     * @param embeddingModel   O modelo de embedding usado para vetorizar as consultas.
      * @param queryTransformer O serviço que reescreverá a consulta do usuário.
+     * @param maxResults       Quantos segmentos devolver após a fusão (com seletor, quantos candidatos entregar a ele).
+     * @param minScore         Similaridade mínima exigida em cada busca densa individual.
+     * @param lexicalIndex     O índice BM25 para a busca híbrida, ou null para usar apenas a busca densa.
+     * @param selector         O seletor adaptativo dos candidatos fundidos, ou null.
      */
-    public TransformingRetriever(Retriever<TextSegment> retriever, QueryTransformer queryTransformer) {
-        this.retriever = retriever;
+    public TransformingRetriever(EmbeddingStore<TextSegment> embeddingStore,
+                                 EmbeddingModel embeddingModel,
+                                 QueryTransformer queryTransformer,
+                                 int maxResults,
+                                 double minScore,
+                                 Bm25Index lexicalIndex,
+                                 PassageSelector selector) {
+        this.embeddingStore = embeddingStore;
+        this.embeddingModel = embeddingModel;
         this.queryTransformer = queryTransformer;
+        this.lexicalIndex = lexicalIndex;
+        this.selector = selector != null ? selector.forFusion(RRF_K) : null;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
     }
 
     /**
      * Este método é o ponto central da classe e sobrescreve o comportamento padrão do Retriever.
-     * Ele é chamado pela cadeia de RAG (ex: ConversationalRetrievalChain) toda vez que uma busca é necessária.
+     * Ele é chamado pela cadeia de RAG toda vez que uma busca é necessária.
      *
      * O fluxo de execução é:
-     * 1. Interceptar a consulta original do usuário.
-     * 2. Passá-la para o QueryTransformer para otimização.
-     * 3. Usar a consulta otimizada para buscar no retriever base.
+     * 1. Passar a consulta original para o QueryTransformer.
+     * 2. Separar a saída em sub-consultas (mantendo a original como uma delas).
+     * 3. Vetorizar todas as sub-consultas em lote e buscar em paralelo (densa e, se houver, lexical).
+     * 4. Fundir os rankings com RRF e devolver os melhores segmentos (ou os escolhidos pelo seletor).
      *
      * @param query O texto da pergunta original enviada pelo usuário.
-     * @return Uma lista de segmentos de texto relevantes encontrados com base na consulta transformada.
+     * @return Uma lista de segmentos de texto relevantes encontrados com base nas consultas transformadas.
      */
     @Override
     public List<TextSegment> findRelevant(String query) {
         // Passo 1: Usa o QueryTransformer para reescrever a consulta.
         // Por exemplo, "quero uma aula" pode se tornar "lição de inglês para iniciantes, tópicos de conversação".
+        long retrievalStart = TutorMetrics.start();
         String transformedQuery = queryTransformer.execute(query);
+        TutorMetrics.QUERY_TRANSFORM.recordSince(retrievalStart);
+        List<String> subQueries = splitQueries(query, transformedQuery);
+
+        if (LOG_QUERIES) {
+            System.out.println("[DEBUG] Consulta Original: '" + query + "'");
+            System.out.println("[DEBUG] Consultas Transformadas: " + subQueries);
+        }
+
+        // Passo 2: Um único lote de embeddings para todas as consultas.
+        List<TextSegment> querySegments = new ArrayList<>(subQueries.size());
+        for (String subQuery : subQueries) {
+            querySegments.add(TextSegment.from(subQuery));
+        }
+        long embedStart = TutorMetrics.start();
+        List<Embedding> queryEmbeddings = embeddingModel.embedAll(querySegments).content();
+        TutorMetrics.QUERY_EMBEDDING.recordSince(embedStart);
+        TutorMetrics.QUERY_EMBEDDING_BATCH.record(querySegments.size());
+
+        // Passo 3: Buscas concorrentes, uma (ou duas, na busca híbrida) por consulta.
+        List<List<EmbeddingMatch<TextSegment>>> rankings = searchAll(subQueries, queryEmbeddings);
+
+        // Passo 4: Fusão dos rankings e seleção.
+        List<EmbeddingMatch<TextSegment>> fusedMatches = fuse(rankings);
+        List<TextSegment> fused = selector != null
+                ? selector.select(fusedMatches, embeddingModel)
+                : fusedMatches.stream().map(EmbeddingMatch::embedded).toList();
+        TutorMetrics.FUSED_HITS.record(fused.size());
+        TutorMetrics.RETRIEVAL.recordSince(retrievalStart);
+        return fused;
+    }
+
+    /**
+     * Separa a saída do QueryTransformer em consultas individuais.
+     * A pergunta original entra primeiro, para que uma transformação ruim nunca piore a busca.
+     */
+    private static List<String> splitQueries(String originalQuery, String transformedQuery) {
+        Set<String> queries = new LinkedHashSet<>();
+        queries.add(originalQuery.trim());
+        for (String part : transformedQuery.split("[,\\n;]")) {
+            // Remove numeração ("1.", "2)"), marcadores e aspas que modelos pequenos costumam incluir.
+            String cleaned = part.replaceAll("^\\s*(\\d+[.)]|[-*•])\\s*", "").trim();
+            cleaned = EDGE_DOUBLE_QUOTES.matcher(cleaned).replaceAll("").trim();
+            cleaned = WRAPPING_SINGLE_QUOTES.matcher(cleaned).replaceFirst("$1").trim();
+            if (!cleaned.isEmpty()) {
+                queries.add(cleaned);
+            }
+            if (queries.size() >= MAX_QUERIES) {
+                break;
+            }
+        }
+        return new ArrayList<>(queries);
+    }
+
+    private List<List<EmbeddingMatch<TextSegment>>> searchAll(List<String> subQueries, List<Embedding> queryEmbeddings) {
+        List<EmbeddingSearchRequest> requests = new ArrayList<>(queryEmbeddings.size());
+        for (Embedding queryEmbedding : queryEmbeddings) {
+            requests.add(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(queryEmbedding)
+                    .maxResults(maxResults)
+                    .minScore(minScore)
+                    .build());
+        }
+        // Busca densa em lote: uma chamada para todas as sub-consultas, enviada antes das buscas lexicais.
+        long denseStart = TutorMetrics.start();
+        CompletableFuture<List<List<EmbeddingMatch<TextSegment>>>> denseBatch =
+                embeddingStore instanceof AsyncEmbeddingSearch asyncSearch ? asyncSearch.searchBatchAsync(requests) : null;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<EmbeddingMatch<TextSegment>>>> futures = new ArrayList<>(2 * requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                if (denseBatch == null) {
+                    EmbeddingSearchRequest request = requests.get(i);
+                    futures.add(executor.submit(() -> denseSearch(request)));
+                }
+                if (lexicalIndex != null) {
+                    String subQuery = subQueries.get(i);
+                    futures.add(executor.submit(() -> lexicalSearch(subQuery)));
+                }
+            }
+
+            List<List<EmbeddingMatch<TextSegment>>> rankings = new ArrayList<>(futures.size() + requests.size());
+            for (Future<List<EmbeddingMatch<TextSegment>>> future : futures) {
+                rankings.add(future.get());
+            }
+            if (denseBatch != null) {
+                rankings.addAll(awaitDenseBatch(denseBatch, denseStart));
+            }
+            return rankings;
+        } catch (InterruptedException | ExecutionException e) {
+            if (denseBatch != null) denseBatch.cancel(true);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw new RuntimeException("Falha ao executar as buscas em paralelo", e);
+        }
+    }
+
+    /**
+     * Espera a busca densa em lote. Se ela falhar (prazo estourado, Qdrant fora do ar), a fusão
+     * continua só com os rankings lexicais.
+     */
+    private static List<List<EmbeddingMatch<TextSegment>>> awaitDenseBatch(
+            CompletableFuture<List<List<EmbeddingMatch<TextSegment>>>> denseBatch, long start) throws InterruptedException {
+        try {
+            List<List<EmbeddingMatch<TextSegment>>> rankings = denseBatch.get();
+            TutorMetrics.DENSE_SEARCH.recordSince(start);
+            for (List<EmbeddingMatch<TextSegment>> matches : rankings) {
+                recordDenseHits(matches);
+            }
+            return rankings;
+        } catch (InterruptedException e) {
+            denseBatch.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            System.err.println("[RETRIEVER] Busca densa falhou, seguindo sem ela: " + e.getCause());
+            return List.of();
+        }
+    }
+
+    private List<EmbeddingMatch<TextSegment>> denseSearch(EmbeddingSearchRequest request) {
+        long start = TutorMetrics.start();
+        List<EmbeddingMatch<TextSegment>> matches = embeddingStore.search(request).matches();
+        TutorMetrics.DENSE_SEARCH.recordSince(start);
+        recordDenseHits(matches);
+        return matches;
+    }
+
+    private static void recordDenseHits(List<EmbeddingMatch<TextSegment>> matches) {
+        TutorMetrics.DENSE_HITS.record(matches.size());
+        if (TutorMetrics.ENABLED) {
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                TutorMetrics.DENSE_SCORE.record(match.score());
+            }
+        }
+    }
+
+    private List<EmbeddingMatch<TextSegment>> lexicalSearch(String subQuery) {
+        long start = TutorMetrics.start();
+        List<EmbeddingMatch<TextSegment>> matches = lexicalIndex.search(subQuery, maxResults);
+        TutorMetrics.LEXICAL_SEARCH.recordSince(start);
+        TutorMetrics.LEXICAL_HITS.record(matches.size());
+        return matches;
+    }
+
+    /**
+     * Reciprocal Rank Fusion: cada segmento recebe a soma de 1 / (k + posição) em cada ranking
+     * em que aparece. Segmentos repetidos (mesmo id no EmbeddingStore ou no Bm25Index, que compartilham
+     * os IDs) são contados uma única vez em cada ranking, mas somam pontos quando aparecem em vários.
+     *
+     * Cada resultado leva a pontuação do RRF como score e, quando alguma busca densa o devolveu, o vetor
+     * do segmento (usado pelo MMR do seletor).
+     */
+    private List<EmbeddingMatch<TextSegment>> fuse(List<List<EmbeddingMatch<TextSegment>>> rankings) {
+        Map<String, Double> fusedScores = new HashMap<>();
+        Map<String, EmbeddingMatch<TextSegment>> matchesById = new HashMap<>();
 
-        // Logs de depuração são úteis para entender o que o sistema está fazendo internamente.
-        // Eles nos permitem ver como a consulta está sendo modificada em tempo de execução.
-        System.out.println("[DEBUG] Consulta Original: '" + query + "'");
-        System.out.println("[DEBUG] Consulta Transformada: '" + transformedQuery + "'");
+        for (List<EmbeddingMatch<TextSegment>> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                EmbeddingMatch<TextSegment> match = ranking.get(rank);
+                String id = match.embeddingId() != null ? match.embeddingId() : match.embedded().text();
+                fusedScores.merge(id, 1.0 / (RRF_K + rank + 1), Double::sum);
+                // Prefere a ocorrência que traz o vetor (busca densa) à que não traz (BM25).
+                matchesById.merge(id, match, (current, other) -> current.embedding() != null ? current : other);
+            }
+        }
 
-        // Passo 2: Executa a busca real usando o retriever base, mas com a nova consulta otimizada.
-        // A cadeia de RAG que chamou este método receberá apenas o resultado final,
-        // sem saber que a consulta foi transformada.
-        return retriever.findRelevant(transformedQuery);
+        return fusedScores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(maxResults)
+                .map(entry -> {
+                    EmbeddingMatch<TextSegment> match = matchesById.get(entry.getKey());
+                    return new EmbeddingMatch<>(entry.getValue(), entry.getKey(), match.embedding(), match.embedded());
+                })
+                .toList();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package com.tutor.rag;
+
+import com.tutor.config.AppConfig;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+/**
+ * Escolhe o banco vetorial pela propriedade 'tutor.vector-store':
+ * "qdrant" (padrão, serviço externo) ou "hnsw" (índice embutido, sem dependências externas).
+ */
+public final class VectorStoreFactory {
+
+    private VectorStoreFactory() {}
+
+    /**
+     * @param lexicalIndex O índice BM25 a manter sincronizado com o banco vetorial (pode ser null).
+     */
+    public static EmbeddingStore<TextSegment> getEmbeddingStore(Bm25Index lexicalIndex) {
+        String backend = AppConfig.get("tutor.vector-store", "qdrant").trim().toLowerCase();
+        return switch (backend) {
+            case "qdrant" -> QdrantVectorStoreManager.getEmbeddingStore(lexicalIndex);
+            case "hnsw" -> HnswVectorStoreManager.getEmbeddingStore(lexicalIndex);
+            default -> throw new IllegalArgumentException("Banco vetorial desconhecido em 'tutor.vector-store': " + backend);
+        };
+    }
+
+    /**
+     * Libera as conexões do banco vetorial (o índice HNSW embutido não tem nenhuma).
+     */
+    public static void shutdown() {
+        QdrantVectorStoreManager.shutdown();
+    }
+}
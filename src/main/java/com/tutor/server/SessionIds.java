@@ -0,0 +1,119 @@
+package com.tutor.server;
+
+import com.tutor.config.AppConfig;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Emite e confere os IDs de sessão do servidor. O aluno não escolhe o próprio ID: o servidor sorteia
+ * 16 bytes (SecureRandom) e acrescenta uma assinatura HMAC-SHA256 deles com a chave do servidor.
+ * Um ID só é aceito se a assinatura confere, então não dá para adivinhar nem inventar o ID de outro aluno.
+ *
+ * A chave fica em 'tutor.server.session-key-file' (criada na primeira execução), para que os IDs
+ * continuem válidos depois de um reinício, assim como o histórico das sessões no disco.
+ */
+final class SessionIds {
+
+    private static final int RANDOM_BYTES = 16;
+    private static final int SIGNATURE_BYTES = 16;
+    private static final int KEY_BYTES = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    // Tamanho do ID em Base64 URL sem padding (só [A-Za-z0-9_-], como o log de memória exige).
+    private static final int ID_LENGTH = ENCODER.encodeToString(new byte[RANDOM_BYTES + SIGNATURE_BYTES]).length();
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec key;
+
+    SessionIds(byte[] key) {
+        this.key = new SecretKeySpec(key, ALGORITHM);
+    }
+
+    /**
+     * Lê a chave de 'tutor.server.session-key-file', gerando-a se o arquivo ainda não existir.
+     */
+    static SessionIds create() {
+        Path keyFile = Paths.get(AppConfig.get("tutor.server.session-key-file", "sessions/session.key"));
+        try {
+            if (Files.exists(keyFile)) {
+                byte[] key = Files.readAllBytes(keyFile);
+                if (key.length == KEY_BYTES) {
+                    return new SessionIds(key);
+                }
+                System.err.println("[SERVER] WARN: Chave de sessão inválida em " + keyFile + ". Gerando uma nova; as sessões antigas deixam de valer.");
+            }
+            byte[] key = new byte[KEY_BYTES];
+            new SecureRandom().nextBytes(key);
+            Path parent = keyFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = keyFile.resolveSibling(keyFile.getFileName() + ".tmp");
+            Files.write(tmp, key);
+            Files.move(tmp, keyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("[SERVER] Chave de sessão criada em " + keyFile);
+            return new SessionIds(key);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao preparar a chave de sessão: " + keyFile, e);
+        }
+    }
+
+    /**
+     * @return Um ID novo, assinado pelo servidor.
+     */
+    String issue() {
+        byte[] id = new byte[RANDOM_BYTES + SIGNATURE_BYTES];
+        byte[] nonce = new byte[RANDOM_BYTES];
+        random.nextBytes(nonce);
+        System.arraycopy(nonce, 0, id, 0, RANDOM_BYTES);
+        System.arraycopy(sign(nonce), 0, id, RANDOM_BYTES, SIGNATURE_BYTES);
+        return ENCODER.encodeToString(id);
+    }
+
+    /**
+     * @return true se o ID foi emitido por este servidor (com esta chave).
+     */
+    boolean isValid(String sessionId) {
+        if (sessionId == null || sessionId.length() != ID_LENGTH) {
+            return false;
+        }
+        byte[] id;
+        try {
+            id = DECODER.decode(sessionId.getBytes(StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // Só a forma canônica: outra grafia dos mesmos bytes seria outra chave no log de memória.
+        if (id.length != RANDOM_BYTES + SIGNATURE_BYTES || !ENCODER.encodeToString(id).equals(sessionId)) {
+            return false;
+        }
+        byte[] nonce = Arrays.copyOfRange(id, 0, RANDOM_BYTES);
+        byte[] signature = Arrays.copyOfRange(id, RANDOM_BYTES, id.length);
+        return MessageDigest.isEqual(signature, sign(nonce));
+    }
+
+    private byte[] sign(byte[] nonce) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return Arrays.copyOf(mac.doFinal(nonce), SIGNATURE_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC indisponível", e);
+        }
+    }
+}
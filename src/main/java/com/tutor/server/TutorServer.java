@@ -0,0 +1,202 @@
+package com.tutor.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tutor.config.AppConfig;
+import com.tutor.memory.ChatMemoryManager;
+import com.tutor.service.TutorService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Servidor HTTP do tutor para uso em sala de aula: várias sessões simultâneas,
+ * uma virtual thread por requisição e a resposta transmitida token a token (Server-Sent Events).
+ *
+ * Endpoints:
+ * - POST   /chat?session=ID  corpo: a mensagem (texto UTF-8). Responde em text/event-stream.
+ *                            Sem 'session', uma nova sessão é criada e o ID vem no evento "session".
+ * - DELETE /chat?session=ID  encerra a sessão.
+ * - GET    /health           estado do servidor.
+ *
+ * Os IDs de sessão são emitidos pelo servidor (ver SessionIds); um ID que o servidor não emitiu é
+ * recusado com 403, em vez de abrir (ou retomar) a conversa com o ID escolhido pelo cliente.
+ */
+public class TutorServer {
+
+    // Mensagens maiores que isso não são perguntas de aluno.
+    private static final int MAX_MESSAGE_BYTES = 8 * 1024;
+
+    private final TutorService tutorService;
+    private final ChatMemoryManager memoryManager;
+    private final SessionIds sessionIds;
+    private final int port;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public TutorServer(TutorService tutorService, ChatMemoryManager memoryManager, int port) {
+        this(tutorService, memoryManager, SessionIds.create(), port);
+    }
+
+    TutorServer(TutorService tutorService, ChatMemoryManager memoryManager, SessionIds sessionIds, int port) {
+        this.tutorService = tutorService;
+        this.memoryManager = memoryManager;
+        this.sessionIds = sessionIds;
+        this.port = port;
+    }
+
+    /**
+     * Cria o servidor na porta definida em 'tutor.server.port', com a chave de 'tutor.server.session-key-file'.
+     */
+    public static TutorServer create(TutorService tutorService, ChatMemoryManager memoryManager) {
+        return new TutorServer(tutorService, memoryManager, AppConfig.getInt("tutor.server.port", 8080));
+    }
+
+    public void start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao abrir o servidor HTTP na porta " + port, e);
+        }
+        // Cada requisição ganha a sua virtual thread: esperar o Ollama não ocupa uma thread de plataforma.
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/chat", this::handleChat);
+        server.createContext("/health", this::handleHealth);
+        server.start();
+        System.out.println("[SERVER] Tutor disponível em http://localhost:" + port + "/chat");
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.close();
+        }
+    }
+
+    private void handleChat(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String sessionId = queryParameter(exchange, "session");
+            if (sessionId != null && !sessionIds.isValid(sessionId)) {
+                sendText(exchange, 403, "ID de sessão desconhecido. Envie a mensagem sem 'session' para abrir uma nova sessão.");
+                return;
+            }
+            switch (exchange.getRequestMethod()) {
+                case "POST" -> handleMessage(exchange, sessionId);
+                case "DELETE" -> {
+                    if (sessionId != null) {
+                        memoryManager.remove(sessionId);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> sendText(exchange, 405, "Método não suportado.");
+            }
+        }
+    }
+
+    private void handleMessage(HttpExchange exchange, String sessionId) throws IOException {
+        String message = readMessage(exchange);
+        if (message == null) {
+            sendText(exchange, 413, "Mensagem muito longa.");
+            return;
+        }
+        if (message.isBlank()) {
+            sendText(exchange, 400, "Mensagem vazia.");
+            return;
+        }
+        // Um turno por vez em cada sessão; sessões diferentes rodam em paralelo.
+        ChatMemoryManager.Session session = memoryManager.acquire(sessionId != null ? sessionId : sessionIds.issue());
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("X-Session-Id", session.id());
+            exchange.sendResponseHeaders(200, 0); // 0 = resposta em chunks, enviada enquanto é gerada
+            OutputStream out = exchange.getResponseBody();
+            sendEvent(out, "session", session.id());
+
+            try {
+                tutorService.answer(session.memory(), message, token -> {
+                    try {
+                        sendEvent(out, null, token);
+                    } catch (IOException e) {
+                        // O aluno fechou a conexão; interrompe a geração.
+                        throw new RuntimeException("Conexão encerrada pelo cliente", e);
+                    }
+                });
+                sendEvent(out, "done", "");
+            } catch (RuntimeException e) {
+                System.err.println("[SERVER] ERRO na sessão " + session.id() + ": " + e.getMessage());
+                try {
+                    sendEvent(out, "error", "Falha ao gerar a resposta.");
+                } catch (IOException ignored) {
+                    // A conexão já está fechada.
+                }
+            }
+        } finally {
+            session.lock().unlock();
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sendText(exchange, 200, "ok\nsessões ativas: " + memoryManager.activeSessions() + "\n" + tutorService.stats());
+        }
+    }
+
+    /**
+     * Lê o corpo da requisição. Devolve null se passar do limite.
+     */
+    private static String readMessage(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_MESSAGE_BYTES + 1);
+            if (body.length > MAX_MESSAGE_BYTES) {
+                return null;
+            }
+            return new String(body, StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    /**
+     * Escreve um evento SSE. Cada linha do texto vira uma linha "data:", como manda o formato.
+     */
+    private static void sendEvent(OutputStream out, String event, String data) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (event != null) {
+            sb.append("event: ").append(event).append('\n');
+        }
+        for (String line : data.split("\n", -1)) {
+            sb.append("data: ").append(line).append('\n');
+        }
+        sb.append('\n');
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                return value.isBlank() ? null : value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,925 @@
+package com.tutor.service;
+
+import com.tutor.config.AppConfig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pré-corretor local de frases em inglês.
+ *
+ * Um pedido de correção ("está certo: she don't like coffee?") passa primeiro por uma verificação
+ * barata, sem o Ollama:
+ * - os erros mais comuns de quem fala português (he don't, I have 25 years, explain me, depend of...)
+ *   são compilados em um autômato sobre as palavras, percorrido a partir de cada posição da frase;
+ * - cada erro encontrado é corrigido, e a frase é verificada de novo até não mudar mais;
+ * - a frase corrigida só é aceita se ficar limpa: todas as palavras no vocabulário
+ *   ('tutor.correction.vocabulary', guardado em uma trie) e nenhum padrão de erro, nem mesmo um que
+ *   as regras deixaram de corrigir por causa do contexto (Keep it like this, more cheap flights).
+ *   Uma palavra desconhecida pode ser um erro de digitação ou uma palavra correta fora da lista, e
+ *   quem decide é o LLM.
+ *
+ * Se as regras corrigiram a frase e a frase corrigida ficou limpa, a resposta sai em microssegundos.
+ * Nos demais casos, inclusive quando nenhum erro é encontrado (as regras não provam que uma frase está
+ * certa), o turno segue para o LLM. Só mensagens que são apenas o pedido de correção passam por aqui:
+ * se a mensagem pede mais alguma coisa, a resposta das regras ficaria incompleta. As respostas das
+ * regras dependem só da frase e ficam em um cache LRU; as do LLM não, porque dependem da conversa.
+ */
+public class CorrectionService {
+
+    /**
+     * Um pedido de correção: a frase em inglês extraída da mensagem e a chave do cache.
+     */
+    public record Request(String sentence, String key) {}
+
+    // Uma correção aplicada: o trecho original, o trecho corrigido e o porquê.
+    private record Fix(String from, String to, String explanation) {}
+
+    private static final Pattern REQUEST = Pattern.compile(
+            "(?iU)\\b(corrig\\w*|corrij\\w*|corre[çc][ãa]o|(est[áa]|t[áa]|ficou|seria|é) (cert[oa]|corret[oa]|errad[oa])"
+                    + "|tem (algum )?erro|(is|was) (this|it|that) (correct|right|ok)|correct (this|my|me)|check (this|my)"
+                    + "|any mistakes?)\\b");
+    private static final Pattern QUOTED = Pattern.compile("[\"“]([^\"”]+)[\"”]|(?<!\\p{L})['‘](.+?)['’](?!\\p{L})");
+    private static final Pattern SEGMENT_BREAK = Pattern.compile("[:?!;\\n]|\\.(?=\\s|$)");
+    private static final Pattern EDGES = Pattern.compile("^[\\s\\p{Punct}“”‘’–—]+|[\\s\\p{Punct}“”‘’–—]+$");
+    private static final Pattern TOKEN = Pattern.compile("\\p{L}+(?:['’]\\p{L}+)*|\\d+(?:[.,:]\\d+)*");
+
+    // Palavras que podem acompanhar o pedido sem pedir mais nada ("professor, essa frase está certa?").
+    private static final Set<String> REQUEST_FILLER = Set.of("a", "o", "é", "e", "que", "se", "me", "essa", "esta",
+            "minha", "frase", "oração", "aqui", "isso", "isto", "por", "favor", "pf", "pfv", "oi", "olá", "ola",
+            "professor", "professora", "pode", "poderia", "você", "voce", "vc", "please", "this", "my", "sentence",
+            "can", "could", "you", "hi", "hello", "teacher");
+
+    // Fração mínima de palavras conhecidas para tratar um trecho da mensagem como a frase em inglês.
+    private static final double MIN_ENGLISH_RATIO = 0.6;
+    // Palavras mais curtas que isso não contam como inglês só por estarem a uma edição do vocabulário.
+    private static final int MIN_SPELLING_LENGTH = 4;
+    private static final int MAX_PASSES = 3;
+
+    private final WordTrie vocabulary;
+    private final ErrorAutomaton automaton;
+    private final int maxWords;
+    private final int cacheSize;
+
+    // LinkedHashMap em ordem de acesso: a entrada mais antiga é a menos usada recentemente.
+    private final LinkedHashMap<String, String> memo;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong memoHits = new AtomicLong();
+    private final AtomicLong ruleHits = new AtomicLong();
+    private final AtomicLong llmFallbacks = new AtomicLong();
+
+    /**
+     * @param vocabulary As palavras conhecidas, em minúsculas.
+     * @param maxWords   Frases mais longas vão direto para o LLM.
+     * @param cacheSize  Quantas correções guardar.
+     */
+    public CorrectionService(Set<String> vocabulary, int maxWords, int cacheSize) {
+        List<Rule> rules = rules();
+        // As palavras que as regras escrevem são conhecidas: uma frase corrigida pelas regras pode ficar limpa.
+        Set<String> words = new HashSet<>(vocabulary);
+        for (Rule rule : rules) {
+            for (String word : rule.replacement()) {
+                if (!word.startsWith("$")) {
+                    words.add(word);
+                }
+            }
+        }
+        this.vocabulary = new WordTrie(words);
+        this.automaton = new ErrorAutomaton(rules);
+        this.maxWords = maxWords;
+        this.cacheSize = cacheSize;
+        this.memo = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > CorrectionService.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Método fábrica que lê o vocabulário e os limites da configuração ('tutor.correction.*').
+     */
+    public static CorrectionService create() {
+        String location = AppConfig.get("tutor.correction.vocabulary", "correction/vocabulary.txt");
+        int maxWords = AppConfig.getInt("tutor.correction.max-words", 25);
+        int cacheSize = AppConfig.getInt("tutor.correction.cache-size", 1000);
+        Set<String> vocabulary = loadVocabulary(location);
+
+        System.out.println("[CONFIG] Criando pré-corretor com " + vocabulary.size() + " palavras (" + location
+                + "), maxWords=" + maxWords + ", cacheSize=" + cacheSize);
+        return new CorrectionService(vocabulary, maxWords, cacheSize);
+    }
+
+    /**
+     * Reconhece um pedido de correção e extrai a frase em inglês: o trecho entre aspas ou, sem aspas,
+     * o trecho da mensagem com mais palavras conhecidas.
+     *
+     * @param message A mensagem do aluno.
+     * @return O pedido, ou null se a mensagem não pedir a correção de uma frase em inglês ou pedir
+     *         mais alguma coisa além dela.
+     */
+    public Request parse(String message) {
+        if (!REQUEST.matcher(message).find()) {
+            return null;
+        }
+        List<String> candidates = new ArrayList<>();
+        Matcher quoted = QUOTED.matcher(message);
+        while (quoted.find()) {
+            candidates.add(quoted.group(1) != null ? quoted.group(1) : quoted.group(2));
+        }
+        if (candidates.isEmpty()) {
+            for (String segment : SEGMENT_BREAK.split(message)) {
+                candidates.add(REQUEST.matcher(segment).replaceAll(" "));
+            }
+        }
+
+        String best = null;
+        double bestRatio = MIN_ENGLISH_RATIO;
+        int bestWords = 0;
+        for (String candidate : candidates) {
+            String sentence = EDGES.matcher(candidate).replaceAll("");
+            Sentence tokens = Sentence.tokenize(sentence);
+            if (tokens.size() < 2 || tokens.size() > maxWords) {
+                continue;
+            }
+            int known = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (looksEnglish(tokens, i)) {
+                    known++;
+                }
+            }
+            double ratio = (double) known / tokens.size();
+            if (ratio > bestRatio || (ratio == bestRatio && tokens.size() > bestWords)) {
+                best = sentence;
+                bestRatio = ratio;
+                bestWords = tokens.size();
+            }
+        }
+        if (best == null || !onlyRequests(message, best)) {
+            return null;
+        }
+        return new Request(best, normalize(best));
+    }
+
+    /**
+     * Se a mensagem, sem a frase e sem o pedido de correção, não tem mais nada além de pontuação e
+     * palavras de cortesia.
+     */
+    private static boolean onlyRequests(String message, String sentence) {
+        int at = message.indexOf(sentence);
+        if (at < 0) {
+            return false;
+        }
+        String rest = message.substring(0, at) + " " + message.substring(at + sentence.length());
+        Matcher words = TOKEN.matcher(REQUEST.matcher(rest).replaceAll(" "));
+        while (words.find()) {
+            if (!REQUEST_FILLER.contains(words.group().toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Corrige a frase sem o LLM, se possível.
+     *
+     * @param request O pedido (ver {@link #parse(String)}).
+     * @return A resposta do tutor, ou vazio se a frase precisar do LLM.
+     */
+    public Optional<String> correct(Request request) {
+        requests.incrementAndGet();
+        String cached = memoized(request.key());
+        if (cached != null) {
+            memoHits.incrementAndGet();
+            System.out.println("[CORRECTION] Correção encontrada no cache.");
+            return Optional.of(cached);
+        }
+
+        long start = System.nanoTime();
+        Sentence sentence = Sentence.tokenize(request.sentence());
+        List<Fix> fixes = new ArrayList<>();
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            int before = fixes.size();
+            applyRules(sentence, fixes);
+            if (fixes.size() == before) {
+                break;
+            }
+        }
+        if (fixes.isEmpty() || !isClean(sentence)) {
+            llmFallbacks.incrementAndGet();
+            System.out.println("[CORRECTION] As regras não resolvem a frase; consultando o LLM.");
+            return Optional.empty();
+        }
+
+        String reply = reply(sentence, fixes);
+        memoize(request.key(), reply);
+        ruleHits.incrementAndGet();
+        System.out.printf("[CORRECTION] Frase corrigida pelas regras em %.0f µs (%d correções).%n",
+                (System.nanoTime() - start) / 1e3, fixes.size());
+        return Optional.of(reply);
+    }
+
+    /**
+     * @return Um resumo legível do uso das regras e do cache, para logs.
+     */
+    public String stats() {
+        long total = requests.get();
+        long local = memoHits.get() + ruleHits.get();
+        double rate = total == 0 ? 0.0 : 100.0 * local / total;
+        return String.format("[CORRECTION] Pedidos: %d | Regras: %d | Cache: %d | LLM: %d (%.1f%% sem o LLM)",
+                total, ruleHits.get(), memoHits.get(), llmFallbacks.get(), rate);
+    }
+
+    // ====================================================================================
+    // VERIFICAÇÃO
+    // ====================================================================================
+
+    private void applyRules(Sentence sentence, List<Fix> fixes) {
+        int i = 0;
+        while (i < sentence.size()) {
+            ErrorAutomaton.Match match = automaton.longestAt(sentence, i);
+            if (match == null) {
+                i++;
+                continue;
+            }
+            Rule rule = match.rule();
+            List<String> replacement = new ArrayList<>(rule.replacement().size());
+            for (String template : rule.replacement()) {
+                replacement.add(template.startsWith("$")
+                        ? sentence.word(i + Integer.parseInt(template.substring(1)) - 1)
+                        : template);
+            }
+            if (sentence.isCapitalized(i) && !rule.replacement().get(0).startsWith("$")) {
+                replacement.set(0, capitalize(replacement.get(0)));
+            }
+            for (int j = 0; j < replacement.size(); j++) {
+                replacement.set(j, pronounCase(replacement.get(j)));
+            }
+            String from = sentence.span(i, match.end());
+            sentence.replace(i, match.end(), replacement);
+            fixes.add(new Fix(from, String.join(" ", replacement), rule.explanation()));
+            i += replacement.size();
+        }
+    }
+
+    /**
+     * Uma frase limpa só tem palavras conhecidas e nenhum padrão de erro, nem os que as regras não
+     * corrigiram por causa do contexto.
+     */
+    private boolean isClean(Sentence sentence) {
+        for (int i = 0; i < sentence.size(); i++) {
+            if (!isKnown(sentence, i) || automaton.suspectAt(sentence, i) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Números e nomes próprios (maiúscula fora do início da frase) contam como conhecidos.
+     */
+    private boolean isKnown(Sentence sentence, int i) {
+        String word = sentence.word(i);
+        return vocabulary.contains(sentence.lower(i))
+                || Character.isDigit(word.charAt(0))
+                || (i > 0 && Character.isUpperCase(word.charAt(0)));
+    }
+
+    /**
+     * Para achar a frase na mensagem, um padrão de erro ou uma palavra a uma edição do vocabulário
+     * também contam como inglês.
+     */
+    private boolean looksEnglish(Sentence sentence, int i) {
+        String lower = sentence.lower(i);
+        return isKnown(sentence, i)
+                || automaton.suspectAt(sentence, i) != null
+                || (lower.length() >= MIN_SPELLING_LENGTH && !vocabulary.withinOneEdit(lower).isEmpty());
+    }
+
+    private static String reply(Sentence sentence, List<Fix> fixes) {
+        StringBuilder reply = new StringBuilder("Quase lá! A forma correta é:\n**\"")
+                .append(sentence.text()).append("\"**\n");
+        for (Fix fix : fixes) {
+            reply.append("\n- \"").append(fix.from()).append("\" → \"").append(fix.to()).append("\": ")
+                    .append(fix.explanation());
+        }
+        return reply.toString();
+    }
+
+    private synchronized String memoized(String key) {
+        return memo.get(key);
+    }
+
+    private synchronized void memoize(String key, String reply) {
+        memo.put(key, reply);
+    }
+
+    // Sem mudar maiúsculas: a resposta repete a frase como o aluno escreveu.
+    private static String normalize(String sentence) {
+        return sentence.replace('’', '\'').replaceAll("\\s+", " ").trim();
+    }
+
+    private static String capitalize(String word) {
+        return word.isEmpty() ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    // "i", "i'm", "i've"... são sempre maiúsculos.
+    private static String pronounCase(String word) {
+        return word.equals("i") || word.startsWith("i'") ? "I" + word.substring(1) : word;
+    }
+
+    private static Set<String> loadVocabulary(String location) {
+        Path file = Paths.get(location);
+        try (InputStream input = Files.exists(file)
+                ? Files.newInputStream(file)
+                : CorrectionService.class.getClassLoader().getResourceAsStream(location)) {
+            if (input == null) {
+                throw new IllegalArgumentException("Vocabulário do pré-corretor não encontrado: " + location);
+            }
+            Set<String> words = new LinkedHashSet<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    words.add(line.toLowerCase(Locale.ROOT));
+                }
+            }
+            return words;
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao ler o vocabulário do pré-corretor: " + location, e);
+        }
+    }
+
+    // ====================================================================================
+    // FRASE
+    // ====================================================================================
+
+    /**
+     * A frase separada em palavras, com o texto entre elas preservado: gaps.get(i) vem antes da palavra i,
+     * e o último gap vem depois da última palavra.
+     */
+    private static final class Sentence {
+        private final List<String> words = new ArrayList<>();
+        private final List<String> gaps = new ArrayList<>();
+
+        static Sentence tokenize(String text) {
+            Sentence sentence = new Sentence();
+            Matcher matcher = TOKEN.matcher(text);
+            int last = 0;
+            while (matcher.find()) {
+                sentence.gaps.add(text.substring(last, matcher.start()));
+                sentence.words.add(matcher.group());
+                last = matcher.end();
+            }
+            sentence.gaps.add(text.substring(last));
+            return sentence;
+        }
+
+        int size() {
+            return words.size();
+        }
+
+        String word(int i) {
+            return words.get(i);
+        }
+
+        /**
+         * A palavra em minúsculas, para comparar com as regras. Uma letra maiúscula isolada no meio da
+         * frase (plan A, vitamin C) é mantida, para não ser confundida com o artigo "a".
+         */
+        String lower(int i) {
+            String word = words.get(i);
+            if (i > 0 && word.length() == 1 && Character.isUpperCase(word.charAt(0)) && !word.equals("I")) {
+                return word;
+            }
+            return word.toLowerCase(Locale.ROOT).replace('’', '\'');
+        }
+
+        boolean isCapitalized(int i) {
+            return Character.isUpperCase(words.get(i).charAt(0));
+        }
+
+        /**
+         * @return Se a palavra 'end' não existe ou vem depois de uma pontuação (fim de oração).
+         */
+        boolean clauseEndsAt(int end) {
+            return end == words.size() || gaps.get(end).chars().anyMatch(c -> ",.;:!?".indexOf(c) >= 0);
+        }
+
+        /**
+         * @return Se a palavra 'start' abre uma oração: início da frase, depois de uma pontuação ou de
+         *         uma conjunção (because she like) ou advérbio (sometimes she like).
+         */
+        boolean clauseStartsAt(int start) {
+            return start == 0 || gaps.get(start).chars().anyMatch(c -> ",.;:!?".indexOf(c) >= 0)
+                    || CLAUSE_OPENERS.contains(lower(start - 1));
+        }
+
+        String span(int start, int end) {
+            StringBuilder span = new StringBuilder(words.get(start));
+            for (int i = start + 1; i < end; i++) {
+                span.append(gaps.get(i)).append(words.get(i));
+            }
+            return span.toString();
+        }
+
+        void replace(int start, int end, List<String> replacement) {
+            for (int i = end - 1; i >= start; i--) {
+                words.remove(i);
+                if (i > start) {
+                    gaps.remove(i);
+                }
+            }
+            for (int j = 0; j < replacement.size(); j++) {
+                words.add(start + j, replacement.get(j));
+                if (j > 0) {
+                    gaps.add(start + j, " ");
+                }
+            }
+        }
+
+        String text() {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < words.size(); i++) {
+                text.append(i == 0 ? "" : gaps.get(i)).append(words.get(i));
+            }
+            return text.toString();
+        }
+    }
+
+    // ====================================================================================
+    // VOCABULÁRIO (TRIE)
+    // ====================================================================================
+
+    private static final class WordTrie {
+
+        private static final class Node {
+            final Map<Character, Node> children = new HashMap<>();
+            boolean word;
+        }
+
+        private final Node root = new Node();
+
+        WordTrie(Set<String> words) {
+            for (String word : words) {
+                Node node = root;
+                for (int i = 0; i < word.length(); i++) {
+                    node = node.children.computeIfAbsent(word.charAt(i), c -> new Node());
+                }
+                node.word = true;
+            }
+        }
+
+        boolean contains(String word) {
+            Node node = root;
+            for (int i = 0; i < word.length() && node != null; i++) {
+                node = node.children.get(word.charAt(i));
+            }
+            return node != null && node.word;
+        }
+
+        /**
+         * As palavras a exatamente uma edição (troca, inserção, remoção ou inversão de duas letras vizinhas),
+         * encontradas em um único percurso da trie.
+         */
+        Set<String> withinOneEdit(String word) {
+            Set<String> found = new LinkedHashSet<>();
+            search(root, word, 0, new StringBuilder(), false, found);
+            return found;
+        }
+
+        private void search(Node node, String word, int i, StringBuilder prefix, boolean edited, Set<String> found) {
+            int length = prefix.length();
+            if (i == word.length()) {
+                if (edited) {
+                    if (node.word) {
+                        found.add(prefix.toString());
+                    }
+                    return;
+                }
+                // Inserção de uma letra no fim.
+                for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                    if (child.getValue().word) {
+                        found.add(prefix.toString() + child.getKey());
+                    }
+                }
+                return;
+            }
+            char c = word.charAt(i);
+            Node same = node.children.get(c);
+            if (same != null) {
+                search(same, word, i + 1, prefix.append(c), edited, found);
+                prefix.setLength(length);
+            }
+            if (edited) {
+                return;
+            }
+            // Remoção da letra i.
+            search(node, word, i + 1, prefix, true, found);
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                char other = child.getKey();
+                if (other != c) {
+                    // Troca da letra i.
+                    search(child.getValue(), word, i + 1, prefix.append(other), true, found);
+                    prefix.setLength(length);
+                }
+                // Inserção de uma letra antes da letra i.
+                search(child.getValue(), word, i, prefix.append(other), true, found);
+                prefix.setLength(length);
+            }
+            // Inversão das letras i e i + 1.
+            if (i + 1 < word.length() && word.charAt(i + 1) != c) {
+                Node first = node.children.get(word.charAt(i + 1));
+                Node second = first == null ? null : first.children.get(c);
+                if (second != null) {
+                    search(second, word, i + 2, prefix.append(word.charAt(i + 1)).append(c), true, found);
+                    prefix.setLength(length);
+                }
+            }
+        }
+    }
+
+    // ====================================================================================
+    // PADRÕES DE ERRO (AUTÔMATO)
+    // ====================================================================================
+
+    private enum TokenClass {
+        NUMBER, VOWEL_SOUND, CONSONANT_SOUND;
+
+        private static final Set<String> NUMBER_WORDS = Set.of("one", "two", "three", "four", "five", "six", "seven",
+                "eight", "nine", "ten", "eleven", "twelve", "thirteen", "fourteen", "fifteen", "sixteen", "seventeen",
+                "eighteen", "nineteen", "twenty", "thirty", "forty", "fifty", "sixty", "seventy", "eighty", "ninety");
+        // Começam com vogal, mas com som de consoante (a university, a one-way ticket).
+        private static final List<String> CONSONANT_SOUND_PREFIXES = List.of("uni", "use", "usu", "uti", "eu", "one", "once", "ewe", "ufo");
+        // Começam com h mudo (an hour).
+        private static final List<String> SILENT_H_PREFIXES = List.of("hour", "honest", "honor", "honour", "heir");
+
+        static TokenClass of(String element) {
+            return switch (element) {
+                case "#num" -> NUMBER;
+                case "#vowel" -> VOWEL_SOUND;
+                case "#consonant" -> CONSONANT_SOUND;
+                default -> throw new IllegalArgumentException("Classe de palavra desconhecida: " + element);
+            };
+        }
+
+        boolean matches(Sentence sentence, int i) {
+            String word = sentence.word(i);
+            String lower = sentence.lower(i);
+            if (this == NUMBER) {
+                return Character.isDigit(word.charAt(0)) || NUMBER_WORDS.contains(lower);
+            }
+            // Siglas (an MBA, a NASA project) dependem da pronúncia das letras: ficam de fora.
+            if (!Character.isLetter(word.charAt(0)) || (word.length() > 1 && word.equals(word.toUpperCase(Locale.ROOT)))) {
+                return false;
+            }
+            boolean vowelSound = SILENT_H_PREFIXES.stream().anyMatch(lower::startsWith)
+                    || ("aeiou".indexOf(lower.charAt(0)) >= 0 && CONSONANT_SOUND_PREFIXES.stream().noneMatch(lower::startsWith));
+            return this == VOWEL_SOUND ? vowelSound : !vowelSound;
+        }
+    }
+
+    /**
+     * Um padrão de erro. Cada elemento do padrão é uma lista de palavras alternativas ("he|she|it") ou uma
+     * classe ("#num"); na substituição, "$n" repete a n-ésima palavra encontrada.
+     *
+     * @param unlessAfter Palavras que, logo antes do padrão, indicam que não é erro (does she have).
+     * @param clauseEnd   Se o padrão precisa terminar a oração (I have 25 years, mas não I have 2 years of experience).
+     * @param clauseStart Se o padrão precisa abrir a oração (it like, mas não Keep it like this).
+     */
+    private record Rule(List<String> pattern, List<String> replacement, String explanation,
+                        Set<String> unlessAfter, boolean clauseEnd, boolean clauseStart) {
+
+        Rule unlessAfter(String words) {
+            return new Rule(pattern, replacement, explanation, Set.of(words.split(" ")), clauseEnd, clauseStart);
+        }
+
+        Rule atClauseEnd() {
+            return new Rule(pattern, replacement, explanation, unlessAfter, true, clauseStart);
+        }
+
+        Rule atClauseStart() {
+            return new Rule(pattern, replacement, explanation, unlessAfter, clauseEnd, true);
+        }
+
+        /**
+         * @param strict Se a posição na oração conta. Fora dela o padrão é só suspeito: não é corrigido,
+         *               mas a frase deixa de ser limpa.
+         */
+        boolean accepts(Sentence sentence, int start, int end, boolean strict) {
+            return (start == 0 || !unlessAfter.contains(sentence.lower(start - 1)))
+                    && (!strict || ((!clauseEnd || sentence.clauseEndsAt(end))
+                    && (!clauseStart || sentence.clauseStartsAt(start))));
+        }
+    }
+
+    private static Rule rule(String pattern, String replacement, String explanation) {
+        return new Rule(List.of(pattern.split(" ")), List.of(replacement.split(" ")), explanation, Set.of(), false, false);
+    }
+
+    /**
+     * Os padrões compilados em uma trie sobre as palavras: cada aresta é uma palavra ou uma classe de
+     * palavras, e um estado final guarda a regra. Em cada posição vale o padrão mais longo.
+     */
+    private static final class ErrorAutomaton {
+
+        record Match(Rule rule, int end) {}
+
+        private static final class State {
+            final Map<String, State> words = new HashMap<>();
+            final Map<TokenClass, State> classes = new EnumMap<>(TokenClass.class);
+            Rule rule;
+        }
+
+        private final State root = new State();
+
+        ErrorAutomaton(List<Rule> rules) {
+            for (Rule rule : rules) {
+                List<State> frontier = List.of(root);
+                for (String element : rule.pattern()) {
+                    List<State> next = new ArrayList<>();
+                    for (State state : frontier) {
+                        if (element.startsWith("#")) {
+                            next.add(state.classes.computeIfAbsent(TokenClass.of(element), c -> new State()));
+                        } else {
+                            for (String word : element.split("\\|")) {
+                                next.add(state.words.computeIfAbsent(word, w -> new State()));
+                            }
+                        }
+                    }
+                    frontier = next;
+                }
+                for (State state : frontier) {
+                    if (state.rule == null) {
+                        state.rule = rule;
+                    }
+                }
+            }
+        }
+
+        /**
+         * O padrão mais longo que começa em 'start' e pode ser corrigido ali.
+         */
+        Match longestAt(Sentence sentence, int start) {
+            return walk(root, sentence, start, start, null, true);
+        }
+
+        /**
+         * O padrão mais longo que começa em 'start', mesmo fora da posição exigida na oração.
+         */
+        Match suspectAt(Sentence sentence, int start) {
+            return walk(root, sentence, start, start, null, false);
+        }
+
+        private Match walk(State state, Sentence sentence, int start, int position, Match best, boolean strict) {
+            if (state.rule != null && state.rule.accepts(sentence, start, position, strict)
+                    && (best == null || position > best.end())) {
+                best = new Match(state.rule, position);
+            }
+            if (position == sentence.size()) {
+                return best;
+            }
+            State next = state.words.get(sentence.lower(position));
+            if (next != null) {
+                best = walk(next, sentence, start, position + 1, best, strict);
+            }
+            for (Map.Entry<TokenClass, State> edge : state.classes.entrySet()) {
+                if (edge.getKey().matches(sentence, position)) {
+                    best = walk(edge.getValue(), sentence, start, position + 1, best, strict);
+                }
+            }
+            return best;
+        }
+    }
+
+    // ====================================================================================
+    // ERROS COMUNS DE FALANTES DE PORTUGUÊS
+    // ====================================================================================
+
+    // Antes destas palavras, o verbo fica na forma base (does she have, can he go) ou o sujeito é composto (you and I are).
+    private static final String BASE_FORM_CONTEXT =
+            "do does did don't doesn't didn't can could will would should might may must to let make makes made "
+                    + "help helps helped see saw hear heard watch and or nor";
+
+    // Depois destas palavras começa uma oração, e he/she/it é o sujeito (because she like, sometimes it work).
+    private static final Set<String> CLAUSE_OPENERS = Set.of("that", "because", "when", "if", "but", "so", "while",
+            "since", "although", "though", "where", "why", "how", "what", "who", "which", "after", "before", "until",
+            "unless", "whether", "then", "also", "today", "yesterday", "now", "sometimes", "usually", "often",
+            "always", "never");
+
+    private static List<Rule> rules() {
+        List<Rule> rules = new ArrayList<>();
+
+        // Contrações sem apóstrofo.
+        Map<String, String> contractions = new LinkedHashMap<>();
+        contractions.put("dont", "don't");
+        contractions.put("doesnt", "doesn't");
+        contractions.put("didnt", "didn't");
+        contractions.put("cant", "can't");
+        contractions.put("isnt", "isn't");
+        contractions.put("arent", "aren't");
+        contractions.put("wasnt", "wasn't");
+        contractions.put("werent", "weren't");
+        contractions.put("havent", "haven't");
+        contractions.put("hasnt", "hasn't");
+        contractions.put("im", "i'm");
+        contractions.put("ive", "i've");
+        contractions.put("youre", "you're");
+        contractions.put("thats", "that's");
+        contractions.put("whats", "what's");
+        contractions.forEach((wrong, right) ->
+                rules.add(rule(wrong, right, "Falta o apóstrofo da contração.")));
+
+        // Concordância na 3ª pessoa do singular.
+        rules.add(rule("he|she|it don't", "$1 doesn't",
+                "Com he/she/it, o auxiliar do presente é \"does\": \"doesn't\".").unlessAfter("and or nor"));
+        rules.add(rule("he|she|it do not", "$1 does not",
+                "Com he/she/it, o auxiliar do presente é \"does\": \"does not\".").unlessAfter("and or nor"));
+        rules.add(rule("i|you|we|they doesn't", "$1 don't",
+                "\"Doesn't\" é só para he/she/it; com I/you/we/they, use \"don't\".").unlessAfter("and or nor"));
+        rules.add(rule("i|you|we|they does not", "$1 do not",
+                "\"Does\" é só para he/she/it; com I/you/we/they, use \"do\".").unlessAfter("and or nor"));
+        rules.add(rule("i|you|we|they has", "$1 have",
+                "\"Has\" é só para he/she/it; com I/you/we/they, use \"have\".").unlessAfter("and or nor"));
+
+        // Só verbos cujo passado é diferente da forma base: "she read" pode ser passado.
+        Map<String, String> thirdPerson = new LinkedHashMap<>();
+        for (String verb : List.of("like", "want", "work", "live", "need", "know", "play", "speak", "eat", "drink",
+                "love", "think", "feel", "write", "run", "cook", "sleep", "teach", "learn")) {
+            thirdPerson.put(verb, verb + "s");
+        }
+        thirdPerson.put("have", "has");
+        thirdPerson.put("go", "goes");
+        thirdPerson.put("do", "does");
+        thirdPerson.put("study", "studies");
+        thirdPerson.put("watch", "watches");
+        thirdPerson.forEach((base, third) -> {
+            // "it" também é objeto (Keep it like this): só no início da oração ele é o sujeito.
+            rules.add(rule("he|she|it " + base, "$1 " + third,
+                    "Na 3ª pessoa do singular (he/she/it), o verbo no presente fica \"" + third + "\".")
+                    .unlessAfter(BASE_FORM_CONTEXT).atClauseStart());
+            rules.add(rule("doesn't|didn't " + third, "$1 " + base,
+                    "Depois de do/does/did, o verbo fica na forma base: \"" + base + "\"."));
+            rules.add(rule("does|did not " + third, "$1 not " + base,
+                    "Depois de do/does/did, o verbo fica na forma base: \"" + base + "\"."));
+            rules.add(rule("does|did he|she|it " + third, "$1 $2 " + base,
+                    "Depois de do/does/did, o verbo fica na forma base: \"" + base + "\"."));
+        });
+
+        // Verbo to be.
+        rules.add(rule("i is|are", "i am", "Com \"I\", o verbo to be é \"am\".").unlessAfter("and or nor"));
+        rules.add(rule("you|we|they is|am", "$1 are", "Com you/we/they, o verbo to be é \"are\".").unlessAfter("and or nor"));
+        rules.add(rule("he|she|it are|am", "$1 is", "Com he/she/it, o verbo to be é \"is\".").unlessAfter("and or nor"));
+        rules.add(rule("people is", "people are", "\"People\" já é plural: \"people are\"."));
+        rules.add(rule("people was", "people were", "\"People\" já é plural: \"people were\"."));
+        rules.add(rule("i am|i'm agree", "i agree", "\"Agree\" é verbo, não adjetivo: \"I agree\", sem o \"am\"."));
+        rules.add(rule("i am|i'm not agree", "i don't agree",
+                "\"Agree\" é verbo: a negativa é \"I don't agree\"."));
+        rules.add(rule("you|we|they are agree", "$1 agree", "\"Agree\" é verbo, não adjetivo: sem o \"are\"."));
+        rules.add(rule("he|she is agree", "$1 agrees", "\"Agree\" é verbo, não adjetivo: \"agrees\", sem o \"is\"."));
+        rules.add(rule("are you agree", "do you agree", "\"Agree\" é verbo: a pergunta é \"do you agree?\"."));
+        rules.add(rule("i|he|she born", "$1 was born", "Em inglês, \"nascer\" é \"to be born\": \"was born\"."));
+        rules.add(rule("you|we|they born", "$1 were born", "Em inglês, \"nascer\" é \"to be born\": \"were born\"."));
+
+        // Idade e sensações: em inglês, a pessoa "é" a idade e "está" com fome.
+        String ageExplanation = "Em inglês, a idade usa o verbo to be: \"I am 25 years old\", e não \"have\".";
+        rules.add(rule("i have #num years", "i am $3 years old", ageExplanation).atClauseEnd());
+        rules.add(rule("i have #num years old", "i am $3 years old", ageExplanation));
+        rules.add(rule("you|we|they have #num years", "$1 are $3 years old", ageExplanation).atClauseEnd());
+        rules.add(rule("you|we|they have #num years old", "$1 are $3 years old", ageExplanation));
+        rules.add(rule("he|she|it has|have #num years", "$1 is $3 years old", ageExplanation).atClauseEnd());
+        rules.add(rule("he|she|it has|have #num years old", "$1 is $3 years old", ageExplanation));
+        rules.add(rule("how many years do you have", "how old are you", "Para perguntar a idade: \"How old are you?\"."));
+        rules.add(rule("how many years does he|she have", "how old is $5", "Para perguntar a idade: \"How old is he/she?\"."));
+        Map<String, String> feelings = Map.of("hunger", "hungry", "thirst", "thirsty", "sleep", "sleepy", "fear", "afraid");
+        feelings.forEach((noun, adjective) -> {
+            String explanation = "Em inglês, a pessoa \"está\" com " + noun + ": \"" + adjective + "\", com o verbo to be.";
+            rules.add(rule("i have " + noun, "i am " + adjective, explanation));
+            rules.add(rule("you|we|they have " + noun, "$1 are " + adjective, explanation));
+            rules.add(rule("he|she has " + noun, "$1 is " + adjective, explanation));
+        });
+
+        // There is / there are ("tem" no sentido de "existe").
+        rules.add(rule("there has|have a|an|one", "there is $3", "Para dizer que algo existe, use \"there is\", não \"there has\"."));
+        rules.add(rule("there has|have many|some|several|lots|#num", "there are $3",
+                "Para dizer que algo existe, use \"there are\", não \"there have\"."));
+
+        // Substantivos incontáveis.
+        for (String noun : List.of("information", "advice", "furniture", "homework", "equipment", "luggage", "knowledge")) {
+            rules.add(rule(noun + "s", noun, "\"" + noun + "\" é incontável em inglês: não tem plural."));
+        }
+
+        // Regência e preposições.
+        rules.add(rule("explain|explains|explained|explaining me", "$1 to me", "Em inglês, explica-se algo \"to\" alguém: \"explain to me\"."));
+        Map<String, String> sayToTell = Map.of("say", "tell", "says", "tells", "said", "told", "saying", "telling");
+        sayToTell.forEach((say, tell) ->
+                rules.add(rule(say + " me", tell + " me", "Com a pessoa logo depois, use \"tell\": \"" + tell + " me\".")));
+        rules.add(rule("depend|depends|depended|depending of", "$1 on", "Em inglês, \"depender de\" é \"depend on\"."));
+        rules.add(rule("married with", "married to", "Em inglês, \"casado com\" é \"married to\"."));
+        rules.add(rule("marry with", "marry", "\"Marry\" não leva preposição: \"marry someone\"."));
+        rules.add(rule("go|goes|went|going|come|comes|came|coming|get|gets|got to home", "$1 home",
+                "\"Home\" não leva \"to\" depois de verbos de movimento: \"go home\"."));
+        rules.add(rule("listen|listens|listened|listening music|me|the|my|this|that|a|some", "$1 to $2",
+                "\"Listen\" pede \"to\" antes do que se escuta: \"listen to music\"."));
+        rules.add(rule("discuss|discusses|discussed|discussing about", "$1", "\"Discuss\" não leva \"about\"."));
+        rules.add(rule("enter|enters|entered|entering in", "$1", "\"Enter\" não leva \"in\": \"enter the room\"."));
+        rules.add(rule("can|could|must|should|might to", "$1", "Depois de can/could/must/should/might, o verbo vem sem \"to\"."));
+        rules.add(rule("the my|your|his|her|our|their|its", "$2", "Em inglês, o possessivo não leva artigo: \"my\", não \"the my\"."));
+        rules.add(rule("in|at monday|tuesday|wednesday|thursday|friday|saturday|sunday|mondays|tuesdays|wednesdays"
+                + "|thursdays|fridays|saturdays|sundays", "on $2", "Com dias da semana, a preposição é \"on\"."));
+        Map<String, String> makeToAsk = Map.of("make", "ask", "makes", "asks", "made", "asked", "making", "asking");
+        makeToAsk.forEach((make, ask) ->
+                rules.add(rule(make + " a question", ask + " a question", "Em inglês, \"fazer uma pergunta\" é \"ask a question\".")));
+        Map<String, String> assistToWatch = Map.of("assist", "watch", "assists", "watches", "assisted", "watched", "assisting", "watching");
+        assistToWatch.forEach((assist, watch) ->
+                rules.add(rule(assist + " a|the movie|film|game|show|match|series", watch + " $2 $3",
+                        "\"Assist\" é \"ajudar\" (falso cognato); \"assistir\" é \"watch\".")));
+
+        // Comparativos de adjetivos curtos. "Good" e "bad" ficam de fora: "more good than harm" é substantivo.
+        Map<String, String> comparatives = new LinkedHashMap<>();
+        comparatives.put("better", "better");
+        comparatives.put("worse", "worse");
+        comparatives.put("big", "bigger");
+        comparatives.put("hot", "hotter");
+        comparatives.put("easy", "easier");
+        comparatives.put("happy", "happier");
+        comparatives.put("busy", "busier");
+        comparatives.put("pretty", "prettier");
+        comparatives.put("early", "earlier");
+        for (String adjective : List.of("fast", "cheap", "old", "young", "small", "tall", "long", "short", "high", "cold",
+                "strong", "new")) {
+            comparatives.put(adjective, adjective + "er");
+        }
+        for (String adjective : List.of("nice", "large", "late")) {
+            comparatives.put(adjective, adjective + "r");
+        }
+        // Só antes de "than" ou no fim da oração: com um substantivo depois (more cheap flights), "more" é quantidade.
+        comparatives.forEach((adjective, comparative) -> {
+            String explanation = "Adjetivos curtos formam o comparativo sem \"more\": \"" + comparative + "\".";
+            rules.add(rule("more " + adjective + " than", comparative + " than", explanation));
+            rules.add(rule("more " + adjective, comparative, explanation).atClauseEnd());
+        });
+
+        // Passado depois de did.
+        Map<String, String> pastToBase = new LinkedHashMap<>();
+        pastToBase.put("went", "go");
+        pastToBase.put("saw", "see");
+        pastToBase.put("ate", "eat");
+        pastToBase.put("came", "come");
+        pastToBase.put("made", "make");
+        pastToBase.put("bought", "buy");
+        pastToBase.put("took", "take");
+        pastToBase.put("got", "get");
+        pastToBase.put("had", "have");
+        pastToBase.put("did", "do");
+        pastToBase.put("said", "say");
+        pastToBase.put("told", "tell");
+        pastToBase.put("gave", "give");
+        pastToBase.put("wrote", "write");
+        pastToBase.put("found", "find");
+        pastToBase.put("knew", "know");
+        pastToBase.put("thought", "think");
+        pastToBase.put("left", "leave");
+        pastToBase.put("slept", "sleep");
+        pastToBase.put("spoke", "speak");
+        pastToBase.put("liked", "like");
+        pastToBase.put("wanted", "want");
+        pastToBase.put("worked", "work");
+        pastToBase.put("studied", "study");
+        pastToBase.put("played", "play");
+        pastToBase.put("watched", "watch");
+        pastToBase.forEach((past, base) -> {
+            String explanation = "Com \"did\", o passado já está no auxiliar: o verbo fica na forma base, \"" + base + "\".";
+            rules.add(rule("didn't " + past, "didn't " + base, explanation));
+            rules.add(rule("did not " + past, "did not " + base, explanation));
+            rules.add(rule("did i|you|he|she|it|we|they " + past, "did $2 " + base, explanation));
+        });
+
+        // Artigo indefinido: "an" antes de som de vogal.
+        rules.add(rule("a #vowel", "an $2", "Antes de som de vogal, o artigo é \"an\"."));
+        rules.add(rule("an #consonant", "a $2", "Antes de som de consoante, o artigo é \"a\"."));
+        return rules;
+    }
+}
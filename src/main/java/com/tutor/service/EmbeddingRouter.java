@@ -0,0 +1,144 @@
+package com.tutor.service;
+
+import com.tutor.config.AppConfig;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Roteador de intenção local, baseado no modelo de embedding já carregado.
+ * Classifica a pergunta comparando-a com frases de exemplo rotuladas ("rag" ou "conversa"),
+ * sem nenhuma chamada ao LLM. Só quando a diferença de similaridade entre as duas
+ * categorias fica abaixo da margem configurada é que o RouterAgent (LLM) é consultado.
+ */
+public class EmbeddingRouter implements RouterAgent {
+
+    private static final String RAG = "rag";
+    private static final String CONVERSA = "conversa";
+
+    // Exemplos rotulados, no mesmo espírito dos exemplos do prompt do RouterAgent.
+    private static final List<String> RAG_EXAMPLES = List.of(
+            "o que é present perfect?",
+            "me dê uma aula sobre preposições",
+            "qual a diferença entre do e does?",
+            "como usar o verbo to be?",
+            "quando usar there is e there are?",
+            "me explique os phrasal verbs",
+            "como se forma o passado simples em inglês?",
+            "quais são os pronomes pessoais em inglês?",
+            "como funciona o plural dos substantivos?",
+            "qual a diferença entre will e going to?",
+            "como eu falo 'eu tenho 25 anos' em inglês?",
+            "o que significa a palavra 'however'?"
+    );
+
+    private static final List<String> CONVERSA_EXAMPLES = List.of(
+            "ola, tudo bem?",
+            "oi",
+            "bom dia!",
+            "boa noite",
+            "obrigado pela ajuda",
+            "valeu!",
+            "tchau, até amanhã",
+            "quem é você?",
+            "como você está?",
+            "legal, entendi",
+            "hello, how are you?",
+            "kkkk que engraçado"
+    );
+
+    private final EmbeddingModel embeddingModel;
+    private final RouterAgent fallbackRouter;
+    private final double minMargin;
+    private final List<Embedding> ragEmbeddings;
+    private final List<Embedding> conversaEmbeddings;
+
+    private final AtomicLong totalRoutes = new AtomicLong();
+    private final AtomicLong fallbackRoutes = new AtomicLong();
+
+    /**
+     * @param embeddingModel O modelo de embedding compartilhado (o mesmo do Retriever).
+     * @param fallbackRouter O roteador por LLM, usado apenas nos casos de baixa confiança.
+     * @param minMargin      Diferença mínima de similaridade entre as categorias para decidir localmente.
+     */
+    public EmbeddingRouter(EmbeddingModel embeddingModel, RouterAgent fallbackRouter, double minMargin) {
+        this.embeddingModel = embeddingModel;
+        this.fallbackRouter = fallbackRouter;
+        this.minMargin = minMargin;
+        // Os exemplos são vetorizados uma única vez, em lote.
+        this.ragEmbeddings = embedAll(RAG_EXAMPLES);
+        this.conversaEmbeddings = embedAll(CONVERSA_EXAMPLES);
+    }
+
+    /**
+     * Método fábrica que lê a margem de confiança da configuração ('tutor.router.min-margin').
+     */
+    public static EmbeddingRouter create(EmbeddingModel embeddingModel, RouterAgent fallbackRouter) {
+        double minMargin = AppConfig.getDouble("tutor.router.min-margin", 0.05);
+        System.out.println("[CONFIG] Criando roteador por embedding com margem mínima=" + minMargin);
+        return new EmbeddingRouter(embeddingModel, fallbackRouter, minMargin);
+    }
+
+    @Override
+    public String route(String userMessage) {
+        totalRoutes.incrementAndGet();
+        Embedding query = embeddingModel.embed(userMessage).content();
+
+        double ragScore = bestScore(query, ragEmbeddings);
+        double conversaScore = bestScore(query, conversaEmbeddings);
+
+        if (Math.abs(ragScore - conversaScore) < minMargin) {
+            // Confiança baixa: delega a decisão ao roteador por LLM.
+            fallbackRoutes.incrementAndGet();
+            System.out.printf("[ROUTER] Confiança baixa (rag=%.3f, conversa=%.3f). Consultando o LLM...%n",
+                    ragScore, conversaScore);
+            return fallbackRouter.route(userMessage);
+        }
+        return ragScore > conversaScore ? RAG : CONVERSA;
+    }
+
+    /**
+     * @return Quantas decisões foram tomadas no total.
+     */
+    public long totalRoutes() {
+        return totalRoutes.get();
+    }
+
+    /**
+     * @return Quantas decisões precisaram do roteador por LLM.
+     */
+    public long fallbackRoutes() {
+        return fallbackRoutes.get();
+    }
+
+    /**
+     * @return Um resumo legível do uso do fallback, para logs.
+     */
+    public String stats() {
+        long total = totalRoutes();
+        long fallback = fallbackRoutes();
+        double rate = total == 0 ? 0.0 : 100.0 * fallback / total;
+        return String.format("[ROUTER] Decisões: %d | Fallback para o LLM: %d (%.1f%%)", total, fallback, rate);
+    }
+
+    private List<Embedding> embedAll(List<String> examples) {
+        List<TextSegment> segments = new ArrayList<>(examples.size());
+        for (String example : examples) {
+            segments.add(TextSegment.from(example));
+        }
+        return embeddingModel.embedAll(segments).content();
+    }
+
+    private static double bestScore(Embedding query, List<Embedding> examples) {
+        double best = -1.0;
+        for (Embedding example : examples) {
+            best = Math.max(best, CosineSimilarity.between(query, example));
+        }
+        return best;
+    }
+}
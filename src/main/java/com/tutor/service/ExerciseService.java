@@ -0,0 +1,613 @@
+package com.tutor.service;
+
+import com.tutor.config.AppConfig;
+import com.tutor.config.ModelConfig;
+import com.tutor.llm.OllamaScheduler;
+import com.tutor.prompt.PromptTemplates;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.retriever.Retriever;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pool de exercícios prontos, por tópico do curso e nível da persona.
+ *
+ * Pedir um exercício ao tutor não passa mais por uma geração ao vivo no Ollama:
+ * - um worker de fundo gera os exercícios a partir dos trechos da apostila que o retriever encontra
+ *   para cada tópico ('tutor.exercises.topics'), com o MCP da persona de cada nível;
+ * - ele só chama o modelo quando o Ollama está ocioso há 'tutor.exercises.idle-ms' e com prioridade
+ *   BACKGROUND, então nunca disputa a vez com a resposta de um aluno;
+ * - o pedido do aluno é reconhecido pelas palavras da mensagem, o tópico pelo embedding que o
+ *   TutorService já calculou, e o exercício sai de uma busca local: alguns microssegundos;
+ * - cada aluno tem o conjunto dos exercícios que já recebeu, para não ver o mesmo duas vezes. Quando
+ *   um aluno se aproxima do fim do pool de um tópico, o worker gera mais para esse tópico.
+ *
+ * Os exercícios e os conjuntos de cada aluno são salvos em disco ('tutor.exercises.file') e
+ * sobrevivem a reinícios. Se o pool não tiver um exercício novo para o aluno, o pedido segue o
+ * caminho normal do turno (RAG).
+ */
+public class ExerciseService {
+
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    /**
+     * Um exercício pronto. O gabarito não é mostrado ao aluno, mas vai para a memória da conversa,
+     * para que o tutor consiga corrigir a resposta no turno seguinte.
+     */
+    public record Exercise(String id, String topic, String level, String statement, String answerKey, long createdAtMillis) {
+
+        /**
+         * O texto registrado na memória da conversa: o enunciado e o gabarito.
+         */
+        public String memoryText() {
+            return statement + "\n\n(Gabarito para a correção, não mostrado ao aluno: " + answerKey + ")";
+        }
+    }
+
+    private record PoolKey(String topic, String level) {}
+
+    // Pedido de exercício. Com o modelo de embedding atual, uma pergunta sobre um tópico ("como usar o
+    // verbo to be?") fica tão perto de "quero praticar o verbo to be" quanto um pedido de verdade, então a
+    // intenção é reconhecida pelas palavras e o embedding só escolhe o tópico. A palavra sozinha não basta
+    // ("praticamente", "a atividade 2 está certa?", "is 'exercise' a verb?"): é preciso um verbo de pedido
+    // antes dela, ou a mensagem inteira ser só o pedido ("outro exercício", "exercício de simple past").
+    private static final String FILLER = "(?:\\s+(?:me|mim|pra|para|n[oó]s|um|uma|uns|umas|o|os|a|as|mais|outro|outra|"
+            + "outros|outras|novo|nova|novos|novas|algum|alguma|alguns|algumas|pouco|fazer|resolver|voc[eê]|vc|"
+            + "us|an?|some|another|more|one|new|few|quick)){0,4}";
+    private static final Pattern REQUEST = Pattern.compile("(?iu)"
+            // "me dá um exercício", "manda outro exercício", "quero fazer uma atividade", "give me an exercise"
+            + "\\b(?:d[aáê]|dar|manda|mande|mandar|envia|envie|enviar|passa|passe|passar|gera|gere|gerar|cria|crie|"
+            + "criar|prepara|preparar|quero|queria|gostaria\\s+de|preciso\\s+de|give|send|make|create|"
+            + "generate|prepare|want|need|i'?d\\s+like|would\\s+like)"
+            + FILLER + "\\s+(?:exerc[ií]cios?|atividades?|quiz|quizzes|testes?|exercises?|drills?)\\b"
+            // "quero praticar", "vamos treinar", "me ajuda a praticar", "I want to practice", "let's practise"
+            + "|\\b(?:quero|queria|gostaria\\s+de|preciso|vamos|bora|posso|podemos|ajuda\\s+a|ajude\\s+a)"
+            + "(?:\\s+(?:mais|muito|um\\s+pouco))?\\s+(?:praticar|treinar|exercitar)\\b"
+            + "|\\b(?:want|need|i'?d\\s+like|would\\s+like)\\s+to\\s+(?:practi[cs]e|drill|train)\\b"
+            + "|\\b(?:let'?s|let\\s+me|can\\s+we|could\\s+we|can\\s+i)\\s+(?:practi[cs]e|drill|train)\\b"
+            // "me testa", "quiz me", "test me"
+            + "|\\bme\\s+test(?:a|e|ar)\\b|\\b(?:quiz|test)\\s+me\\b"
+            // A mensagem é só o pedido: "exercício", "mais um exercício!", "exercício sobre o past simple"
+            + "|^\\W*(?:(?:um|uma|outro|outra|mais\\s+um|mais\\s+uma|novo|nova|an?|another|one\\s+more)\\s+)?"
+            + "(?:exerc[ií]cios?|atividades?|quiz|exercises?)(?:\\s+(?:de|sobre|do|da|on|about|please|por\\s+favor)\\b[^?]*)?\\W*$");
+
+    // Formatos alternados a cada exercício do mesmo tópico, para o pool não repetir o mesmo tipo.
+    private static final List<String> EXERCISE_TYPES = List.of(
+            "completar as lacunas",
+            "múltipla escolha",
+            "traduzir frases do português para o inglês",
+            "encontrar e corrigir o erro de cada frase",
+            "reescrever as frases na forma negativa ou interrogativa"
+    );
+
+    private static final Pattern ANSWER_KEY = Pattern.compile("(?im)^\\s*\\**\\s*GABARITO\\s*\\**\\s*:?\\s*\\**");
+    private static final Pattern STATEMENT_HEADER = Pattern.compile("(?i)^\\s*\\**\\s*EXERC[IÍ]CIO\\s*\\**\\s*:?\\s*\\**\\s*");
+
+    // Limite dos trechos da apostila enviados ao modelo por exercício.
+    private static final int MAX_CONTEXT_CHARS = 3000;
+
+    private final EmbeddingModel embeddingModel;
+    private final Retriever<TextSegment> retriever;
+    private final ChatLanguageModel chatModel;
+    private final OllamaScheduler scheduler;
+    private final List<String> topics;
+    private final List<String> levels;
+    private final String servingLevel;
+    private final int poolSize;
+    private final int maxPerTopic;
+    private final int reserve;
+    private final double topicThreshold;
+    private final long idleMillis;
+    private final long pollMillis;
+    private final Path persistenceFile;
+
+    private final List<Embedding> topicEmbeddings;
+
+    // Lidos a cada pedido e alterados só pelo worker: listas copy-on-write.
+    private final Map<PoolKey, List<Exercise>> pools = new ConcurrentHashMap<>();
+    // Os exercícios que cada aluno (ID da memória da conversa) já recebeu.
+    private final Map<String, Set<String>> served = new ConcurrentHashMap<>();
+    // Quantos exercícios de cada pool o aluno que mais avançou nele já recebeu.
+    private final Map<PoolKey, Integer> demand = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private Thread worker;
+
+    /**
+     * @param embeddingModel   O modelo de embedding compartilhado.
+     * @param retriever        Busca os trechos da apostila de cada tópico.
+     * @param chatModel        O modelo que gera os exercícios (com prioridade BACKGROUND).
+     * @param scheduler        O agendador do Ollama, consultado para saber se o modelo está ocioso.
+     * @param topics           Os tópicos do curso.
+     * @param levels           Os níveis de persona para os quais há pool.
+     * @param servingLevel     O nível da persona em uso, de onde saem os exercícios servidos.
+     * @param poolSize         Exercícios mantidos prontos por tópico e nível.
+     * @param maxPerTopic      Máximo de exercícios por tópico e nível.
+     * @param reserve          Exercícios novos mantidos à frente do aluno que mais avançou em um tópico.
+     * @param topicThreshold   Similaridade mínima com um tópico; abaixo dela o pedido vale para qualquer tópico.
+     * @param idleMillis       Tempo mínimo com o Ollama ocioso antes de gerar um exercício.
+     * @param pollMillis       Intervalo entre as verificações do worker.
+     * @param persistenceFile  Arquivo do pool (ou null para manter só em memória).
+     */
+    public ExerciseService(EmbeddingModel embeddingModel, Retriever<TextSegment> retriever, ChatLanguageModel chatModel,
+                           OllamaScheduler scheduler, List<String> topics, List<String> levels, String servingLevel,
+                           int poolSize, int maxPerTopic, int reserve, double topicThreshold,
+                           long idleMillis, long pollMillis, Path persistenceFile) {
+        this.embeddingModel = embeddingModel;
+        this.retriever = retriever;
+        this.chatModel = chatModel;
+        this.scheduler = scheduler;
+        this.topics = List.copyOf(topics);
+        this.levels = List.copyOf(levels);
+        this.servingLevel = servingLevel;
+        this.poolSize = poolSize;
+        this.maxPerTopic = maxPerTopic;
+        this.reserve = reserve;
+        this.topicThreshold = topicThreshold;
+        this.idleMillis = idleMillis;
+        this.pollMillis = pollMillis;
+        this.persistenceFile = persistenceFile;
+        // Os tópicos são vetorizados uma única vez, em lote.
+        List<String> topicPhrases = new ArrayList<>(topics.size());
+        for (String topic : topics) {
+            topicPhrases.add("exercício sobre " + topic);
+        }
+        this.topicEmbeddings = embedAll(topicPhrases);
+        load();
+    }
+
+    /**
+     * Cria o serviço a partir das propriedades 'tutor.exercises.*'.
+     *
+     * @param embeddingModel O modelo de embedding compartilhado.
+     * @param retriever      O retriever da base de conhecimento (sem transformação de consulta).
+     */
+    public static ExerciseService create(EmbeddingModel embeddingModel, Retriever<TextSegment> retriever) {
+        String servingLevel = AppConfig.get("tutor.persona.level", "beginner").trim();
+        List<String> levels = splitList(AppConfig.get("tutor.exercises.levels", servingLevel));
+        if (!levels.contains(servingLevel)) {
+            levels.add(servingLevel);
+        }
+        List<String> topics = splitList(AppConfig.get("tutor.exercises.topics",
+                "verbo to be, pronomes pessoais, artigos, plural dos substantivos, simple present, "
+                        + "present continuous, simple past, there is e there are, preposições, números e horas"));
+        int poolSize = AppConfig.getInt("tutor.exercises.pool-size", 5);
+        String file = AppConfig.get("tutor.exercises.file", "");
+        Path persistenceFile = file.isBlank() ? null : Paths.get(file);
+
+        System.out.println("[CONFIG] Criando pool de exercícios: " + topics.size() + " tópicos, níveis " + levels
+                + ", " + poolSize + " por tópico" + (persistenceFile != null ? ", arquivo=" + persistenceFile : ""));
+        return new ExerciseService(embeddingModel, retriever,
+                ModelConfig.getChatLanguageModel(OllamaScheduler.Priority.BACKGROUND), OllamaScheduler.shared(),
+                topics, levels, servingLevel, poolSize,
+                AppConfig.getInt("tutor.exercises.max-per-topic", 50),
+                AppConfig.getInt("tutor.exercises.reserve", 2),
+                AppConfig.getDouble("tutor.exercises.topic-threshold", 0.6),
+                AppConfig.getInt("tutor.exercises.idle-ms", 3000),
+                AppConfig.getInt("tutor.exercises.poll-ms", 1000),
+                persistenceFile);
+    }
+
+    /**
+     * Inicia o worker que completa o pool em segundo plano. Não bloqueia.
+     */
+    public synchronized void start() {
+        if (worker == null) {
+            worker = Thread.ofPlatform().name("exercise-pool").daemon().priority(Thread.MIN_PRIORITY).start(this::refillLoop);
+        }
+    }
+
+    /**
+     * Para o worker (uma geração em andamento é cancelada) e salva o pool.
+     */
+    public void shutdown() {
+        Thread current;
+        synchronized (this) {
+            current = worker;
+            worker = null;
+        }
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        save();
+    }
+
+    /**
+     * Se a mensagem é um pedido de exercício. Barato (só a expressão regular), para o TutorService
+     * decidir se vale vetorizar a mensagem antes de chamar o serve.
+     *
+     * @param message A mensagem do aluno.
+     * @return true se a mensagem pede um exercício.
+     */
+    public static boolean isRequest(String message) {
+        return REQUEST.matcher(message).find();
+    }
+
+    /**
+     * Atende um pedido de exercício com um exercício pronto que o aluno ainda não recebeu.
+     *
+     * @param studentId        O aluno (o ID da memória da conversa).
+     * @param message          A mensagem do aluno.
+     * @param messageEmbedding O embedding da mensagem do aluno.
+     * @return O exercício, ou vazio se a mensagem não for um pedido de exercício ou se o pool
+     *         do tópico não tiver nenhum exercício novo para o aluno.
+     */
+    public Optional<Exercise> serve(String studentId, String message, Embedding messageEmbedding) {
+        if (!isRequest(message)) {
+            return Optional.empty();
+        }
+        Set<String> seen = served.computeIfAbsent(studentId, id -> ConcurrentHashMap.newKeySet());
+        int topic = bestIndex(messageEmbedding, topicEmbeddings);
+        PoolKey key = CosineSimilarity.between(messageEmbedding, topicEmbeddings.get(topic)) >= topicThreshold
+                ? new PoolKey(topics.get(topic), servingLevel)
+                : freshestPool(seen);
+        List<Exercise> pool = pools.getOrDefault(key, List.of());
+
+        Exercise chosen = null;
+        int seenInPool = 0;
+        for (Exercise exercise : pool) {
+            if (chosen == null && seen.add(exercise.id())) {
+                chosen = exercise;
+            }
+            if (seen.contains(exercise.id())) {
+                seenInPool++;
+            }
+        }
+        // O worker mantém 'reserve' exercícios novos à frente de quem mais avançou no tópico.
+        demand.merge(key, seenInPool, Math::max);
+
+        if (chosen == null) {
+            misses.incrementAndGet();
+            System.out.println("[EXERCISES] Nenhum exercício novo de '" + key.topic() + "' para o aluno; gerando ao vivo.");
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        System.out.println("[EXERCISES] Exercício de '" + key.topic() + "' servido do pool.");
+        return Optional.of(chosen);
+    }
+
+    /**
+     * @return Um resumo legível do pool, para logs.
+     */
+    public String stats() {
+        int total = 0;
+        for (List<Exercise> pool : pools.values()) {
+            total += pool.size();
+        }
+        return String.format("[EXERCISES] Servidos do pool: %d | Sem exercício novo: %d | Gerados: %d | No pool: %d",
+                hits.get(), misses.get(), generated.get(), total);
+    }
+
+    // ====================================================================================
+    // WORKER DE FUNDO
+    // ====================================================================================
+
+    private void refillLoop() {
+        System.out.println("[EXERCISES] Worker iniciado; gera exercícios com o Ollama ocioso há " + idleMillis + " ms.");
+        long delay = pollMillis;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(delay);
+                delay = pollMillis;
+                if (scheduler.idleMillis() < idleMillis) {
+                    continue;
+                }
+                PoolKey key = mostNeeded();
+                if (key != null) {
+                    refill(key);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                System.err.println("[EXERCISES] WARN: Falha ao gerar exercício: " + e.getMessage());
+                delay = Math.max(pollMillis, 30_000); // Ollama ou Qdrant com problema: espera antes de tentar de novo
+            }
+        }
+    }
+
+    /**
+     * O pool mais longe do alvo: 'poolSize' exercícios, ou 'reserve' além do que o aluno mais
+     * avançado já recebeu, até 'maxPerTopic'. Os pools do nível em uso vêm primeiro.
+     *
+     * @return O pool a completar, ou null se todos estiverem no alvo.
+     */
+    private PoolKey mostNeeded() {
+        PoolKey best = null;
+        int bestDeficit = 0;
+        List<String> orderedLevels = new ArrayList<>(levels);
+        orderedLevels.remove(servingLevel);
+        orderedLevels.add(0, servingLevel);
+        for (String level : orderedLevels) {
+            for (String topic : topics) {
+                PoolKey key = new PoolKey(topic, level);
+                int target = Math.min(maxPerTopic, Math.max(poolSize, demand.getOrDefault(key, 0) + reserve));
+                int deficit = target - pools.getOrDefault(key, List.of()).size();
+                if (deficit > bestDeficit) {
+                    bestDeficit = deficit;
+                    best = key;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gera um exercício para o pool, a partir dos trechos da apostila sobre o tópico.
+     */
+    private void refill(PoolKey key) {
+        List<Exercise> pool = pools.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>());
+        String type = EXERCISE_TYPES.get(pool.size() % EXERCISE_TYPES.size());
+
+        long start = System.nanoTime();
+        List<TextSegment> passages = retriever.findRelevant(key.topic());
+        StringBuilder context = new StringBuilder();
+        for (TextSegment passage : passages) {
+            if (context.length() + passage.text().length() > MAX_CONTEXT_CHARS) {
+                break;
+            }
+            context.append(passage.text()).append("\n---\n");
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(PromptTemplates.getMcp(key.level()));
+        messages.add(UserMessage.from(exercisePrompt(key.topic(), type, context.toString())));
+        String text = chatModel.generate(messages).content().text();
+
+        Exercise exercise = parse(key, text);
+        if (exercise == null) {
+            System.err.println("[EXERCISES] WARN: Exercício de '" + key.topic() + "' sem gabarito; descartado.");
+            return;
+        }
+        for (Exercise existing : pool) {
+            if (existing.id().equals(exercise.id())) {
+                return; // o modelo repetiu um exercício que já está no pool
+            }
+        }
+        pool.add(exercise);
+        generated.incrementAndGet();
+        System.out.printf("[EXERCISES] Exercício de '%s' (%s, %s) gerado em %d ms; %d no pool.%n",
+                key.topic(), type, key.level(), (System.nanoTime() - start) / 1_000_000, pool.size());
+        save();
+    }
+
+    private static String exercisePrompt(String topic, String type, String context) {
+        return """
+                Crie UM exercício curto de inglês sobre "%s", do tipo "%s", com 4 ou 5 itens, adequado ao seu nível.
+                Baseie-se nos trechos da apostila do curso abaixo.
+
+                <apostila>
+                %s
+                </apostila>
+
+                Responda exatamente neste formato, sem nada antes ou depois:
+                EXERCÍCIO:
+                (o enunciado e os itens numerados)
+                GABARITO:
+                (a resposta de cada item)
+                """.formatted(topic, type, context.isBlank() ? "(nenhum trecho encontrado)" : context.strip());
+    }
+
+    /**
+     * Separa enunciado e gabarito. O ID vem do enunciado normalizado, então o mesmo exercício
+     * gerado duas vezes tem o mesmo ID.
+     *
+     * @return O exercício, ou null se a resposta não tiver o gabarito.
+     */
+    private static Exercise parse(PoolKey key, String text) {
+        Matcher answerKey = ANSWER_KEY.matcher(text);
+        if (!answerKey.find()) {
+            return null;
+        }
+        String statement = STATEMENT_HEADER.matcher(text.substring(0, answerKey.start())).replaceFirst("").strip();
+        String answers = text.substring(answerKey.end()).strip();
+        if (statement.isEmpty() || answers.isEmpty()) {
+            return null;
+        }
+        String normalized = key.topic() + "|" + key.level() + "|" + statement.toLowerCase().replaceAll("\\s+", " ");
+        String id = UUID.nameUUIDFromBytes(normalized.getBytes(StandardCharsets.UTF_8)).toString();
+        return new Exercise(id, key.topic(), key.level(), statement, answers, System.currentTimeMillis());
+    }
+
+    // ====================================================================================
+    // PERSISTÊNCIA
+    // ====================================================================================
+
+    /**
+     * Salva o pool e os exercícios já recebidos por aluno. Não faz nada se a persistência estiver
+     * desativada. A escrita é feita em um arquivo temporário e depois movida, como no cache semântico.
+     */
+    public synchronized void save() {
+        if (persistenceFile == null) {
+            return;
+        }
+        try {
+            Path parent = persistenceFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = persistenceFile.resolveSibling(persistenceFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_FORMAT_VERSION);
+                List<Exercise> exercises = new ArrayList<>();
+                pools.values().forEach(exercises::addAll);
+                out.writeInt(exercises.size());
+                for (Exercise exercise : exercises) {
+                    writeString(out, exercise.id());
+                    writeString(out, exercise.topic());
+                    writeString(out, exercise.level());
+                    writeString(out, exercise.statement());
+                    writeString(out, exercise.answerKey());
+                    out.writeLong(exercise.createdAtMillis());
+                }
+                List<Map.Entry<String, Set<String>>> students = new ArrayList<>(served.entrySet());
+                out.writeInt(students.size());
+                for (Map.Entry<String, Set<String>> student : students) {
+                    List<String> ids = new ArrayList<>(student.getValue());
+                    writeString(out, student.getKey());
+                    out.writeInt(ids.size());
+                    for (String id : ids) {
+                        writeString(out, id);
+                    }
+                }
+            }
+            Files.move(tmp, persistenceFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[EXERCISES] WARN: Falha ao salvar o pool de exercícios: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (persistenceFile == null || !Files.exists(persistenceFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(persistenceFile)))) {
+            if (in.readInt() != FILE_FORMAT_VERSION) {
+                System.err.println("[EXERCISES] WARN: Versão de arquivo do pool desconhecida. Ignorando.");
+                return;
+            }
+            int count = in.readInt();
+            Map<String, PoolKey> keysById = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                Exercise exercise = new Exercise(readString(in), readString(in), readString(in),
+                        readString(in), readString(in), in.readLong());
+                PoolKey key = new PoolKey(exercise.topic(), exercise.level());
+                // Exercícios de tópicos ou níveis que saíram da configuração ficam de fora.
+                if (topics.contains(key.topic()) && levels.contains(key.level())) {
+                    pools.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(exercise);
+                    keysById.put(exercise.id(), key);
+                }
+            }
+            int students = in.readInt();
+            for (int i = 0; i < students; i++) {
+                String studentId = readString(in);
+                Set<String> ids = ConcurrentHashMap.newKeySet();
+                int idCount = in.readInt();
+                for (int j = 0; j < idCount; j++) {
+                    ids.add(readString(in));
+                }
+                served.put(studentId, ids);
+                // Recalcula a demanda de cada pool a partir do que o aluno já recebeu.
+                Map<PoolKey, Integer> seenPerPool = new HashMap<>();
+                for (String id : ids) {
+                    PoolKey key = keysById.get(id);
+                    if (key != null) {
+                        seenPerPool.merge(key, 1, Integer::sum);
+                    }
+                }
+                seenPerPool.forEach((key, seen) -> demand.merge(key, seen, Math::max));
+            }
+            System.out.println("[EXERCISES] " + keysById.size() + " exercícios carregados de " + persistenceFile);
+        } catch (IOException e) {
+            System.err.println("[EXERCISES] WARN: Falha ao ler o pool salvo: " + e.getMessage());
+            pools.clear();
+            served.clear();
+            demand.clear();
+        }
+    }
+
+    // ====================================================================================
+    // AUXILIARES
+    // ====================================================================================
+
+    private List<Embedding> embedAll(List<String> phrases) {
+        List<TextSegment> segments = new ArrayList<>(phrases.size());
+        for (String phrase : phrases) {
+            segments.add(TextSegment.from(phrase));
+        }
+        return embeddingModel.embedAll(segments).content();
+    }
+
+    /**
+     * Para um pedido sem tópico claro ("me dá um exercício"): o pool do nível em uso com mais
+     * exercícios que o aluno ainda não recebeu.
+     */
+    private PoolKey freshestPool(Set<String> seen) {
+        PoolKey best = new PoolKey(topics.get(0), servingLevel);
+        int bestFresh = -1;
+        for (String topic : topics) {
+            PoolKey key = new PoolKey(topic, servingLevel);
+            int fresh = 0;
+            for (Exercise exercise : pools.getOrDefault(key, List.of())) {
+                if (!seen.contains(exercise.id())) {
+                    fresh++;
+                }
+            }
+            if (fresh > bestFresh) {
+                bestFresh = fresh;
+                best = key;
+            }
+        }
+        return best;
+    }
+
+    private static int bestIndex(Embedding query, List<Embedding> candidates) {
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < candidates.size(); i++) {
+            double score = CosineSimilarity.between(query, candidates.get(i));
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,6 +1,7 @@
 package com.tutor.service;
 
 import com.tutor.config.ModelConfig;
+import com.tutor.llm.OllamaScheduler;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
@@ -35,7 +36,7 @@ public interface RouterAgent {
      */
     static RouterAgent create() {
         // Usamos um modelo com baixa temperatura para garantir consistência na classificação.
-        ChatLanguageModel model = ModelConfig.createChatLanguageModel();
+        ChatLanguageModel model = ModelConfig.getChatLanguageModel(OllamaScheduler.Priority.AUXILIARY);
         return AiServices.create(RouterAgent.class, model);
     }
 }
\ No newline at end of file
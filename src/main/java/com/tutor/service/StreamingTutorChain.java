@@ -0,0 +1,234 @@
+package com.tutor.service;
+
+import com.tutor.metrics.TutorMetrics;
+import com.tutor.prompt.ContextPacker;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.input.PromptTemplate;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.retriever.Retriever;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Cadeia de conversação com streaming. Substitui a ConversationalChain e a
+ * ConversationalRetrievalChain quando queremos exibir a resposta token a token,
+ * em vez de esperar a geração completa do LLM.
+ *
+ * Com um Retriever, ela se comporta como a cadeia de RAG (busca as fontes e as injeta
+ * no prompt de síntese). Sem Retriever, é a cadeia de conversa simples.
+ * Em ambos os casos, a resposta final é gravada na memória de chat, como nas cadeias bloqueantes.
+ *
+ * O prompt de cada turno passa pelo ContextPacker: as fontes e o histórico cabem em um orçamento
+ * fixo de tokens. A memória guarda a pergunta sem as fontes; elas só entram no prompt do turno
+ * em que foram recuperadas, em vez de serem reenviadas em todos os turnos seguintes.
+ *
+ * Todo prompt começa pelo mesmo prefixo fixo (o MCP da persona, fora da memória e nunca cortado);
+ * as partes variáveis (histórico, fontes e pergunta) vêm sempre depois dele. Assim o início do prompt é
+ * idêntico em todos os turnos e o Ollama só avalia (prefill) o que mudou desde o turno anterior.
+ *
+ * A cadeia não guarda estado de conversa: a memória é passada a cada chamada, então uma única
+ * instância atende todas as sessões. Chamadas concorrentes com a mesma memória devem ser serializadas
+ * por quem chama (ver ChatMemoryManager.Session).
+ */
+public class StreamingTutorChain {
+
+    private final StreamingChatLanguageModel model;
+    private final List<ChatMessage> prefix;
+    private final Retriever<TextSegment> retriever;
+    private final PromptTemplate promptTemplate;
+    private final ContextPacker contextPacker;
+
+    private StreamingTutorChain(StreamingChatLanguageModel model, List<ChatMessage> prefix, Retriever<TextSegment> retriever,
+                                PromptTemplate promptTemplate, ContextPacker contextPacker) {
+        this.model = model;
+        this.prefix = List.copyOf(prefix);
+        this.contextPacker = contextPacker;
+        this.retriever = retriever;
+        this.promptTemplate = promptTemplate;
+    }
+
+    /**
+     * Cria a cadeia de conversa simples (saudações e bate-papo), sem recuperação de conhecimento.
+     *
+     * @param prefix O prefixo fixo de todos os prompts (ver PromptTemplates.getMcp).
+     */
+    public static StreamingTutorChain conversational(StreamingChatLanguageModel model, List<ChatMessage> prefix,
+                                                     ContextPacker contextPacker) {
+        return new StreamingTutorChain(model, prefix, null, null, contextPacker);
+    }
+
+    /**
+     * Cria a cadeia de RAG. O template deve conter as variáveis {{information}} e {{question}}.
+     * As duas cadeias devem receber o mesmo prefixo, para que alternar entre elas não invalide o KV cache.
+     *
+     * @param prefix O prefixo fixo de todos os prompts (ver PromptTemplates.getMcp).
+     */
+    public static StreamingTutorChain rag(StreamingChatLanguageModel model, List<ChatMessage> prefix,
+                                          Retriever<TextSegment> retriever, PromptTemplate promptTemplate,
+                                          ContextPacker contextPacker) {
+        return new StreamingTutorChain(model, prefix, retriever, promptTemplate, contextPacker);
+    }
+
+    /**
+     * Executa um turno da conversa, repassando cada token ao consumidor assim que ele chega.
+     * O método só retorna quando a geração termina.
+     *
+     * @param chatMemory  A memória da sessão que está conversando.
+     * @param userMessage A mensagem do usuário.
+     * @param onToken     Consumidor chamado a cada token gerado (ex: imprimir no console).
+     * @return A resposta completa, já gravada na memória.
+     */
+    public String execute(ChatMemory chatMemory, String userMessage, Consumer<String> onToken) {
+        List<TextSegment> segments = retriever != null ? retrieve(userMessage) : null;
+        return execute(chatMemory, userMessage, segments, onToken);
+    }
+
+    /**
+     * Executa um turno com fontes já recuperadas (ex: pela busca especulativa do TutorService).
+     *
+     * @param chatMemory  A memória da sessão que está conversando.
+     * @param userMessage A mensagem do usuário.
+     * @param segments    As fontes recuperadas para esta mensagem (ignoradas na cadeia de conversa).
+     * @param onToken     Consumidor chamado a cada token gerado.
+     * @return A resposta completa, já gravada na memória.
+     */
+    public String execute(ChatMemory chatMemory, String userMessage, List<TextSegment> segments,
+                          Consumer<String> onToken) {
+        UserMessage prompt = augment(userMessage, segments);
+
+        // Prefixo fixo + histórico + a pergunta com as fontes. A memória só recebe a pergunta junto com a
+        // resposta, no fim: uma geração que falha ou é cancelada não deixa um turno do aluno sem resposta.
+        List<ChatMessage> history = chatMemory.messages();
+        List<ChatMessage> messages = new ArrayList<>(prefix.size() + history.size() + 1);
+        messages.addAll(prefix);
+        messages.addAll(history.subList(storedPrefixLength(history), history.size()));
+        messages.add(prompt);
+        messages = contextPacker.packMessages(messages, prefix.size());
+
+        CompletableFuture<AiMessage> futureAnswer = new CompletableFuture<>();
+        long generationStart = TutorMetrics.start();
+        model.generate(messages, new StreamingResponseHandler<AiMessage>() {
+            private long firstTokenNanos;
+            private int tokens;
+
+            @Override
+            public void onNext(String token) {
+                if (futureAnswer.isDone()) {
+                    return;
+                }
+                if (TutorMetrics.ENABLED && tokens++ == 0) {
+                    firstTokenNanos = System.nanoTime();
+                    TutorMetrics.TIME_TO_FIRST_TOKEN.record((firstTokenNanos - generationStart) / 1e9);
+                }
+                try {
+                    onToken.accept(token);
+                } catch (RuntimeException e) {
+                    // O consumidor falhou (ex: o cliente HTTP desconectou): encerra o turno com erro.
+                    futureAnswer.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                if (TutorMetrics.ENABLED) {
+                    recordGeneration(response);
+                }
+                futureAnswer.complete(response.content());
+            }
+
+            /**
+             * Vazão depois do primeiro token. Usa a contagem do Ollama quando vem na resposta;
+             * senão, cada chunk recebido conta como um token.
+             */
+            private void recordGeneration(Response<AiMessage> response) {
+                long end = System.nanoTime();
+                TutorMetrics.GENERATION.record((end - generationStart) / 1e9);
+                Integer outputTokens = response.tokenUsage() != null ? response.tokenUsage().outputTokenCount() : null;
+                int generated = outputTokens != null ? outputTokens : tokens;
+                if (generated > 1 && end > firstTokenNanos) {
+                    TutorMetrics.TOKENS_PER_SECOND.record((generated - 1) / ((end - firstTokenNanos) / 1e9));
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                futureAnswer.completeExceptionally(error);
+            }
+        });
+
+        AiMessage answer;
+        try {
+            answer = futureAnswer.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Falha ao gerar a resposta em streaming", e.getCause());
+        }
+        remember(chatMemory, userMessage, answer.text());
+        return answer.text();
+    }
+
+    /**
+     * Registra na memória um turno completo, pergunta e resposta juntas. Usado no fim de cada geração e
+     * para os turnos respondidos fora do LLM (ex: pelo cache semântico), para que o histórico da conversa
+     * continue coerente.
+     */
+    public void remember(ChatMemory chatMemory, String userMessage, String answer) {
+        chatMemory.add(UserMessage.from(userMessage));
+        chatMemory.add(AiMessage.from(answer));
+    }
+
+    /**
+     * Busca as fontes da mensagem no Retriever da cadeia de RAG. Não toca na memória, então
+     * pode rodar antes de se saber se a cadeia será usada (e ser cancelada).
+     *
+     * @param userMessage A mensagem do usuário.
+     * @return Os segmentos relevantes.
+     */
+    public List<TextSegment> retrieve(String userMessage) {
+        if (retriever == null) {
+            throw new IllegalStateException("A cadeia de conversa não tem Retriever");
+        }
+        return retriever.findRelevant(userMessage);
+    }
+
+    /**
+     * Quantas mensagens do início do histórico repetem o prefixo. Sessões gravadas quando o MCP ainda
+     * ficava na memória começam por ele (ou só pela mensagem de sistema, que a janela nunca descarta);
+     * essas mensagens não são enviadas de novo.
+     */
+    private int storedPrefixLength(List<ChatMessage> history) {
+        int length = 0;
+        while (length < history.size() && length < prefix.size() && history.get(length).equals(prefix.get(length))) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Na cadeia de RAG, monta a mensagem do usuário com as fontes recuperadas,
+     * do mesmo jeito que a ConversationalRetrievalChain faz com o seu PromptTemplate,
+     * mas com as fontes já deduplicadas e limitadas pelo ContextPacker.
+     */
+    private UserMessage augment(String userMessage, List<TextSegment> segments) {
+        if (promptTemplate == null) {
+            return UserMessage.from(userMessage);
+        }
+        String information = contextPacker.packInformation(segments);
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("information", information);
+        variables.put("question", userMessage);
+        return promptTemplate.apply(variables).toUserMessage();
+    }
+}
@@ -0,0 +1,267 @@
+package com.tutor.service;
+
+import com.tutor.cache.SemanticResponseCache;
+import com.tutor.llm.OllamaScheduler;
+import com.tutor.metrics.TutorMetrics;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Executa um turno completo do tutor: pré-corretor, cache semântico, pool de exercícios, roteamento e a
+ * cadeia escolhida.
+ *
+ * Os componentes pesados (modelos, banco vetorial, cadeias) são construídos uma única vez e
+ * compartilhados; o estado de cada aluno fica apenas na ChatMemory recebida em cada chamada.
+ * Assim, o mesmo serviço atende o modo console e o servidor HTTP.
+ *
+ * No modo especulativo ('tutor.speculation.enabled'), a busca do RAG (QueryTransformer, embeddings e
+ * banco vetorial) começa em uma virtual thread enquanto o roteador decide. Se a decisão for "rag",
+ * as fontes já estão prontas (ou quase); se for "conversa", a busca é cancelada. Em perguntas de RAG,
+ * o turno passa a custar o maior dos dois estágios, e não a soma.
+ *
+ * Com um ExerciseService, um pedido de exercício é atendido com um exercício já gerado em segundo
+ * plano, sem roteamento nem LLM; se o pool não tiver um exercício novo para o aluno, o turno segue normalmente.
+ *
+ * Com um CorrectionService, só as correções que as regras locais resolvem são respondidas antes de
+ * tudo, sem LLM; os demais pedidos de correção seguem o turno normal (cache, roteamento e cadeia).
+ */
+public class TutorService {
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingRouter router;
+    private final StreamingTutorChain conversationalChain;
+    private final StreamingTutorChain ragChain;
+    private final SemanticResponseCache responseCache;
+    private final ExerciseService exerciseService;
+    private final CorrectionService correctionService;
+    private final boolean speculativeRetrieval;
+    private final ExecutorService speculationExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Métricas da especulação: quantas buscas foram aproveitadas ou descartadas, e o tempo correspondente.
+    private final AtomicLong speculationsUsed = new AtomicLong();
+    private final AtomicLong speculationsWasted = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+    private final AtomicLong wastedMillis = new AtomicLong();
+
+    /**
+     * @param embeddingModel      O modelo usado para vetorizar as perguntas (cache semântico).
+     * @param router              O roteador de intenção.
+     * @param conversationalChain A cadeia de conversa simples.
+     * @param ragChain            A cadeia de RAG.
+     * @param responseCache       O cache semântico, ou null se estiver desativado.
+     * @param exerciseService     O pool de exercícios, ou null se estiver desativado.
+     * @param correctionService   O pré-corretor, ou null se estiver desativado.
+     * @param speculativeRetrieval Se a busca do RAG deve começar antes da decisão do roteador.
+     */
+    public TutorService(EmbeddingModel embeddingModel, EmbeddingRouter router,
+                        StreamingTutorChain conversationalChain, StreamingTutorChain ragChain,
+                        SemanticResponseCache responseCache, ExerciseService exerciseService,
+                        CorrectionService correctionService, boolean speculativeRetrieval) {
+        this.embeddingModel = embeddingModel;
+        this.router = router;
+        this.conversationalChain = conversationalChain;
+        this.ragChain = ragChain;
+        this.responseCache = responseCache;
+        this.exerciseService = exerciseService;
+        this.correctionService = correctionService;
+        this.speculativeRetrieval = speculativeRetrieval;
+    }
+
+    /**
+     * Responde a uma pergunta, repassando a resposta ao consumidor token a token.
+     * Uma resposta vinda do cache é entregue de uma só vez.
+     *
+     * @param chatMemory A memória da sessão (quem chama garante um turno por vez por sessão).
+     * @param pergunta   A mensagem do aluno.
+     * @param onToken    Consumidor chamado a cada trecho da resposta.
+     * @return A resposta completa.
+     */
+    public String answer(ChatMemory chatMemory, String pergunta, Consumer<String> onToken) {
+        long turnStart = TutorMetrics.start();
+        try {
+            return answerTurn(chatMemory, pergunta, onToken);
+        } finally {
+            TutorMetrics.TURN.recordSince(turnStart);
+        }
+    }
+
+    private String answerTurn(ChatMemory chatMemory, String pergunta, Consumer<String> onToken) {
+        // ETAPA DE CORREÇÃO: um erro comum sai corrigido pelas regras locais, sem passar pelo LLM.
+        CorrectionService.Request correction = correctionService != null ? correctionService.parse(pergunta) : null;
+        if (correction != null) {
+            Optional<String> corrected = correctionService.correct(correction);
+            if (corrected.isPresent()) {
+                conversationalChain.remember(chatMemory, pergunta, corrected.get());
+                onToken.accept(corrected.get());
+                return corrected.get();
+            }
+        }
+        return answerWithPipelines(chatMemory, pergunta, onToken);
+    }
+
+    private String answerWithPipelines(ChatMemory chatMemory, String pergunta, Consumer<String> onToken) {
+        // ETAPA DE CACHE: uma pergunta equivalente já foi respondida?
+        Embedding perguntaEmbedding = null;
+        if (responseCache != null) {
+            perguntaEmbedding = embeddingModel.embed(pergunta).content();
+            Optional<String> cached = responseCache.get(perguntaEmbedding);
+            if (cached.isPresent()) {
+                System.out.println("[CACHE] Resposta encontrada no cache semântico.");
+                conversationalChain.remember(chatMemory, pergunta, cached.get());
+                onToken.accept(cached.get());
+                return cached.get();
+            }
+        }
+
+        // ETAPA DE EXERCÍCIOS: um pedido de exercício sai pronto do pool, sem passar pelo LLM.
+        // A mensagem só é vetorizada (para escolher o tópico) se for mesmo um pedido.
+        if (exerciseService != null && ExerciseService.isRequest(pergunta)) {
+            if (perguntaEmbedding == null) {
+                perguntaEmbedding = embeddingModel.embed(pergunta).content();
+            }
+            Optional<ExerciseService.Exercise> exercise = exerciseService.serve(String.valueOf(chatMemory.id()), pergunta, perguntaEmbedding);
+            if (exercise.isPresent()) {
+                // A memória guarda o gabarito, para o tutor corrigir a resposta do aluno no próximo turno.
+                conversationalChain.remember(chatMemory, pergunta, exercise.get().memoryText());
+                onToken.accept(exercise.get().statement());
+                return exercise.get().statement();
+            }
+        }
+
+        // ETAPA ESPECULATIVA: a busca do RAG começa enquanto o roteador decide.
+        SpeculativeRetrieval speculation = speculativeRetrieval ? startRetrieval(pergunta) : null;
+
+        // ETAPA DE ROTEAMENTO: O cérebro da decisão
+        long routeStart = System.nanoTime();
+        String route;
+        try {
+            route = router.route(pergunta);
+        } catch (RuntimeException e) {
+            if (speculation != null) {
+                cancelRetrieval(speculation);
+            }
+            throw e;
+        }
+        long routeNanos = System.nanoTime() - routeStart;
+        long routeMillis = routeNanos / 1_000_000;
+        TutorMetrics.ROUTING.record(routeNanos / 1e9);
+        System.out.println("[ROUTER] Decisão: " + route);
+
+        if ("rag".equalsIgnoreCase(route.trim())) {
+            // Usa o pipeline de RAG para perguntas complexas
+            String resposta = speculation != null
+                    ? ragChain.execute(chatMemory, pergunta, awaitRetrieval(speculation, routeMillis), onToken)
+                    : ragChain.execute(chatMemory, pergunta, onToken);
+            // Só as respostas de conhecimento são guardadas: o bate-papo ("sim", "pode continuar"...) só faz
+            // sentido na conversa em que aconteceu. A resposta do RAG ainda é gerada com o histórico desta
+            // sessão; o cache separa as entradas pelo nível da persona, mas não pelo histórico, então outro
+            // aluno do mesmo nível pode receber uma explicação que menciona a conversa de quem perguntou
+            // primeiro. Onde isso não for aceitável, desative o cache ('tutor.cache.enabled=false').
+            if (responseCache != null) {
+                responseCache.put(pergunta, perguntaEmbedding, resposta);
+            }
+            return resposta;
+        }
+        if (speculation != null) {
+            cancelRetrieval(speculation);
+        }
+        // Usa o pipeline de conversa simples para todo o resto
+        return conversationalChain.execute(chatMemory, pergunta, onToken);
+    }
+
+    /**
+     * Uma busca do RAG disparada antes da decisão do roteador.
+     */
+    private record SpeculativeRetrieval(Future<List<TextSegment>> segments, long startNanos, AtomicLong endNanos) {}
+
+    private SpeculativeRetrieval startRetrieval(String pergunta) {
+        long start = System.nanoTime();
+        AtomicLong end = new AtomicLong();
+        Future<List<TextSegment>> segments = speculationExecutor.submit(() -> {
+            try {
+                return ragChain.retrieve(pergunta);
+            } finally {
+                end.set(System.nanoTime());
+            }
+        });
+        return new SpeculativeRetrieval(segments, start, end);
+    }
+
+    /**
+     * Espera a busca especulativa terminar. O tempo economizado é o trecho da busca
+     * que correu em paralelo com o roteador.
+     */
+    private List<TextSegment> awaitRetrieval(SpeculativeRetrieval speculation, long routeMillis) {
+        try {
+            List<TextSegment> segments = speculation.segments().get();
+            long retrievalMillis = (speculation.endNanos().get() - speculation.startNanos()) / 1_000_000;
+            speculationsUsed.incrementAndGet();
+            savedMillis.addAndGet(Math.min(routeMillis, retrievalMillis));
+            return segments;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            speculation.segments().cancel(true);
+            throw new RuntimeException("Busca especulativa interrompida", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Falha na busca especulativa do RAG", e.getCause());
+        }
+    }
+
+    /**
+     * Cancela a busca especulativa (interrompendo a virtual thread) e contabiliza o trabalho perdido.
+     */
+    private void cancelRetrieval(SpeculativeRetrieval speculation) {
+        speculation.segments().cancel(true);
+        long end = speculation.endNanos().get();
+        long elapsed = (end != 0 ? end : System.nanoTime()) - speculation.startNanos();
+        speculationsWasted.incrementAndGet();
+        wastedMillis.addAndGet(elapsed / 1_000_000);
+    }
+
+    /**
+     * @return Resumo das estatísticas do roteador, do cache, dos exercícios, do pré-corretor, do agendador do Ollama e da especulação.
+     */
+    public String stats() {
+        StringBuilder stats = new StringBuilder(router.stats());
+        if (responseCache != null) {
+            stats.append("\n").append(responseCache.stats());
+        }
+        if (exerciseService != null) {
+            stats.append("\n").append(exerciseService.stats());
+        }
+        if (correctionService != null) {
+            stats.append("\n").append(correctionService.stats());
+        }
+        stats.append("\n").append(OllamaScheduler.shared().stats());
+        if (speculativeRetrieval) {
+            stats.append(String.format("%n[SPECULATION] %d buscas aproveitadas (%d ms economizados), %d descartadas (%d ms desperdiçados).",
+                    speculationsUsed.get(), savedMillis.get(), speculationsWasted.get(), wastedMillis.get()));
+        }
+        return stats.toString();
+    }
+
+    /**
+     * Encerra as buscas especulativas e o worker de exercícios, e persiste o que precisa sobreviver
+     * ao encerramento (o cache semântico e o pool de exercícios).
+     */
+    public void shutdown() {
+        speculationExecutor.shutdownNow();
+        if (exerciseService != null) {
+            exerciseService.shutdown();
+        }
+        if (responseCache != null) {
+            responseCache.save();
+        }
+    }
+}